@@ -23,19 +23,24 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.JarEntry;
@@ -73,6 +78,28 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
 
     private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
 
+    /**
+     * ClassLoader.getClassLoadingLock(String) if the Java runtime
+     * provides it.
+     */
+    private static final Method GET_CLASS_LOADING_LOCK;
+
+    static {
+        Method getLock = null;
+        try {
+            // Java 7+, registers the calling class and requires the
+            // superclass to be registered already - subclasses that
+            // want to load classes concurrently must do so as well
+            ClassLoader.class.getDeclaredMethod("registerAsParallelCapable")
+                .invoke(null);
+            getLock = ClassLoader.class.getDeclaredMethod("getClassLoadingLock",
+                                                          String.class);
+        } catch (final Exception e) {
+            // older Java, loadClass synchronizes on the loader itself
+        }
+        GET_CLASS_LOADING_LOCK = getLock;
+    }
+
     /**
      * An enumeration of all resources of a given name found within the
      * classpath of this class loader. This enumeration is used by the
@@ -88,6 +115,11 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
          */
         private final String resourceName;
 
+        /**
+         * The classpath elements that may contain the resource.
+         */
+        private final List<File> components;
+
         /**
          * The index of the next classpath element to search.
          */
@@ -108,6 +140,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
          */
         ResourceEnumeration(final String name) {
             this.resourceName = name;
+            this.components = getComponentsFor(name);
             this.pathElementsIndex = 0;
             findNextResource();
         }
@@ -145,9 +178,9 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
          */
         private void findNextResource() {
             URL url = null;
-            while ((pathElementsIndex < pathComponents.size()) && (url == null)) {
+            while ((pathElementsIndex < components.size()) && (url == null)) {
                 try {
-                    final File pathComponent = pathComponents.elementAt(pathElementsIndex);
+                    final File pathComponent = components.get(pathElementsIndex);
                     url = getResourceURL(pathComponent, this.resourceName);
                     pathElementsIndex++;
                 } catch (final BuildException e) {
@@ -214,9 +247,16 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
     private ClassLoader parent = null;
 
     /**
-     * A hashtable of zip files opened by the classloader (File to JarFile).
+     * The zip files used by the classloader (File to shared JarFile).
+     */
+    private ConcurrentMap<File, JarFileCache.CachedJar> jarFiles =
+        new ConcurrentHashMap<File, JarFileCache.CachedJar>();
+
+    /**
+     * Index of the packages contained in the jars of the classpath,
+     * built on first use and discarded whenever the classpath changes.
      */
-    private Hashtable<File, JarFile> jarFiles = new Hashtable<File, JarFile>();
+    private volatile PackageIndex packageIndex = null;
 
     /** Static map of jar file/time to manifest class-path entries */
     private static Map<String, String> pathMap =
@@ -354,6 +394,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      */
     public void setClassPath(final Path classpath) {
         pathComponents.removeAllElements();
+        packageIndex = null;
         if (classpath != null) {
             final Path actualClasspath = classpath.concatSystemClasspath("ignore");
             final String[] pathElements = actualClasspath.list();
@@ -466,6 +507,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
             return;
         }
         pathComponents.addElement(file);
+        packageIndex = null;
     }
 
     /**
@@ -481,6 +523,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
     protected void addPathFile(final File pathComponent) throws IOException {
         if (!pathComponents.contains(pathComponent)) {
             pathComponents.addElement(pathComponent);
+            packageIndex = null;
         }
         if (pathComponent.isDirectory()) {
             return;
@@ -746,10 +789,9 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         // find the class we want.
         InputStream stream = null;
 
-        final Enumeration<File> e = pathComponents.elements();
-        while (e.hasMoreElements() && stream == null) {
-            final File pathComponent = e.nextElement();
-            stream = getResourceStream(pathComponent, name);
+        for (final Iterator<File> i = getComponentsFor(name).iterator();
+             i.hasNext() && stream == null;) {
+            stream = getResourceStream(i.next(), name);
         }
         return stream;
     }
@@ -782,7 +824,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      */
     private InputStream getResourceStream(final File file, final String resourceName) {
         try {
-            JarFile jarFile = jarFiles.get(file);
+            JarFile jarFile = getOpenedJarFile(file);
             if (jarFile == null && file.isDirectory()) {
                 final File resource = new File(file, resourceName);
                 if (resource.exists()) {
@@ -791,14 +833,10 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
             } else {
                 if (jarFile == null) {
                     if (file.exists()) {
-                        jarFile = new JarFile(file);
-                        jarFiles.put(file, jarFile);
+                        jarFile = openJarFile(file);
                     } else {
                         return null;
                     }
-                    //to eliminate a race condition, retrieve the entry
-                    //that is in the hash table under that filename
-                    jarFile = jarFiles.get(file);
                 }
                 final JarEntry entry = jarFile.getJarEntry(resourceName);
                 if (entry != null) {
@@ -889,9 +927,9 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         } else {
             // try and load from this loader if the parent either didn't find
             // it or wasn't consulted.
-            final Enumeration<File> e = pathComponents.elements();
-            while (e.hasMoreElements() && url == null) {
-                final File pathComponent = e.nextElement();
+            for (final Iterator<File> i = getComponentsFor(name).iterator();
+                 i.hasNext() && url == null;) {
+                final File pathComponent = i.next();
                 url = getResourceURL(pathComponent, name);
                 if (url != null) {
                     log("Resource " + name + " loaded from ant loader", Project.MSG_DEBUG);
@@ -1002,7 +1040,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      */
     protected URL getResourceURL(final File file, final String resourceName) {
         try {
-            JarFile jarFile = jarFiles.get(file);
+            JarFile jarFile = getOpenedJarFile(file);
             if (jarFile == null && file.isDirectory()) {
                 final File resource = new File(file, resourceName);
 
@@ -1023,13 +1061,10 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
                             System.err.println(msg);
                             return null;
                         }
-                        jarFile = new JarFile(file);
-                        jarFiles.put(file, jarFile);
+                        jarFile = openJarFile(file);
                     } else {
                         return null;
                     }
-                    // potential race-condition
-                    jarFile = jarFiles.get(file);
                 }
                 final JarEntry entry = jarFile.getJarEntry(resourceName);
                 if (entry != null) {
@@ -1070,12 +1105,40 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      * classpath.
      */
     @Override
-    protected synchronized Class<?> loadClass(final String classname, final boolean resolve)
+    protected Class<?> loadClass(final String classname, final boolean resolve)
         throws ClassNotFoundException {
         // 'sync' is needed - otherwise 2 threads can load the same class
         // twice, resulting in LinkageError: duplicated class definition.
         // findLoadedClass avoids that, but without sync it won't work.
+        // Where supported only threads loading the same class wait
+        // for each other.
+        synchronized (getLoadingLock(classname)) {
+            return loadClassUnlocked(classname, resolve);
+        }
+    }
 
+    /**
+     * Returns the object loadClass synchronizes on while loading the
+     * given class.
+     *
+     * @param classname the name of the class to be loaded.
+     * @return the lock for the class on Java 7+ when this class
+     * loader's class has been registered as parallel capable, the
+     * loader itself otherwise.
+     */
+    private Object getLoadingLock(final String classname) {
+        if (GET_CLASS_LOADING_LOCK != null) {
+            try {
+                return GET_CLASS_LOADING_LOCK.invoke(this, classname);
+            } catch (final Exception e) {
+                // fall back to locking the loader
+            }
+        }
+        return this;
+    }
+
+    private Class<?> loadClassUnlocked(final String classname, final boolean resolve)
+        throws ClassNotFoundException {
         Class<?> theClass = findLoadedClass(classname);
         if (theClass != null) {
             return theClass;
@@ -1173,10 +1236,17 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         // define the package now
         final Manifest manifest = getJarManifest(container);
 
-        if (manifest == null) {
-            definePackage(packageName, null, null, null, null, null, null, null);
-        } else {
-            definePackage(container, packageName, manifest);
+        try {
+            if (manifest == null) {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            } else {
+                definePackage(container, packageName, manifest);
+            }
+        } catch (final IllegalArgumentException e) {
+            // another thread has defined the package in the meantime
+            if (getPackage(packageName) == null) {
+                throw e;
+            }
         }
     }
 
@@ -1195,7 +1265,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         if (container.isDirectory()) {
             return null;
         }
-        final JarFile jarFile = jarFiles.get(container);
+        final JarFile jarFile = getOpenedJarFile(container);
         if (jarFile == null) {
             return null;
         }
@@ -1218,7 +1288,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         if (container.isDirectory()) {
             return null;
         }
-        final JarFile jarFile = jarFiles.get(container);
+        final JarFile jarFile = getOpenedJarFile(container);
         if (jarFile == null) {
             return null;
         }
@@ -1364,9 +1434,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         // we need to search the components of the path to see if
         // we can find the class we want.
         final String classFilename = getClassFilename(name);
-        final Enumeration<File> e = pathComponents.elements();
-        while (e.hasMoreElements()) {
-            final File pathComponent = e.nextElement();
+        for (final File pathComponent : getComponentsFor(classFilename)) {
             InputStream stream = null;
             try {
                 stream = getResourceStream(pathComponent, classFilename);
@@ -1388,6 +1456,119 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         throw new ClassNotFoundException(name);
     }
 
+    /**
+     * Returns the JarFile this loader has opened for the given file,
+     * opening it if necessary.
+     *
+     * @param file the jar file. Must not be <code>null</code>.
+     * @return the opened jar.
+     * @exception IOException if the file cannot be opened as a jar.
+     */
+    private JarFile openJarFile(final File file) throws IOException {
+        return openCachedJar(file).getJarFile();
+    }
+
+    /**
+     * Returns the JarFile this loader has opened for the given file.
+     *
+     * @param file the jar file. Must not be <code>null</code>.
+     * @return the opened jar or <code>null</code> if the file hasn't
+     * been opened.
+     */
+    private JarFile getOpenedJarFile(final File file) {
+        final JarFileCache.CachedJar jar = jarFiles.get(file);
+        return jar == null ? null : jar.getJarFile();
+    }
+
+    /**
+     * Acquires the given file from the build-wide cache of jars
+     * unless this loader has done so already.
+     *
+     * @param file the jar file. Must not be <code>null</code>.
+     * @return the opened jar.
+     * @exception IOException if the file cannot be opened as a jar.
+     */
+    private JarFileCache.CachedJar openCachedJar(final File file) throws IOException {
+        JarFileCache.CachedJar jar = jarFiles.get(file);
+        if (jar == null) {
+            final JarFileCache.CachedJar newJar = JarFileCache.acquire(project, file);
+            jar = jarFiles.putIfAbsent(file, newJar);
+            if (jar == null) {
+                jar = newJar;
+            } else {
+                // another thread has been faster
+                JarFileCache.release(newJar);
+            }
+        }
+        return jar;
+    }
+
+    /**
+     * Returns the classpath elements that may contain a resource of
+     * the given name, in classpath order.
+     *
+     * <p>Jars only take part if they contain the resource's
+     * directory, directories and jars that couldn't be indexed are
+     * always searched.</p>
+     *
+     * @param resourceName the name of the resource.
+     * @return the classpath elements to search.
+     */
+    private List<File> getComponentsFor(final String resourceName) {
+        PackageIndex index = packageIndex;
+        if (index == null) {
+            index = new PackageIndex(pathComponents.toArray(new File[0]));
+            packageIndex = index;
+        }
+        final int slash = resourceName.lastIndexOf('/');
+        return index.getComponents(slash == -1 ? "" : resourceName.substring(0, slash));
+    }
+
+    /**
+     * Maps the directories found inside the jars of a classpath to
+     * the classpath elements that may contain resources in them.
+     */
+    private final class PackageIndex {
+        /** directory name to classpath elements */
+        private final Map<String, List<File>> packages = new HashMap<String, List<File>>();
+        /** classpath elements that have to be searched for every resource */
+        private final List<File> unindexed = new ArrayList<File>();
+
+        private PackageIndex(final File[] components) {
+            for (int i = 0; i < components.length; i++) {
+                final File component = components[i];
+                JarFileCache.CachedJar jar = null;
+                if (component.isFile()) {
+                    try {
+                        jar = openCachedJar(component);
+                    } catch (final IOException ex) {
+                        // searched like before, so the usual warnings get logged
+                    }
+                }
+                if (jar == null) {
+                    unindexed.add(component);
+                    for (final List<File> l : packages.values()) {
+                        l.add(component);
+                    }
+                    continue;
+                }
+                for (final String dir : jar.getDirectories()) {
+                    List<File> l = packages.get(dir);
+                    if (l == null) {
+                        l = new ArrayList<File>(unindexed);
+                        packages.put(dir, l);
+                    }
+                    l.add(component);
+                }
+            }
+        }
+
+        private List<File> getComponents(final String dir) {
+            final List<File> l = packages.get(dir);
+            return l == null ? unindexed : l;
+        }
+    }
+
     /**
      * Finds a system class (which should be loaded from the same classloader
      * as the Ant core).
@@ -1409,18 +1590,16 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
 
     /**
      * Cleans up any resources held by this classloader. Any open archive
-     * files are closed.
+     * files are released, they are kept open for other classloaders of
+     * the build unless the platform is Windows or the jar cache has
+     * been disabled.
      */
     public synchronized void cleanup() {
-        for (final Enumeration<JarFile> e = jarFiles.elements(); e.hasMoreElements();) {
-            final JarFile jarFile = e.nextElement();
-            try {
-                jarFile.close();
-            } catch (final IOException ioe) {
-                // ignore
-            }
+        for (final JarFileCache.CachedJar jar : jarFiles.values()) {
+            JarFileCache.release(jar);
         }
-        jarFiles = new Hashtable<File, JarFile>();
+        jarFiles = new ConcurrentHashMap<File, JarFileCache.CachedJar>();
+        packageIndex = null;
         if (project != null) {
             project.removeBuildListener(this);
         }
@@ -1455,6 +1634,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      */
     public void buildFinished(final BuildEvent event) {
         cleanup();
+        JarFileCache.closeIdle();
     }
 
     /**
@@ -64,6 +64,12 @@ public class ComponentHelper  {
     /** Map from component name to anttypedefinition */
     private final Hashtable<String, AntTypeDefinition> antTypeTable = new Hashtable<String, AntTypeDefinition>();
 
+    /**
+     * Helper of the parent project whose definitions have not been
+     * copied to antTypeTable yet, guarded by antTypeTable.
+     */
+    private ComponentHelper parentHelper;
+
     /** Map of tasks generated from antTypeTable */
     private final Hashtable<String, Class<?>> taskClassDefinitions = new Hashtable<String, Class<?>>();
 
@@ -224,15 +230,25 @@ public class ComponentHelper  {
      * Used with creating child projects. Each child
      * project inherits the component definitions
      * from its parent.
+     *
+     * <p>Since Ant 1.9.5 the definitions of the parent are not copied
+     * if the child doesn't have any definitions of its own yet.
+     * Instead they are looked up in the parent until the child needs
+     * the complete table, definitions made by the child itself hide
+     * the ones of the parent.</p>
+     *
      * @param helper the component helper of the parent project.
      */
     public void initSubProject(ComponentHelper helper) {
         // add the types of the parent project
-        @SuppressWarnings("unchecked")
-        final Hashtable<String, AntTypeDefinition> typeTable = (Hashtable<String, AntTypeDefinition>) helper.antTypeTable.clone();
         synchronized (antTypeTable) {
-            for (AntTypeDefinition def : typeTable.values()) {
-                antTypeTable.put(def.getName(), def);
+            if (antTypeTable.isEmpty() && parentHelper == null) {
+                parentHelper = helper;
+            } else {
+                Hashtable<String, AntTypeDefinition> inherited = helper.getAntTypeTable();
+                synchronized (inherited) {
+                    antTypeTable.putAll(inherited);
+                }
             }
         }
         // add the parsed namespaces of the parent project
@@ -305,7 +321,40 @@ public class ComponentHelper  {
      */
     public AntTypeDefinition getDefinition(String componentName) {
         checkNamespace(componentName);
-        return antTypeTable.get(componentName);
+        return lookup(componentName);
+    }
+
+    /**
+     * Looks up a definition in this helper's table and those of the
+     * parent projects it hasn't copied yet.
+     */
+    private AntTypeDefinition lookup(String componentName) {
+        synchronized (antTypeTable) {
+            AntTypeDefinition def = antTypeTable.get(componentName);
+            if (def == null && parentHelper != null) {
+                def = parentHelper.lookup(componentName);
+            }
+            return def;
+        }
+    }
+
+    /**
+     * Adds the definitions of the parent project that have not been
+     * hidden by definitions of this project's own to antTypeTable,
+     * must hold the lock on antTypeTable.
+     */
+    private void copyParentDefinitions() {
+        if (parentHelper != null) {
+            Hashtable<String, AntTypeDefinition> inherited = parentHelper.getAntTypeTable();
+            synchronized (inherited) {
+                for (Map.Entry<String, AntTypeDefinition> e : inherited.entrySet()) {
+                    if (!antTypeTable.containsKey(e.getKey())) {
+                        antTypeTable.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            parentHelper = null;
+        }
     }
 
     /**
@@ -398,6 +447,7 @@ public class ComponentHelper  {
         synchronized (taskClassDefinitions) {
             synchronized (antTypeTable) {
                 if (rebuildTaskClassDefinitions) {
+                    copyParentDefinitions();
                     taskClassDefinitions.clear();
                     for (Map.Entry<String, AntTypeDefinition> e : antTypeTable.entrySet()) {
                         final Class<?> clazz = e.getValue().getExposedClass(project);
@@ -426,6 +476,7 @@ public class ComponentHelper  {
         synchronized (typeClassDefinitions) {
             synchronized (antTypeTable) {
                 if (rebuildTypeClassDefinitions) {
+                    copyParentDefinitions();
                     typeClassDefinitions.clear();
                     for (Map.Entry<String, AntTypeDefinition> e : antTypeTable.entrySet()) {
                         final Class<?> clazz = e.getValue().getExposedClass(project);
@@ -501,6 +552,9 @@ public class ComponentHelper  {
      *         (String to {@link AntTypeDefinition}).
      */
     public Hashtable<String, AntTypeDefinition> getAntTypeTable() {
+        synchronized (antTypeTable) {
+            copyParentDefinitions();
+        }
         return antTypeTable;
     }
 
@@ -615,6 +669,7 @@ public class ComponentHelper  {
         Class<?> elementClass = o.getClass();
         String elementClassname = elementClass.getName();
         synchronized (antTypeTable) {
+            copyParentDefinitions();
             for (AntTypeDefinition def : antTypeTable.values()) {
                 if (elementClassname.equals(def.getClassName())
                         && (elementClass == def.getExposedClass(project))) {
@@ -713,7 +768,7 @@ public class ComponentHelper  {
         synchronized (antTypeTable) {
             rebuildTaskClassDefinitions = true;
             rebuildTypeClassDefinitions = true;
-            final AntTypeDefinition old = antTypeTable.get(name);
+            final AntTypeDefinition old = lookup(name);
             if (old != null) {
                 if (sameDefinition(def, old)) {
                     return;
@@ -853,7 +908,7 @@ public class ComponentHelper  {
         }
         checkedNamespaces.add(uri);
 
-        if (antTypeTable.size() == 0) {
+        if (getAntTypeTable().size() == 0) {
             // Project instance doesn't know the tasks and types
             // defined in defaults.properties, likely created by the
             // user - without those definitions it cannot parse antlib
@@ -1090,6 +1145,7 @@ public class ComponentHelper  {
     private List<AntTypeDefinition> findTypeMatches(String prefix) {
         final List<AntTypeDefinition> result = new ArrayList<AntTypeDefinition>();
         synchronized (antTypeTable) {
+            copyParentDefinitions();
             for (AntTypeDefinition def : antTypeTable.values()) {
                 if (def.getName().startsWith(prefix)) {
                     result.add(def);
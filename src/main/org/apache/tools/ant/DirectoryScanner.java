@@ -24,22 +24,32 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.tools.ant.taskdefs.condition.Os;
 import org.apache.tools.ant.types.Resource;
 import org.apache.tools.ant.types.ResourceFactory;
 import org.apache.tools.ant.types.resources.FileResource;
+import org.apache.tools.ant.types.selectors.FileAttributes;
+import org.apache.tools.ant.types.selectors.FileAttributesSelector;
 import org.apache.tools.ant.types.selectors.FileSelector;
+import org.apache.tools.ant.types.selectors.PatternTrie;
 import org.apache.tools.ant.types.selectors.SelectorScanner;
 import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.apache.tools.ant.types.selectors.TokenizedPath;
 import org.apache.tools.ant.types.selectors.TokenizedPattern;
 import org.apache.tools.ant.util.CollectionUtils;
+import org.apache.tools.ant.util.DirectoryLister;
 import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.ant.util.SymbolicLinkUtils;
 import org.apache.tools.ant.util.VectorSet;
@@ -364,13 +374,47 @@ public class DirectoryScanner
      */
     private TokenizedPattern[] excludePatterns;
 
+    /**
+     * All include patterns compiled into a single automaton.
+     *
+     * <p>Gets lazily initialized on the first invocation of
+     * isIncluded or isExcluded and cleared at the end of the scan
+     * method (cleared in clearCaches, actually).</p>
+     *
+     * @since Ant 1.9.5
+     */
+    private PatternTrie includeTrie;
+
+    /**
+     * All exclude patterns compiled into a single automaton.
+     *
+     * <p>Gets lazily initialized on the first invocation of
+     * isIncluded or isExcluded and cleared at the end of the scan
+     * method (cleared in clearCaches, actually).</p>
+     *
+     * @since Ant 1.9.5
+     */
+    private PatternTrie excludeTrie;
+
+    /**
+     * String representations of all exclude patterns that contain
+     * wildcards.
+     *
+     * <p>Gets lazily initialized on the first invocation of
+     * isIncluded or isExcluded and cleared at the end of the scan
+     * method (cleared in clearCaches, actually).</p>
+     *
+     * @since Ant 1.9.5
+     */
+    private Set<String> excludePatternStrings;
+
     /**
      * Have the non-pattern sets and pattern arrays for in- and
      * excludes been initialized?
      *
      * @since Ant 1.6.3
      */
-    private boolean areNonPatternSetsReady = false;
+    private volatile boolean areNonPatternSetsReady = false;
 
     /**
      * Scanning flag.
@@ -425,6 +469,58 @@ public class DirectoryScanner
      */
     private final Set<String> notFollowedSymlinks = new HashSet<String>();
 
+    /**
+     * Whether subdirectories should be scanned concurrently.
+     *
+     * @since Ant 1.9.5
+     */
+    private boolean parallel = false;
+
+    /**
+     * Pool shared by all parallel scans, lazily created.
+     *
+     * @since Ant 1.9.5
+     */
+    private static ExecutorService scanPool;
+
+    /**
+     * Whether directories should be read using java.nio.file if
+     * available.
+     *
+     * @since Ant 1.9.5
+     */
+    private boolean useNio = false;
+
+    /**
+     * Classname of the java.nio.file based DirectoryLister.
+     *
+     * @since Ant 1.9.5
+     */
+    private static final String NIO_LISTER =
+        "org.apache.tools.ant.util.java17.NioDirectoryLister";
+
+    /**
+     * The java.nio.file based DirectoryLister, null if not available.
+     *
+     * @since Ant 1.9.5
+     */
+    private static DirectoryLister nioLister;
+
+    /**
+     * Whether loading the java.nio.file based DirectoryLister has
+     * already been attempted.
+     *
+     * @since Ant 1.9.5
+     */
+    private static boolean nioListerLoaded = false;
+
+    /**
+     * Explicitly configured DirectoryLister, overrides useNio if set.
+     *
+     * @since Ant 1.9.5
+     */
+    private DirectoryLister directoryLister;
+
     /**
      * Sole constructor.
      */
@@ -707,6 +803,71 @@ public class DirectoryScanner
         maxLevelsOfSymlinks = max;
     }
 
+    /**
+     * Whether subdirectories are scanned concurrently.
+     *
+     * @return flag indicating whether the scan uses several threads.
+     * @since Ant 1.9.5
+     */
+    public synchronized boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Set whether subdirectories should be scanned concurrently.
+     *
+     * <p>A parallel scan yields exactly the same results - in the
+     * same order - as a serial one, but selectors are still invoked
+     * by one thread at a time as most of them have not been written
+     * with concurrency in mind.</p>
+     *
+     * @param parallel whether the scan should use several threads.
+     * @since Ant 1.9.5
+     */
+    public synchronized void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Whether directories are read using java.nio.file.
+     *
+     * @return flag indicating whether java.nio.file is used if
+     * available.
+     * @since Ant 1.9.5
+     */
+    public synchronized boolean isUseNio() {
+        return useNio;
+    }
+
+    /**
+     * Set whether directories should be read using java.nio.file.
+     *
+     * <p>This reads the attributes of each entry only once and
+     * passes them on to selectors implementing {@link
+     * FileAttributesSelector}.  Symbolic link loops are detected by
+     * comparing file keys rather than canonical paths.  Has no effect
+     * when running on Java 6 or earlier.</p>
+     *
+     * @param useNio whether java.nio.file should be used.
+     * @since Ant 1.9.5
+     */
+    public synchronized void setUseNio(final boolean useNio) {
+        this.useNio = useNio;
+    }
+
+    /**
+     * Set the DirectoryLister used to read directories.
+     *
+     * <p>Takes precedence over {@link #setUseNio useNio}, use
+     * <code>null</code> to go back to the default.</p>
+     *
+     * @param lister the lister to use.
+     * @since Ant 1.9.5
+     */
+    public synchronized void setDirectoryLister(final DirectoryLister lister) {
+        directoryLister = lister;
+    }
+
     /**
      * Set the list of include patterns to use. All '/' and '\' characters
      * are replaced by <code>File.separatorChar</code>, so the separator used
@@ -1191,6 +1352,12 @@ public class DirectoryScanner
         if (dir == null) {
             throw new BuildException("dir must not be null.");
         }
+        final DirectoryLister lister = directoryLister != null ? directoryLister
+            : useNio ? getNioDirectoryLister() : null;
+        if (lister != null) {
+            new TreeWalk(fast, lister).scan(dir, path);
+            return;
+        }
         final String[] newfiles = dir.list();
         if (newfiles == null) {
             if (!dir.exists()) {
@@ -1202,7 +1369,11 @@ public class DirectoryScanner
                                          + dir.getAbsolutePath() + "'");
             }
         }
-        scandir(dir, path, fast, newfiles, new LinkedList<String>());
+        if (parallel) {
+            new TreeWalk(fast, null).scan(dir, path, newfiles);
+        } else {
+            scandir(dir, path, fast, newfiles, new LinkedList<String>());
+        }
     }
 
     private void scandir(final File dir, final TokenizedPath path, final boolean fast,
@@ -1334,14 +1505,22 @@ public class DirectoryScanner
     }
 
     private void accountForNotFollowedSymlink(final TokenizedPath name, final File file) {
-        if (!isExcluded(name) &&
-            (isIncluded(name)
-             || (file.isDirectory() && couldHoldIncluded(name)
-                 && !contentsExcluded(name)))) {
+        if (wouldHaveFollowed(name, file)) {
             notFollowedSymlinks.add(file.getAbsolutePath());
         }
     }
 
+    /**
+     * Would the given symbolic link have contributed to the result
+     * if it had been followed?
+     */
+    private boolean wouldHaveFollowed(final TokenizedPath name, final File file) {
+        return !isExcluded(name) &&
+            (isIncluded(name)
+             || (file.isDirectory() && couldHoldIncluded(name)
+                 && !contentsExcluded(name)));
+    }
+
     private void processIncluded(final TokenizedPath path,
                                  final File file, final Vector<String> inc, final Vector<String> exc,
                                  final Vector<String> des) {
@@ -1385,17 +1564,12 @@ public class DirectoryScanner
     private boolean isIncluded(final TokenizedPath path) {
         ensureNonPatternSetsReady();
 
-        if (isCaseSensitive()
+        if (isCaseSensitive
             ? includeNonPatterns.containsKey(path.toString())
             : includeNonPatterns.containsKey(path.toString().toUpperCase())) {
             return true;
         }
-        for (int i = 0; i < includePatterns.length; i++) {
-            if (includePatterns[i].matchPath(path, isCaseSensitive())) {
-                return true;
-            }
-        }
-        return false;
+        return includeTrie.matchPath(path);
     }
 
     /**
@@ -1419,47 +1593,8 @@ public class DirectoryScanner
      *         least one include pattern, or <code>false</code> otherwise.
      */
     private boolean couldHoldIncluded(final TokenizedPath tokenizedName) {
-        for (int i = 0; i < includePatterns.length; i++) {
-            if (couldHoldIncluded(tokenizedName, includePatterns[i])) {
-                return true;
-            }
-        }
-        for (final Iterator<TokenizedPath> iter = includeNonPatterns.values().iterator();
-             iter.hasNext();) {
-            if (couldHoldIncluded(tokenizedName,
-                                  iter.next().toPattern())) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Test whether or not a name matches the start of the given
-     * include pattern.
-     *
-     * @param tokenizedName The name to match. Must not be <code>null</code>.
-     * @return <code>true</code> when the name matches against the start of the
-     *         include pattern, or <code>false</code> otherwise.
-     */
-    private boolean couldHoldIncluded(final TokenizedPath tokenizedName,
-                                      final TokenizedPattern tokenizedInclude) {
-        return tokenizedInclude.matchStartOf(tokenizedName, isCaseSensitive())
-            && isMorePowerfulThanExcludes(tokenizedName.toString())
-            && isDeeper(tokenizedInclude, tokenizedName);
-    }
-
-    /**
-     * Verify that a pattern specifies files deeper
-     * than the level of the specified file.
-     * @param pattern the pattern to check.
-     * @param name the name to check.
-     * @return whether the pattern is deeper than the name.
-     * @since Ant 1.6.3
-     */
-    private boolean isDeeper(final TokenizedPattern pattern, final TokenizedPath name) {
-        return pattern.containsPattern(SelectorUtils.DEEP_TREE_MATCH)
-            || pattern.depth() > name.depth();
+        return includeTrie.couldHoldMatch(tokenizedName)
+            && isMorePowerfulThanExcludes(tokenizedName.toString());
     }
 
     /**
@@ -1481,12 +1616,7 @@ public class DirectoryScanner
     private boolean isMorePowerfulThanExcludes(final String name) {
         final String soughtexclude =
             name + File.separatorChar + SelectorUtils.DEEP_TREE_MATCH;
-        for (int counter = 0; counter < excludePatterns.length; counter++) {
-            if (excludePatterns[counter].toString().equals(soughtexclude))  {
-                return false;
-            }
-        }
-        return true;
+        return !excludePatternStrings.contains(soughtexclude);
     }
 
     /**
@@ -1495,14 +1625,7 @@ public class DirectoryScanner
      * @return whether all the specified directory's contents are excluded.
      */
     /* package */ boolean contentsExcluded(final TokenizedPath path) {
-        for (int i = 0; i < excludePatterns.length; i++) {
-            if (excludePatterns[i].endsWith(SelectorUtils.DEEP_TREE_MATCH)
-                && excludePatterns[i].withoutLastToken()
-                   .matchPath(path, isCaseSensitive())) {
-                return true;
-            }
-        }
-        return false;
+        return excludeTrie.matchesAllBelow(path);
     }
 
     /**
@@ -1528,17 +1651,12 @@ public class DirectoryScanner
     private boolean isExcluded(final TokenizedPath name) {
         ensureNonPatternSetsReady();
 
-        if (isCaseSensitive()
+        if (isCaseSensitive
             ? excludeNonPatterns.containsKey(name.toString())
             : excludeNonPatterns.containsKey(name.toString().toUpperCase())) {
             return true;
         }
-        for (int i = 0; i < excludePatterns.length; i++) {
-            if (excludePatterns[i].matchPath(name, isCaseSensitive())) {
-                return true;
-            }
-        }
-        return false;
+        return excludeTrie.matchPath(name);
     }
 
     /**
@@ -1560,6 +1678,39 @@ public class DirectoryScanner
         return true;
     }
 
+    /**
+     * Test whether a file should be selected.
+     *
+     * <p>Passes the attributes to selectors implementing {@link
+     * FileAttributesSelector}.</p>
+     *
+     * @param name the filename to check for selecting.
+     * @param file the java.io.File object for this filename.
+     * @param attributes the attributes of the file, may be null.
+     * @return <code>false</code> when the selectors says that the file
+     *         should not be selected, <code>true</code> otherwise.
+     * @since Ant 1.9.5
+     */
+    protected boolean isSelected(final String name, final File file,
+                                 final FileAttributes attributes) {
+        if (attributes == null) {
+            return isSelected(name, file);
+        }
+        if (selectors != null) {
+            for (int i = 0; i < selectors.length; i++) {
+                final boolean selected =
+                    selectors[i] instanceof FileAttributesSelector
+                    ? ((FileAttributesSelector) selectors[i])
+                    .isSelected(basedir, name, file, attributes)
+                    : selectors[i].isSelected(basedir, name, file);
+                if (!selected) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Return the names of the files which matched at least one of the
      * include patterns and none of the exclude patterns.
@@ -1790,7 +1941,9 @@ public class DirectoryScanner
      * @since Ant 1.6
      */
     private boolean hasBeenScanned(final String vpath) {
-        return !scannedDirs.add(vpath);
+        synchronized (scannedDirs) {
+            return !scannedDirs.add(vpath);
+        }
     }
 
     /**
@@ -1812,6 +1965,9 @@ public class DirectoryScanner
         excludeNonPatterns.clear();
         includePatterns = null;
         excludePatterns = null;
+        includeTrie = null;
+        excludeTrie = null;
+        excludePatternStrings = null;
         areNonPatternSetsReady = false;
     }
 
@@ -1821,11 +1977,21 @@ public class DirectoryScanner
      *
      * @since Ant 1.6.3
      */
-    /* package */ synchronized void ensureNonPatternSetsReady() {
+    /* package */ void ensureNonPatternSetsReady() {
         if (!areNonPatternSetsReady) {
-            includePatterns = fillNonPatternSet(includeNonPatterns, includes);
-            excludePatterns = fillNonPatternSet(excludeNonPatterns, excludes);
-            areNonPatternSetsReady = true;
+            synchronized (this) {
+                if (!areNonPatternSetsReady) {
+                    includePatterns = fillNonPatternSet(includeNonPatterns, includes);
+                    excludePatterns = fillNonPatternSet(excludeNonPatterns, excludes);
+                    includeTrie = PatternTrie.getInstance(includes, isCaseSensitive);
+                    excludeTrie = PatternTrie.getInstance(excludes, isCaseSensitive);
+                    excludePatternStrings = new HashSet<String>();
+                    for (int i = 0; i < excludePatterns.length; i++) {
+                        excludePatternStrings.add(excludePatterns[i].toString());
+                    }
+                    areNonPatternSetsReady = true;
+                }
+            }
         }
     }
 
@@ -1897,4 +2063,438 @@ public class DirectoryScanner
         }
     }
 
+
+    /**
+     * Would following the given directory cause a loop of symbolic
+     * links deeper than allowed?
+     *
+     * <p>Uses the file keys of the directories followed so far if
+     * available, the canonical paths otherwise.</p>
+     *
+     * @since Ant 1.9.5
+     */
+    private boolean causesIllegalSymlinkLoop(final String dirName, final File parent,
+                                             final FileAttributes attributes,
+                                             final LinkedList<String> directoryNamesFollowed,
+                                             final LinkedList<Object> keysFollowed) {
+        if (attributes == null || attributes.getFileKey() == null) {
+            return causesIllegalSymlinkLoop(dirName, parent,
+                                            directoryNamesFollowed);
+        }
+        return attributes.isSymbolicLink()
+            && CollectionUtils.frequency(keysFollowed, attributes.getFileKey())
+               >= maxLevelsOfSymlinks;
+    }
+
+    /**
+     * The java.nio.file based DirectoryLister if it is available.
+     *
+     * @return the lister or null when running on Java 6 or earlier.
+     * @since Ant 1.9.5
+     */
+    public static synchronized DirectoryLister getNioDirectoryLister() {
+        if (!nioListerLoaded) {
+            nioListerLoaded = true;
+            try {
+                nioLister = (DirectoryLister) Class.forName(NIO_LISTER)
+                    .newInstance();
+            } catch (final ClassNotFoundException e) {
+                //not included, do nothing
+            } catch (final IllegalAccessException e) {
+                //not included, do nothing
+            } catch (final InstantiationException e) {
+                //not included, do nothing
+            } catch (final NoClassDefFoundError e) {
+                //running on Java6 or earlier, do nothing
+            }
+        }
+        return nioLister;
+    }
+
+    /**
+     * The pool used by parallel scans.
+     *
+     * <p>Uses daemon threads so an idle pool never keeps the VM
+     * alive.  Tasks running on the pool never wait for other tasks,
+     * so a fixed number of threads can't deadlock.</p>
+     *
+     * @since Ant 1.9.5
+     */
+    private static synchronized ExecutorService getScanPool() {
+        if (scanPool == null) {
+            scanPool = Executors.newFixedThreadPool(Runtime.getRuntime()
+                                                    .availableProcessors(),
+                                                    new ThreadFactory() {
+                    private int count = 0;
+                    public synchronized Thread newThread(final Runnable r) {
+                        final Thread t =
+                            new Thread(r, "DirectoryScanner-" + (++count));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+        return scanPool;
+    }
+
+    /**
+     * Walks a directory tree for parallel scans and scans that use a
+     * {@link DirectoryLister}.
+     *
+     * <p>Every directory is processed by a task of its own that
+     * doesn't touch the result vectors but records its findings -
+     * and those of its subdirectories - in a list of its own.  For
+     * parallel scans subdirectories are processed by tasks submitted
+     * to the shared pool, otherwise they are processed right away.
+     * Once the tree has been walked, the lists are replayed on the
+     * scanning thread in the order a serial scan would have visited
+     * the entries.  This keeps the results and their order identical
+     * to those of {@link #scandir(File, TokenizedPath, boolean,
+     * String[], LinkedList)}.</p>
+     *
+     * @since Ant 1.9.5
+     */
+    private class TreeWalk {
+        private static final int NOT_INCLUDED = 0;
+        private static final int SYMLINK = 1;
+        private static final int EXCLUDED = 2;
+        private static final int SELECTED = 3;
+        private static final int DESELECTED = 4;
+        private static final int WARNING = 5;
+        private static final int NOT_FOLLOWED = 6;
+
+        private final boolean fast;
+        private final DirectoryLister lister;
+        private final ExecutorService pool;
+        private final Object selectorLock = new Object();
+
+        /**
+         * @param fast whether this is part of a fast scan
+         * @param lister used to read directories and attributes, if
+         * null java.io.File is used.
+         */
+        TreeWalk(final boolean fast, final DirectoryLister lister) {
+            this.fast = fast;
+            this.lister = lister;
+            pool = parallel ? getScanPool() : null;
+        }
+
+        /**
+         * Scans the tree below dir using java.io.File and adds the
+         * findings to the result vectors.
+         */
+        void scan(final File dir, final TokenizedPath path, final String[] newfiles) {
+            replay(scan(dir, path, newfiles, null, null,
+                        new LinkedList<String>(), new LinkedList<Object>()));
+        }
+
+        /**
+         * Scans the tree below dir using the lister and adds the
+         * findings to the result vectors.
+         */
+        void scan(final File dir, final TokenizedPath path) {
+            FileAttributes[] entries;
+            Object key;
+            try {
+                entries = lister.list(dir);
+                key = lister.readAttributes(dir).getFileKey();
+            } catch (final IOException ex) {
+                if (!dir.exists()) {
+                    throw new BuildException(dir + DOES_NOT_EXIST_POSTFIX);
+                } else if (!dir.isDirectory()) {
+                    throw new BuildException(dir + " is not a directory.");
+                } else {
+                    throw new BuildException("IO error scanning directory '"
+                                             + dir.getAbsolutePath() + "'",
+                                             ex);
+                }
+            }
+            replay(scan(dir, path, null, entries, key,
+                        new LinkedList<String>(), new LinkedList<Object>()));
+        }
+
+        /**
+         * Mirrors the serial scandir method but records findings
+         * rather than adding them to the result vectors.
+         *
+         * <p>Either newfiles or attributes must be non-null unless
+         * the lister is used, in which case dir gets read if both
+         * are null.</p>
+         */
+        private List<Object> scan(final File dir, final TokenizedPath path,
+                                  String[] newfiles, FileAttributes[] attributes,
+                                  final Object dirKey,
+                                  final LinkedList<String> directoryNamesFollowed,
+                                  final LinkedList<Object> keysFollowed) {
+            final List<Object> findings = new ArrayList<Object>();
+            String vpath = path.toString();
+            if (vpath.length() > 0 && !vpath.endsWith(File.separator)) {
+                vpath += File.separator;
+            }
+
+            // avoid double scanning of directories, can only happen in fast mode
+            if (fast && hasBeenScanned(vpath)) {
+                return findings;
+            }
+            if (newfiles == null && attributes == null) {
+                try {
+                    attributes = lister.list(dir);
+                } catch (final IOException ex) {
+                    findings.add(new Finding("IO error scanning directory '"
+                                             + dir.getAbsolutePath() + "': "
+                                             + ex.getMessage(), false,
+                                             WARNING));
+                    return findings;
+                }
+            }
+            if (attributes != null) {
+                newfiles = new String[attributes.length];
+                for (int i = 0; i < attributes.length; i++) {
+                    newfiles[i] = attributes[i].getName();
+                }
+            }
+            if (!followSymlinks) {
+                final ArrayList<String> noLinks = new ArrayList<String>();
+                final ArrayList<FileAttributes> noLinkAttributes =
+                    new ArrayList<FileAttributes>();
+                for (int i = 0; i < newfiles.length; i++) {
+                    try {
+                        if (attributes != null
+                            ? attributes[i].isSymbolicLink()
+                            : SYMLINK_UTILS.isSymbolicLink(dir, newfiles[i])) {
+                            final String name = vpath + newfiles[i];
+                            final File file = new File(dir, newfiles[i]);
+                            if (attributes != null
+                                ? attributes[i].isDirectory() : file.isDirectory()) {
+                                findings.add(new Finding(name, true, SYMLINK));
+                            } else if (attributes != null
+                                       ? attributes[i].isRegularFile()
+                                       : file.isFile()) {
+                                findings.add(new Finding(name, false, SYMLINK));
+                            }
+                            if (wouldHaveFollowed(new TokenizedPath(name), file)) {
+                                findings.add(new Finding(file.getAbsolutePath(),
+                                                         false, NOT_FOLLOWED));
+                            }
+                        } else {
+                            noLinks.add(newfiles[i]);
+                            if (attributes != null) {
+                                noLinkAttributes.add(attributes[i]);
+                            }
+                        }
+                    } catch (final IOException ioe) {
+                        findings.add(new Finding("IOException caught while "
+                                                 + "checking for links, "
+                                                 + "couldn't get canonical "
+                                                 + "path!", false, WARNING));
+                        noLinks.add(newfiles[i]);
+                    }
+                }
+                newfiles = (noLinks.toArray(new String[noLinks.size()]));
+                if (attributes != null) {
+                    attributes = noLinkAttributes
+                        .toArray(new FileAttributes[noLinkAttributes.size()]);
+                }
+            } else {
+                directoryNamesFollowed.addFirst(dir.getName());
+                keysFollowed.addFirst(dirKey);
+            }
+
+            for (int i = 0; i < newfiles.length; i++) {
+                final String name = vpath + newfiles[i];
+                final TokenizedPath newPath = new TokenizedPath(path, newfiles[i]);
+                final File file = new File(dir, newfiles[i]);
+                final FileAttributes attrs =
+                    attributes == null ? null : attributes[i];
+                String[] children = null;
+                boolean isFile;
+                if (attrs == null) {
+                    children = file.list();
+                    isFile = children == null
+                        || (children.length == 0 && file.isFile());
+                } else {
+                    // everything but directories counts as a file,
+                    // directories that can't be listed are reported
+                    // and skipped once they get scanned
+                    isFile = !attrs.isDirectory();
+                }
+                if (isFile) {
+                    if (isIncluded(newPath)) {
+                        findings.add(process(newPath, file, attrs, false));
+                    } else {
+                        findings.add(new Finding(name, false, NOT_INCLUDED));
+                    }
+                } else if (attrs != null || file.isDirectory()) { // dir
+
+                    if (followSymlinks
+                        && causesIllegalSymlinkLoop(newfiles[i], dir, attrs,
+                                                    directoryNamesFollowed,
+                                                    keysFollowed)) {
+                        findings.add(new Finding("skipping symbolic link "
+                                                 + file.getAbsolutePath()
+                                                 + " -- too many levels of"
+                                                 + " symbolic links.",
+                                                 false, WARNING));
+                        findings.add(new Finding(file.getAbsolutePath(),
+                                                 false, NOT_FOLLOWED));
+                        continue;
+                    }
+
+                    if (isIncluded(newPath)) {
+                        findings.add(process(newPath, file, attrs, true));
+                    } else {
+                        findings.add(new Finding(name, true, NOT_INCLUDED));
+                    }
+                    if (!fast || (couldHoldIncluded(newPath)
+                                  && !contentsExcluded(newPath))) {
+                        findings.add(descend(file, newPath, children,
+                                             attrs == null ? null
+                                             : attrs.getFileKey(),
+                                             directoryNamesFollowed,
+                                             keysFollowed));
+                    }
+                }
+            }
+
+            if (followSymlinks) {
+                directoryNamesFollowed.removeFirst();
+                keysFollowed.removeFirst();
+            }
+            return findings;
+        }
+
+        /**
+         * Scans a subdirectory, either right away or using the pool.
+         *
+         * @return the list of findings or a Future providing them
+         */
+        private Object descend(final File dir, final TokenizedPath path,
+                               final String[] children, final Object key,
+                               final LinkedList<String> namesFollowed,
+                               final LinkedList<Object> keysFollowed) {
+            if (pool == null) {
+                return scan(dir, path, children, null, key, namesFollowed,
+                            keysFollowed);
+            }
+            // each task needs private copies of the stacks
+            final LinkedList<String> names = new LinkedList<String>(namesFollowed);
+            final LinkedList<Object> keys = new LinkedList<Object>(keysFollowed);
+            return pool.submit(new Callable<List<Object>>() {
+                    public List<Object> call() {
+                        return scan(dir, path, children, null, key, names, keys);
+                    }
+                });
+        }
+
+        /**
+         * Mirrors processIncluded, the check for an earlier result
+         * happens during replay.
+         */
+        private Finding process(final TokenizedPath path, final File file,
+                                final FileAttributes attrs, final boolean isDir) {
+            final String name = path.toString();
+            int outcome;
+            if (isExcluded(path)) {
+                outcome = EXCLUDED;
+            } else {
+                synchronized (selectorLock) {
+                    outcome = isSelected(name, file, attrs) ? SELECTED : DESELECTED;
+                }
+            }
+            return new Finding(name, isDir, outcome);
+        }
+
+        /**
+         * Adds the findings to the result vectors, waiting for
+         * subdirectory tasks as they get encountered.
+         */
+        @SuppressWarnings("unchecked")
+        private void replay(final List<Object> findings) {
+            for (final Object o : findings) {
+                if (o instanceof List) {
+                    replay((List<Object>) o);
+                    continue;
+                }
+                if (o instanceof Future) {
+                    replay(get((Future<?>) o));
+                    continue;
+                }
+                final Finding f = (Finding) o;
+                switch (f.outcome) {
+                case NOT_INCLUDED:
+                    everythingIncluded = false;
+                    (f.isDir ? dirsNotIncluded : filesNotIncluded)
+                        .addElement(f.name);
+                    break;
+                case SYMLINK:
+                    (f.isDir ? dirsExcluded : filesExcluded).addElement(f.name);
+                    break;
+                case WARNING:
+                    // will be caught and redirected to Ant's logging system
+                    System.err.println(f.name);
+                    break;
+                case EXCLUDED:
+                case SELECTED:
+                case DESELECTED:
+                    final Vector<String> inc = f.isDir ? dirsIncluded : filesIncluded;
+                    final Vector<String> exc = f.isDir ? dirsExcluded : filesExcluded;
+                    final Vector<String> des = f.isDir ? dirsDeselected : filesDeselected;
+                    if (inc.contains(f.name) || exc.contains(f.name)
+                        || des.contains(f.name)) {
+                        break;
+                    }
+                    (f.outcome == EXCLUDED ? exc
+                     : f.outcome == SELECTED ? inc : des).add(f.name);
+                    everythingIncluded &= f.outcome == SELECTED;
+                    break;
+                case NOT_FOLLOWED:
+                    notFollowedSymlinks.add(f.name);
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Object> get(final Future<?> future) {
+            try {
+                return (List<Object>) future.get();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BuildException("interrupted while scanning "
+                                         + basedir, ex);
+            } catch (final ExecutionException ex) {
+                final Throwable t = ex.getCause();
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw new BuildException(t);
+            }
+        }
+    }
+
+    /**
+     * Something a {@link TreeWalk} has found.
+     *
+     * <p>The name is the relative path of the file or directory, an
+     * absolute path for symbolic links that haven't been followed
+     * or a message for warnings.</p>
+     *
+     * @since Ant 1.9.5
+     */
+    private static final class Finding {
+        private final String name;
+        private final boolean isDir;
+        private final int outcome;
+
+        Finding(final String name, final boolean isDir, final int outcome) {
+            this.name = name;
+            this.isDir = isDir;
+            this.outcome = outcome;
+        }
+    }
 }
@@ -20,14 +20,19 @@ package org.apache.tools.ant;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.tools.ant.taskdefs.PreSetDef;
 import org.apache.tools.ant.types.EnumeratedAttribute;
@@ -63,7 +68,8 @@ public final class IntrospectionHelper {
     /**
      * Helper instances we've already created (Class.getName() to IntrospectionHelper).
      */
-    private static final Map<String, IntrospectionHelper> HELPERS = new Hashtable<String, IntrospectionHelper>();
+    private static final Map<String, IntrospectionHelper> HELPERS =
+        new ConcurrentHashMap<String, IntrospectionHelper>();
 
     /**
      * Map from primitive types to wrapper classes for use in
@@ -84,6 +90,20 @@ public final class IntrospectionHelper {
         }
     }
 
+    /**
+     * Immutable types with a String constructor whose instances can
+     * be shared between all attributes set to the same value.
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(
+        Arrays.asList(new Class<?>[] {Byte.class, Short.class, Integer.class,
+                                      Float.class, Double.class,
+                                      BigInteger.class, BigDecimal.class}));
+
+    /**
+     * Most converted values each attribute setter remembers.
+     */
+    private static final int MAX_CACHED_VALUES = 64;
+
     private static final int MAX_REPORT_NESTED_TEXT = 20;
     private static final String ELLIPSIS = "...";
 
@@ -91,25 +111,25 @@ public final class IntrospectionHelper {
      * Map from attribute names to attribute types
      * (String to Class).
      */
-    private final Hashtable<String, Class<?>> attributeTypes = new Hashtable<String, Class<?>>();
+    private final Map<String, Class<?>> attributeTypes = new HashMap<String, Class<?>>();
 
     /**
      * Map from attribute names to attribute setter methods
      * (String to AttributeSetter).
      */
-    private final Hashtable<String, AttributeSetter> attributeSetters = new Hashtable<String, AttributeSetter>();
+    private final Map<String, AttributeSetter> attributeSetters = new HashMap<String, AttributeSetter>();
 
     /**
      * Map from attribute names to nested types
      * (String to Class).
      */
-    private final Hashtable<String, Class<?>> nestedTypes = new Hashtable<String, Class<?>>();
+    private final Map<String, Class<?>> nestedTypes = new HashMap<String, Class<?>>();
 
     /**
      * Map from attribute names to methods to create nested types
      * (String to NestedCreator).
      */
-    private final Hashtable<String, NestedCreator> nestedCreators = new Hashtable<String, NestedCreator>();
+    private final Map<String, NestedCreator> nestedCreators = new HashMap<String, NestedCreator>();
 
     /**
      * Vector of methods matching add[Configured](Class) pattern.
@@ -326,7 +346,7 @@ public final class IntrospectionHelper {
      *
      * @return a helper for the specified class
      */
-    public static synchronized IntrospectionHelper getHelper(final Class<?> c) {
+    public static IntrospectionHelper getHelper(final Class<?> c) {
         return getHelper(null, c);
     }
 
@@ -343,7 +363,15 @@ public final class IntrospectionHelper {
      *
      * @return a helper for the specified class
      */
-    public static synchronized IntrospectionHelper getHelper(final Project p, final Class<?> c) {
+    public static IntrospectionHelper getHelper(final Project p, final Class<?> c) {
+        final IntrospectionHelper ih = HELPERS.get(c.getName());
+        if (ih != null && ih.bean == c) {
+            return ih;
+        }
+        return createHelper(p, c);
+    }
+
+    private static synchronized IntrospectionHelper createHelper(final Project p, final Class<?> c) {
         IntrospectionHelper ih = HELPERS.get(c.getName());
         // If a helper cannot be found, or if the helper is for another
         // classloader, create a new IH
@@ -378,8 +406,10 @@ public final class IntrospectionHelper {
      */
     public void setAttribute(final Project p, final Object element, final String attributeName,
             final Object value) throws BuildException {
-        final AttributeSetter as = attributeSetters.get(
-                attributeName.toLowerCase(Locale.ENGLISH));
+        AttributeSetter as = attributeSetters.get(attributeName);
+        if (as == null) {
+            as = attributeSetters.get(attributeName.toLowerCase(Locale.ENGLISH));
+        }
         if (as == null && value != null) {
             if (element instanceof DynamicAttributeNS) {
                 final DynamicAttributeNS dc = (DynamicAttributeNS) element;
@@ -942,7 +972,7 @@ public final class IntrospectionHelper {
      * @see #getAttributeMap
      */
     public Enumeration<String> getAttributes() {
-        return attributeSetters.keys();
+        return Collections.enumeration(attributeSetters.keySet());
     }
 
     /**
@@ -966,7 +996,7 @@ public final class IntrospectionHelper {
      * @see #getNestedElementMap
      */
     public Enumeration<String> getNestedElements() {
-        return nestedTypes.keys();
+        return Collections.enumeration(nestedTypes.keySet());
     }
 
     /**
@@ -1094,12 +1124,11 @@ public final class IntrospectionHelper {
         }
         // Class doesn't have a String constructor but a decent factory method
         if (java.lang.Class.class.equals(reflectedArg)) {
-            return new AttributeSetter(m, arg) {
+            return new CachingAttributeSetter(m, arg) {
                 @Override
-                public void set(final Project p, final Object parent, final String value)
-                        throws InvocationTargetException, IllegalAccessException, BuildException {
+                Object convert(final Project p, final String value) throws BuildException {
                     try {
-                        m.invoke(parent, new Object[] {Class.forName(value)});
+                        return Class.forName(value);
                     } catch (final ClassNotFoundException ce) {
                         throw new BuildException(ce);
                     }
@@ -1149,21 +1178,15 @@ public final class IntrospectionHelper {
         }
 
         if (java.lang.Long.class.equals(reflectedArg)) {
-            return new AttributeSetter(m, arg) {
+            return new CachingAttributeSetter(m, arg) {
                 @Override
-                public void set(final Project p, final Object parent, final String value)
-                        throws InvocationTargetException, IllegalAccessException, BuildException {
+                Object convert(final Project p, final String value) throws BuildException {
                     try {
-                        m.invoke(parent, new Object[] {
-                                new Long(StringUtils.parseHumanSizes(value)) });
+                        return new Long(StringUtils.parseHumanSizes(value));
                     } catch (final NumberFormatException e) {
                         throw new BuildException("Can't assign non-numeric"
                                                  + " value '" + value + "' to"
                                                  + " attribute " + attrName);
-                    } catch (final InvocationTargetException e) {
-                        throw e;
-                    } catch (final IllegalAccessException e) {
-                        throw e;
                     } catch (final Exception e) {
                         throw new BuildException(e);
                     }
@@ -1193,37 +1216,60 @@ public final class IntrospectionHelper {
         final boolean finalIncludeProject = includeProject;
         final Constructor<?> finalConstructor = c;
 
+        if (!includeProject && IMMUTABLE_TYPES.contains(reflectedArg)) {
+            return new CachingAttributeSetter(m, arg) {
+                @Override
+                Object convert(final Project p, final String value)
+                        throws InvocationTargetException, IllegalAccessException, BuildException {
+                    return newAttributeValue(finalConstructor, new Object[] {value},
+                                             attrName, value);
+                }
+            };
+        }
+
         return new AttributeSetter(m, arg) {
             @Override
             public void set(final Project p, final Object parent, final String value)
                     throws InvocationTargetException, IllegalAccessException, BuildException {
-                try {
-                    final Object[] args = finalIncludeProject
-                            ? new Object[] {p, value} : new Object[] {value};
+                final Object[] args = finalIncludeProject
+                        ? new Object[] {p, value} : new Object[] {value};
 
-                    final Object attribute = finalConstructor.newInstance(args);
-                    if (p != null) {
-                        p.setProjectReference(attribute);
-                    }
-                    m.invoke(parent, new Object[] {attribute});
-                } catch (final InvocationTargetException e) {
-                    final Throwable cause = e.getCause();
-                    if (cause instanceof IllegalArgumentException) {
-                        throw new BuildException("Can't assign value '" + value
-                                                 + "' to attribute " + attrName
-                                                 + ", reason: "
-                                                 + cause.getClass()
-                                                 + " with message '"
-                                                 + cause.getMessage() + "'");
-                    }
-                    throw e;
-                } catch (final InstantiationException ie) {
-                    throw new BuildException(ie);
+                final Object attribute =
+                    newAttributeValue(finalConstructor, args, attrName, value);
+                if (p != null) {
+                    p.setProjectReference(attribute);
                 }
+                m.invoke(parent, new Object[] {attribute});
             }
         };
     }
 
+    /**
+     * Invokes the constructor of an attribute's type, turning an
+     * IllegalArgumentException thrown by it into a BuildException
+     * that names the attribute.
+     */
+    private static Object newAttributeValue(final Constructor<?> c, final Object[] args,
+                                            final String attrName, final String value)
+            throws InvocationTargetException, IllegalAccessException, BuildException {
+        try {
+            return c.newInstance(args);
+        } catch (final InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException) {
+                throw new BuildException("Can't assign value '" + value
+                                         + "' to attribute " + attrName
+                                         + ", reason: "
+                                         + cause.getClass()
+                                         + " with message '"
+                                         + cause.getMessage() + "'");
+            }
+            throw e;
+        } catch (final InstantiationException ie) {
+            throw new BuildException(ie);
+        }
+    }
+
     private AttributeSetter getEnumSetter(
         final Class<?> reflectedArg, final Method m, final Class<?> arg) {
         if (reflectedArg.isEnum()) {
@@ -1434,11 +1480,13 @@ public final class IntrospectionHelper {
         static final int ADD_CONFIGURED = 2;
 
         private final Constructor<?> constructor;
+        private final boolean constructorTakesProject;
         private final int behavior; // ADD or ADD_CONFIGURED
 
         AddNestedCreator(final Method m, final Constructor<?> c, final int behavior) {
             super(m);
             this.constructor = c;
+            constructorTakesProject = c.getParameterTypes().length != 0;
             this.behavior = behavior;
         }
 
@@ -1452,8 +1500,8 @@ public final class IntrospectionHelper {
                 throws InvocationTargetException, IllegalAccessException, InstantiationException {
             if (child == null) {
                 child = constructor.newInstance(
-                        constructor.getParameterTypes().length == 0
-                                ? new Object[] {} : new Object[] {project});
+                        constructorTakesProject
+                                ? new Object[] {project} : new Object[] {});
             }
             if (child instanceof PreSetDef.PreSetDefinition) {
                 child = ((PreSetDef.PreSetDefinition) child).createObject(project);
@@ -1485,22 +1533,23 @@ public final class IntrospectionHelper {
     private abstract static class AttributeSetter {
         private final Method method; // the method called to set the attribute
         private final Class<?> type;
+        private final Class<?> useType; // type or its wrapper class
         protected AttributeSetter(final Method m, final Class<?> type) {
             method = m;
             this.type = type;
+            useType = type != null && type.isPrimitive() ? PRIMITIVE_TYPE_MAP.get(type) : type;
+        }
+        Method getMethod() {
+            return method;
         }
         void setObject(final Project p, final Object parent, final Object value)
                 throws InvocationTargetException, IllegalAccessException, BuildException {
             if (type != null) {
-                Class<?> useType = type;
-                if (type.isPrimitive()) {
-                    if (value == null) {
-                        throw new BuildException(
-                            "Attempt to set primitive "
-                            + getPropertyName(method.getName(), "set")
-                            + " to null on " + parent);
-                    }
-                    useType = PRIMITIVE_TYPE_MAP.get(type);
+                if (value == null && type.isPrimitive()) {
+                    throw new BuildException(
+                        "Attempt to set primitive "
+                        + getPropertyName(method.getName(), "set")
+                        + " to null on " + parent);
                 }
                 if (value == null || useType.isInstance(value)) {
                     method.invoke(parent, new Object[] {value});
@@ -1513,6 +1562,33 @@ public final class IntrospectionHelper {
                 throws InvocationTargetException, IllegalAccessException, BuildException;
     }
 
+    /**
+     * AttributeSetter for types whose instances don't depend on the
+     * project and can't be modified, remembers the converted values
+     * of the Strings it has seen.
+     * @since Ant 1.9.5
+     */
+    private abstract static class CachingAttributeSetter extends AttributeSetter {
+        private final Map<String, Object> values = new ConcurrentHashMap<String, Object>();
+        protected CachingAttributeSetter(final Method m, final Class<?> type) {
+            super(m, type);
+        }
+        @Override
+        void set(final Project p, final Object parent, final String value)
+                throws InvocationTargetException, IllegalAccessException, BuildException {
+            Object converted = values.get(value);
+            if (converted == null) {
+                converted = convert(p, value);
+                if (values.size() < MAX_CACHED_VALUES) {
+                    values.put(value, converted);
+                }
+            }
+            getMethod().invoke(parent, new Object[] {converted});
+        }
+        abstract Object convert(Project p, String value)
+                throws InvocationTargetException, IllegalAccessException, BuildException;
+    }
+
     /**
      * Clears the static cache of on build finished.
      */
@@ -0,0 +1,301 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.tools.ant.taskdefs.condition.Os;
+
+/**
+ * Shares opened jars between all {@link AntClassLoader}s of a build.
+ *
+ * <p>A jar is identified by its canonical path, its modification
+ * time and its size.  Each loader acquires the jars of its classpath
+ * and releases them when it gets cleaned up, a jar is closed once it
+ * isn't used by any loader and either has changed on disk, has been
+ * the least recently released of too many unused jars or the build
+ * has finished.</p>
+ *
+ * <p>On Windows an open jar can neither be deleted nor replaced, so
+ * unless the magic property has been set to true explicitly jars are
+ * closed as soon as no loader uses them there.</p>
+ *
+ * @see MagicNames#JAR_FILE_CACHE
+ * @since Ant 1.9.5
+ */
+final class JarFileCache {
+
+    /** Value of the magic property that disables the cache. */
+    private static final String DISABLED = "false";
+
+    /** Value of the magic property that keeps unused jars open on Windows. */
+    private static final String ENABLED = "true";
+
+    private static final boolean ON_WINDOWS = Os.isFamily("windows");
+
+    /** Most jars kept open while no loader uses them. */
+    private static final int MAX_IDLE = 100;
+
+    /** canonical path to the current version of the jar, guarded by JARS */
+    private static final Map<String, CachedJar> JARS = new HashMap<String, CachedJar>();
+
+    /** jars not used by any loader in the order they were released, guarded by JARS */
+    private static final Set<CachedJar> IDLE = new LinkedHashSet<CachedJar>();
+
+    /** projects the cache listens to, guarded by JARS */
+    private static final Map<Project, Boolean> PROJECTS = new WeakHashMap<Project, Boolean>();
+
+    private JarFileCache() {
+    }
+
+    /**
+     * Opens a jar or returns the cached instance.
+     *
+     * <p>Every successful call must be matched by a call to {@link
+     * #release}.</p>
+     *
+     * @param project the project the loader belongs to, may be null
+     * @param file the jar
+     * @return the opened jar
+     * @exception IOException if the file cannot be opened as a jar
+     */
+    static CachedJar acquire(Project project, File file) throws IOException {
+        final String mode =
+            project == null ? null : project.getProperty(MagicNames.JAR_FILE_CACHE);
+        if (DISABLED.equals(mode)) {
+            return new CachedJar(null, 0, 0, false, new JarFile(file));
+        }
+        final boolean keepIdle = !ON_WINDOWS || ENABLED.equals(mode);
+        final String path = file.getCanonicalPath();
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        synchronized (JARS) {
+            listenTo(project);
+            final CachedJar jar = JARS.get(path);
+            if (jar != null && jar.matches(lastModified, length)) {
+                jar.use();
+                return jar;
+            }
+        }
+        final CachedJar opened =
+            new CachedJar(path, lastModified, length, keepIdle, new JarFile(file));
+        CachedJar unused = null;
+        try {
+            synchronized (JARS) {
+                final CachedJar jar = JARS.get(path);
+                if (jar != null && jar.matches(lastModified, length)) {
+                    // another loader has been faster
+                    unused = opened;
+                    jar.use();
+                    return jar;
+                }
+                if (jar != null) {
+                    jar.stale = true;
+                    if (IDLE.remove(jar)) {
+                        unused = jar;
+                    }
+                }
+                JARS.put(path, opened);
+                opened.use();
+                return opened;
+            }
+        } finally {
+            if (unused != null) {
+                unused.close();
+            }
+        }
+    }
+
+    /**
+     * Signals that a loader doesn't use a jar anymore.
+     * @param jar a jar returned by {@link #acquire}
+     */
+    static void release(CachedJar jar) {
+        if (jar.path == null) {
+            jar.close();
+            return;
+        }
+        final List<CachedJar> toClose = new ArrayList<CachedJar>();
+        synchronized (JARS) {
+            if (--jar.users > 0) {
+                return;
+            }
+            if (jar.stale) {
+                toClose.add(jar);
+            } else if (!jar.keepIdle) {
+                JARS.remove(jar.path);
+                toClose.add(jar);
+            } else {
+                IDLE.add(jar);
+                for (Iterator<CachedJar> i = IDLE.iterator(); IDLE.size() > MAX_IDLE;) {
+                    final CachedJar oldest = i.next();
+                    i.remove();
+                    JARS.remove(oldest.path);
+                    toClose.add(oldest);
+                }
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Closes all jars no loader uses.
+     */
+    static void closeIdle() {
+        final List<CachedJar> toClose;
+        synchronized (JARS) {
+            toClose = new ArrayList<CachedJar>(IDLE);
+            IDLE.clear();
+            for (CachedJar jar : toClose) {
+                JARS.remove(jar.path);
+            }
+        }
+        closeAll(toClose);
+    }
+
+    private static void closeAll(List<CachedJar> jars) {
+        for (CachedJar jar : jars) {
+            jar.close();
+        }
+    }
+
+    /**
+     * Makes sure the cache is cleared when the project's build
+     * finishes, must hold the lock on JARS.
+     */
+    private static void listenTo(Project project) {
+        if (project != null && !PROJECTS.containsKey(project)) {
+            PROJECTS.put(project, Boolean.TRUE);
+            project.addBuildListener(new BuildFinishedListener());
+        }
+    }
+
+    /**
+     * An opened jar together with the names of the directories it
+     * contains.
+     */
+    static final class CachedJar {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        /** whether the jar stays open while no loader uses it */
+        private final boolean keepIdle;
+        private final JarFile jarFile;
+        private volatile Set<String> directories;
+        /** number of loaders using the jar, guarded by JARS */
+        private int users;
+        /** whether the file has changed since it has been opened, guarded by JARS */
+        private boolean stale;
+
+        private CachedJar(String path, long lastModified, long length,
+                          boolean keepIdle, JarFile jarFile) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.keepIdle = keepIdle;
+            this.jarFile = jarFile;
+        }
+
+        /**
+         * The opened jar.
+         * @return the opened jar
+         */
+        JarFile getJarFile() {
+            return jarFile;
+        }
+
+        /**
+         * The names of the directories containing at least one entry,
+         * without a trailing slash, "" for the root directory.
+         * @return the directories of the jar
+         */
+        Set<String> getDirectories() {
+            Set<String> dirs = directories;
+            if (dirs == null) {
+                dirs = new HashSet<String>();
+                for (Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements();) {
+                    final String name = e.nextElement().getName();
+                    final int slash = name.lastIndexOf('/');
+                    dirs.add(slash == -1 ? "" : name.substring(0, slash));
+                }
+                dirs = Collections.unmodifiableSet(dirs);
+                directories = dirs;
+            }
+            return dirs;
+        }
+
+        private boolean matches(long lastModified, long length) {
+            return !stale && this.lastModified == lastModified
+                && this.length == length;
+        }
+
+        /** must hold the lock on JARS */
+        private void use() {
+            if (users++ == 0) {
+                IDLE.remove(this);
+            }
+        }
+
+        private void close() {
+            try {
+                jarFile.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Closes unused jars at the end of the build.
+     */
+    private static final class BuildFinishedListener implements BuildListener {
+        public void buildStarted(BuildEvent event) {
+        }
+        public void buildFinished(BuildEvent event) {
+            event.getProject().removeBuildListener(this);
+            synchronized (JARS) {
+                PROJECTS.remove(event.getProject());
+            }
+            closeIdle();
+        }
+        public void targetStarted(BuildEvent event) {
+        }
+        public void targetFinished(BuildEvent event) {
+        }
+        public void taskStarted(BuildEvent event) {
+        }
+        public void taskFinished(BuildEvent event) {
+        }
+        public void messageLogged(BuildEvent event) {
+        }
+    }
+}
@@ -101,6 +101,14 @@ public final class MagicNames {
      */
     public static final String ANT_EXECUTOR_CLASSNAME = "ant.executor.class";
 
+    /**
+     * Property defining the number of targets the parallel executor
+     * runs at the same time.
+     * Value: {@value}
+     * @since Ant 1.9.5
+     */
+    public static final String ANT_EXECUTOR_THREADS = "ant.executor.threads";
+
     /**
      * property name for basedir of the project.
      * Value: {@value}
@@ -289,5 +297,54 @@ public final class MagicNames {
      * Value {@value}
      */
     public static final String HTTP_AGENT_PROPERTY = "ant.http.agent";
+
+    /**
+     * Name of the property that makes filesets and dirsets scan
+     * their directories using several threads unless their parallel
+     * attribute has been set explicitly.
+     * Value {@value}
+     * @since Ant 1.9.5
+     */
+    public static final String SCANNER_PARALLEL = "ant.scanner.parallel";
+
+    /**
+     * Name of the property that makes filesets and dirsets read
+     * directories and file attributes using java.nio.file when
+     * running on Java7 or later.
+     * Value {@value}
+     * @since Ant 1.9.5
+     */
+    public static final String SCANNER_NIO = "ant.scanner.nio";
+
+    /**
+     * Name of the property holding the file filesets and dirsets
+     * use to cache directory listings across builds.  Only used
+     * when running on Java7 or later.
+     * Value {@value}
+     * @since Ant 1.9.5
+     */
+    public static final String SCANNER_CACHE = "ant.scanner.cache";
+
+    /**
+     * Name of the property that controls whether build files that
+     * have been parsed before are parsed again.  Set it to
+     * <code>false</code> to always parse build files or to
+     * <code>checksum</code> to compare the contents of build files in
+     * addition to their timestamps and sizes.
+     * Value {@value}
+     * @since Ant 1.9.5
+     */
+    public static final String BUILD_FILE_CACHE = "ant.parser.cache";
+
+    /**
+     * Name of the property that controls whether class loaders share
+     * the jars they have opened with other class loaders of the
+     * build.  Set it to <code>false</code> to make each class loader
+     * open its own jars.  Unused jars are only kept open on Windows
+     * if it has been set to <code>true</code>.
+     * Value {@value}
+     * @since Ant 1.9.5
+     */
+    public static final String JAR_FILE_CACHE = "ant.classloader.jarcache";
 }
 
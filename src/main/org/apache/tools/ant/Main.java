@@ -38,6 +38,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
 
+import org.apache.tools.ant.helper.ParallelExecutor;
 import org.apache.tools.ant.input.DefaultInputHandler;
 import org.apache.tools.ant.input.InputHandler;
 import org.apache.tools.ant.launch.AntMain;
@@ -394,6 +395,8 @@ public class Main implements AntMain {
                 keepGoingMode = true;
             } else if (arg.equals("-nice")) {
                 i = handleArgNice(args, i);
+            } else if (arg.equals("-parallel")) {
+                i = handleArgParallel(args, i);
             } else if (LAUNCH_COMMANDS.contains(arg)) {
                 //catch script/ant mismatch with a meaningful message
                 //we could ignore it, but there are likely to be other
@@ -644,6 +647,32 @@ public class Main implements AntMain {
         return pos;
     }
 
+    /** Handle the -parallel argument. */
+    private int handleArgParallel(final String[] args, int pos) {
+        final String threads;
+        try {
+            threads = args[++pos];
+        } catch (final ArrayIndexOutOfBoundsException aioobe) {
+            throw new BuildException(
+                "You must supply the number of targets to run in parallel"
+                + " after the -parallel option");
+        }
+        try {
+            if (Integer.parseInt(threads) < 1) {
+                throw new BuildException(
+                    "The number of targets to run in parallel must be"
+                    + " positive");
+            }
+        } catch (final NumberFormatException e) {
+            throw new BuildException("Unrecognized number of targets to run"
+                                     + " in parallel: " + threads);
+        }
+        definedProps.put(MagicNames.ANT_EXECUTOR_CLASSNAME,
+                         ParallelExecutor.class.getName());
+        definedProps.put(MagicNames.ANT_EXECUTOR_THREADS, threads);
+        return pos;
+    }
+
     // --------------------------------------------------------
     //    other methods
     // --------------------------------------------------------
@@ -1038,6 +1067,8 @@ public class Main implements AntMain {
         System.out.println("    -s  <file>           the filesystem and use it");
         System.out.println("  -nice  number          A niceness value for the main thread:"
                 + "                         1 (lowest) to 10 (highest); 5 is the default");
+        System.out.println("  -parallel number       run up to number targets that don't depend");
+        System.out.println("                         on each other at the same time");
         System.out.println("  -nouserlib             Run ant without using the jar files from"
                 + "                         ${user.home}/.ant/lib");
         System.out.println("  -noclasspath           Run ant without using CLASSPATH");
@@ -21,18 +21,21 @@ import java.text.ParsePosition;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.tools.ant.property.GetProperty;
 import org.apache.tools.ant.property.NullReturn;
 import org.apache.tools.ant.property.ParseNextProperty;
 import org.apache.tools.ant.property.ParseProperties;
 import org.apache.tools.ant.property.PropertyExpander;
+import org.apache.tools.ant.property.PropertyTemplate;
 
 /* ISSUES:
  - ns param. It could be used to provide "namespaces" for properties, which
@@ -246,26 +249,43 @@ public class PropertyHelper implements GetProperty {
         }
     };
 
+    /** Number of expanders added by the constructor. */
+    private static final int BUILT_IN_EXPANDERS = 2;
+
+    /** Most templates kept by {@link #TEMPLATES}. */
+    private static final int MAX_TEMPLATES = 10000;
+
+    /**
+     * Parsed Strings shared by all PropertyHelpers that only use the
+     * built-in expanders.
+     *
+     * @since Ant 1.9.5
+     */
+    private static final Map<String, PropertyTemplate> TEMPLATES =
+        new ConcurrentHashMap<String, PropertyTemplate>();
+
     private Project project;
     private PropertyHelper next;
-    private final Hashtable<Class<? extends Delegate>, List<Delegate>> delegates = new Hashtable<Class<? extends Delegate>, List<Delegate>>();
+    // lists are replaced rather than modified, so lookups don't need a lock
+    private final Map<Class<? extends Delegate>, List<Delegate>> delegates =
+        new ConcurrentHashMap<Class<? extends Delegate>, List<Delegate>>();
 
     /** Project properties map (usually String to String). */
-    private Hashtable<String, Object> properties = new Hashtable<String, Object>();
+    private final Hashtable<String, Object> properties = new Hashtable<String, Object>();
 
     /**
      * Map of "user" properties (as created in the Ant task, for example).
      * Note that these key/value pairs are also always put into the
      * project properties, so only the project properties need to be queried.
      */
-    private Hashtable<String, Object> userProperties = new Hashtable<String, Object>();
+    private final Hashtable<String, Object> userProperties = new Hashtable<String, Object>();
 
     /**
      * Map of inherited "user" properties - that are those "user"
      * properties that have been created by tasks and not been set
      * from the command line or a GUI tool.
      */
-    private Hashtable<String, Object> inheritedProperties = new Hashtable<String, Object>();
+    private final Hashtable<String, Object> inheritedProperties = new Hashtable<String, Object>();
 
     /**
      * Default constructor.
@@ -389,7 +409,18 @@ public class PropertyHelper implements GetProperty {
      *
      * @return the project's property helper.
      */
-    public static synchronized PropertyHelper getPropertyHelper(Project project) {
+    public static PropertyHelper getPropertyHelper(Project project) {
+        if (project != null) {
+            PropertyHelper helper = (PropertyHelper) project
+                .getReference(MagicNames.REFID_PROPERTY_HELPER);
+            if (helper != null) {
+                return helper;
+            }
+        }
+        return createPropertyHelper(project);
+    }
+
+    private static synchronized PropertyHelper createPropertyHelper(Project project) {
         PropertyHelper helper = null;
         if (project != null) {
             helper = (PropertyHelper) project.getReference(MagicNames
@@ -585,6 +616,12 @@ public class PropertyHelper implements GetProperty {
      *         <code>null</code> if the original string is <code>null</code>.
      */
     public Object parseProperties(String value) throws BuildException {
+        if (usesBuiltInExpandersOnly()) {
+            if (value == null || value.indexOf('$') < 0) {
+                return value;
+            }
+            return getTemplate(value).expand(getProject(), this);
+        }
         return new ParseProperties(getProject(), getExpanders(), this)
             .parseProperties(value);
     }
@@ -595,10 +632,57 @@ public class PropertyHelper implements GetProperty {
      * @return <code>true</code> if <code>value</code> contains property notation.
      */
     public boolean containsProperties(String value) {
+        if (usesBuiltInExpandersOnly()) {
+            return value != null && value.indexOf('$') >= 0
+                && getTemplate(value).containsProperties();
+        }
         return new ParseProperties(getProject(), getExpanders(), this)
             .containsProperties(value);
     }
 
+    /**
+     * Whether the only expanders are the ones that handle
+     * <code>${name}</code> and <code>$$</code>.
+     *
+     * <p>Those only look at the String being parsed, so the split
+     * into literal text and property references can be shared by
+     * all PropertyHelpers.</p>
+     *
+     * @since Ant 1.9.5
+     */
+    private boolean usesBuiltInExpandersOnly() {
+        final Collection<PropertyExpander> expanders = getExpanders();
+        if (expanders.size() != BUILT_IN_EXPANDERS) {
+            return false;
+        }
+        for (PropertyExpander e : expanders) {
+            if (e != DEFAULT_EXPANDER && e != SKIP_DOUBLE_DOLLAR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks up or creates the template for a String.
+     *
+     * @since Ant 1.9.5
+     */
+    private PropertyTemplate getTemplate(String value) {
+        PropertyTemplate t = TEMPLATES.get(value);
+        if (t == null) {
+            t = new ParseProperties(getProject(), getExpanders(), this)
+                .compile(value);
+            if (TEMPLATES.size() >= MAX_TEMPLATES) {
+                // a cheap way to bound memory for builds that expand
+                // an unusual number of distinct Strings
+                TEMPLATES.clear();
+            }
+            TEMPLATES.put(value, t);
+        }
+        return t;
+    }
+
     // -------------------- Default implementation  --------------------
     // Methods used to support the default behavior and provide backward
     // compatibility. Some will be deprecated, you should avoid calling them.
@@ -978,17 +1062,18 @@ public class PropertyHelper implements GetProperty {
      * @since Ant 1.6
      */
     public void copyInheritedProperties(Project other) {
-        //avoid concurrent modification:
-        synchronized (inheritedProperties) {
-            Enumeration<String> e = inheritedProperties.keys();
-            while (e.hasMoreElements()) {
-                String arg = e.nextElement().toString();
-                if (other.getUserProperty(arg) != null) {
-                    continue;
-                }
-                Object value = inheritedProperties.get(arg);
-                other.setInheritedProperty(arg, value.toString());
+        Map<String, Object> inherited = toStringValues(inheritedProperties, null);
+        PropertyHelper target = getPropertyHelper(other);
+        if (canWriteTablesOf(other, target)) {
+            target.addUserProperties(inherited, true);
+            return;
+        }
+        for (Map.Entry<String, Object> e : inherited.entrySet()) {
+            String arg = e.getKey();
+            if (other.getUserProperty(arg) != null) {
+                continue;
             }
+            other.setInheritedProperty(arg, (String) e.getValue());
         }
     }
 
@@ -1008,18 +1093,145 @@ public class PropertyHelper implements GetProperty {
      * @since Ant 1.6
      */
     public void copyUserProperties(Project other) {
+        Map<String, Object> userOnly =
+            toStringValues(userProperties, inheritedProperties.keySet());
+        PropertyHelper target = getPropertyHelper(other);
+        if (canWriteTablesOf(other, target)) {
+            target.addUserProperties(userOnly, false);
+            return;
+        }
+        for (Map.Entry<String, Object> e : userOnly.entrySet()) {
+            other.setUserProperty(e.getKey(), (String) e.getValue());
+        }
+    }
+
+    /**
+     * Copies all properties that are not part of the given set of
+     * names from this instance to the Project instance given as the
+     * argument, unless the other project already contains a property
+     * of the same name.
+     *
+     * <p>Does not copy properties held by implementations of
+     * delegates (like local properties).</p>
+     *
+     * @param other the project to copy the properties to.  Must not be null.
+     * @param excludes names of properties that must not be copied.
+     *                 Must not be null.
+     *
+     * @since Ant 1.9.5
+     */
+    public void copyNewProperties(Project other, Set<String> excludes) {
+        // subclasses may keep their properties somewhere else
+        Map<String, Object> props = toStringValues(getClass() == PropertyHelper.class
+                                                   ? properties : getProperties(),
+                                                   excludes);
+        PropertyHelper target = getPropertyHelper(other);
+        if (canWriteTablesOf(other, target) && target.usesBuiltInDelegatesOnly()) {
+            target.addNewProperties(props);
+            return;
+        }
+        for (Map.Entry<String, Object> e : props.entrySet()) {
+            if (other.getProperty(e.getKey()) == null) {
+                other.setNewProperty(e.getKey(), (String) e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Whether properties are only read from and written to this
+     * instance's tables.
+     */
+    private boolean usesBuiltInDelegatesOnly() {
+        if (!getDelegates(PropertySetter.class).isEmpty()) {
+            return false;
+        }
+        for (PropertyEvaluator e : getDelegates(PropertyEvaluator.class)) {
+            if (e != FROM_REF && e != TO_STRING) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether properties can be added to the tables of the given
+     * project's PropertyHelper directly rather than via its setter
+     * methods, which is only true if neither the project nor its
+     * PropertyHelper could have overridden the setters.
+     */
+    private static boolean canWriteTablesOf(Project other, PropertyHelper target) {
+        return other.getClass() == Project.class
+            && target.getClass() == PropertyHelper.class;
+    }
+
+    /**
+     * Adds the given properties as user or inherited properties
+     * without logging each of them individually.
+     * @param m the properties
+     * @param inherited whether the properties are inherited ones,
+     * these don't override existing user properties
+     */
+    private void addUserProperties(Map<String, Object> m, boolean inherited) {
+        if (m.isEmpty()) {
+            return;
+        }
+        if (project != null) {
+            project.log("Setting " + m.size() + " ro project properties",
+                        Project.MSG_DEBUG);
+        }
+        synchronized (this) {
+            for (Map.Entry<String, Object> e : m.entrySet()) {
+                String name = e.getKey();
+                if (inherited) {
+                    if (userProperties.containsKey(name)) {
+                        continue;
+                    }
+                    inheritedProperties.put(name, e.getValue());
+                }
+                userProperties.put(name, e.getValue());
+                properties.put(name, e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds the given properties unless properties of the same names
+     * exist, without logging each of them individually.
+     * @param m the properties
+     */
+    private void addNewProperties(Map<String, Object> m) {
+        if (m.isEmpty()) {
+            return;
+        }
+        if (project != null) {
+            project.log("Setting " + m.size() + " project properties",
+                        Project.MSG_DEBUG);
+        }
+        synchronized (this) {
+            for (Map.Entry<String, Object> e : m.entrySet()) {
+                if (!properties.containsKey(e.getKey())) {
+                    properties.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies all entries of the table whose keys are not in exclude,
+     * converting the values to Strings.
+     */
+    private static Map<String, Object> toStringValues(Hashtable<String, Object> table,
+                                                      Set<String> exclude) {
+        Map<String, Object> m = new HashMap<String, Object>();
         //avoid concurrent modification:
-        synchronized (userProperties) {
-            Enumeration<String> e = userProperties.keys();
-            while (e.hasMoreElements()) {
-                Object arg = e.nextElement();
-                if (inheritedProperties.containsKey(arg)) {
-                    continue;
+        synchronized (table) {
+            for (Map.Entry<String, Object> e : table.entrySet()) {
+                if (exclude == null || !exclude.contains(e.getKey())) {
+                    m.put(e.getKey(), e.getValue().toString());
                 }
-                Object value = userProperties.get(arg);
-                other.setUserProperty(arg.toString(), value.toString());
             }
         }
+        return m;
     }
 
     // -------------------- Property parsing  --------------------
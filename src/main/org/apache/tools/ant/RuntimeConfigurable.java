@@ -146,6 +146,10 @@ public class RuntimeConfigurable implements Serializable {
         }
     }
 
+    /** shared result for all attributes outside of Ant's namespaces */
+    private static final AttributeComponentInformation NOT_RESTRICTED =
+        new AttributeComponentInformation(null, false);
+
     /**
      *
      * @param name    the name of the attribute.
@@ -154,13 +158,13 @@ public class RuntimeConfigurable implements Serializable {
      */
     private AttributeComponentInformation isRestrictedAttribute(String name, ComponentHelper componentHelper) {
         if (name.indexOf(':') == -1) {
-            return new AttributeComponentInformation(null, false);
+            return NOT_RESTRICTED;
         }
         String componentName = attrToComponent(name);
         String ns = ProjectHelper.extractUriFromComponentName(componentName);
         if (componentHelper.getRestrictedDefinitions(
                 ProjectHelper.nsToComponentName(ns)) == null) {
-            return new AttributeComponentInformation(null, false);
+            return NOT_RESTRICTED;
         }
         return new AttributeComponentInformation(componentName, true);
     }
@@ -496,6 +500,7 @@ public class RuntimeConfigurable implements Serializable {
             IntrospectionHelper.getHelper(p, target.getClass());
          ComponentHelper componentHelper = ComponentHelper.getComponentHelper(p);
         if (attributeMap != null) {
+            PropertyHelper propertyHelper = PropertyHelper.getPropertyHelper(p);
             for (Entry<String, Object> entry : attributeMap.entrySet()) {
                 String name = entry.getKey();
                 // skip restricted attributes such as if:set
@@ -511,7 +516,7 @@ public class RuntimeConfigurable implements Serializable {
                 if (value instanceof Evaluable) {
                     attrValue = ((Evaluable) value).eval();
                 } else {
-                    attrValue = PropertyHelper.getPropertyHelper(p).parseProperties(value.toString());
+                    attrValue = propertyHelper.parseProperties(value.toString());
                 }
                 if (target instanceof MacroInstance) {
                     for (Attribute attr : ((MacroInstance) target).getMacroDef().getAttributes()) {
@@ -0,0 +1,453 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.FileUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Keeps the SAX events of build files that have been parsed before
+ * so {@link ProjectHelper2} can feed them to its handlers again
+ * instead of reading and parsing the XML another time.
+ *
+ * <p>The handlers build a fresh tree of targets and {@link
+ * org.apache.tools.ant.UnknownElement UnknownElement}s for each
+ * project, only the XML parsing is skipped.  A file is identified
+ * by its canonical path, its modification time and its size,
+ * optionally a checksum of its content is compared as well.  Files
+ * that use external entities or an external DTD are never
+ * cached.</p>
+ *
+ * <p>Files read within the file system's timestamp granularity of
+ * their last modification are not cached either as they may have
+ * been modified again without their timestamp or size
+ * changing.</p>
+ *
+ * @see MagicNames#BUILD_FILE_CACHE
+ * @since Ant 1.9.5
+ */
+final class BuildFileCache {
+
+    /** Value of the magic property that disables the cache. */
+    private static final String DISABLED = "false";
+
+    /** Value of the magic property that enables content checksums. */
+    private static final String CHECKSUM = "checksum";
+
+    private static final String CHECKSUM_ALGORITHM = "MD5";
+
+    /** Most build files kept. */
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private static final Map<String, ParsedFile> CACHE =
+        new ConcurrentHashMap<String, ParsedFile>();
+
+    private BuildFileCache() {
+    }
+
+    /**
+     * Looks up the cached events of a build file.
+     * @param project the project the file is parsed for
+     * @param buildFile the file to parse
+     * @return the cached events or null if the file hasn't been
+     * parsed before or has changed since
+     */
+    static ParsedFile lookup(Project project, File buildFile) {
+        FileKey key = FileKey.create(project, buildFile);
+        if (key == null) {
+            return null;
+        }
+        ParsedFile parsed = CACHE.get(key.path);
+        return parsed != null && parsed.key.matches(key) ? parsed : null;
+    }
+
+    /**
+     * Creates a handler that passes all events on to the given
+     * handler and records them.
+     * @param project the project the file is parsed for
+     * @param buildFile the file to parse
+     * @param handler the handler to pass the events to
+     * @return the recording handler or null if the file can't be
+     * cached
+     */
+    static Recorder record(Project project, File buildFile,
+                           ProjectHelper2.RootHandler handler) {
+        FileKey key = FileKey.create(project, buildFile);
+        return key == null ? null : new Recorder(key, handler);
+    }
+
+    /**
+     * Identifies a specific version of a file.
+     */
+    private static final class FileKey {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final byte[] checksum;
+        /** when the attributes have been read */
+        private final long readAt;
+
+        private FileKey(String path, long lastModified, long length,
+                        byte[] checksum, long readAt) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.checksum = checksum;
+            this.readAt = readAt;
+        }
+
+        /**
+         * @return null if the cache has been disabled or the file
+         * can't be read
+         */
+        private static FileKey create(Project project, File f) {
+            String mode = project.getProperty(MagicNames.BUILD_FILE_CACHE);
+            if (DISABLED.equals(mode)) {
+                return null;
+            }
+            try {
+                // read the attributes before the content so a
+                // concurrent modification causes a mismatch later
+                long readAt = System.currentTimeMillis();
+                long lastModified = f.lastModified();
+                long length = f.length();
+                if (lastModified == 0) {
+                    return null;
+                }
+                return new FileKey(f.getCanonicalPath(), lastModified, length,
+                                   CHECKSUM.equals(mode) ? checksum(f) : null,
+                                   readAt);
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+
+        private static byte[] checksum(File f) throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IOException(ex.getMessage());
+            }
+            InputStream in = null;
+            try {
+                in = new FileInputStream(f);
+                byte[] buf = new byte[8192];
+                int read;
+                while ((read = in.read(buf)) != -1) {
+                    digest.update(buf, 0, read);
+                }
+            } finally {
+                FileUtils.close(in);
+            }
+            return digest.digest();
+        }
+
+        /**
+         * Whether this key of a cached file describes the same
+         * content as the given key.  The checksums are only compared
+         * if the given key has got one.
+         */
+        private boolean matches(FileKey o) {
+            return path.equals(o.path) && lastModified == o.lastModified
+                && length == o.length
+                && (o.checksum == null || Arrays.equals(checksum, o.checksum));
+        }
+
+        /**
+         * Whether a later modification of the file is guaranteed to
+         * change its timestamp.
+         */
+        private boolean isSettled() {
+            return readAt - lastModified > FILE_UTILS.getFileTimestampGranularity();
+        }
+    }
+
+    /**
+     * The events of a parsed file.
+     */
+    static final class ParsedFile {
+        private final FileKey key;
+        private final Event[] events;
+
+        private ParsedFile(FileKey key, Event[] events) {
+            this.key = key;
+            this.events = events;
+        }
+
+        /**
+         * Sends all events to the given handler.
+         * @param handler the handler
+         * @param systemId the system id to report for the events
+         * @throws SAXException if the handler throws it
+         */
+        void replay(DefaultHandler handler, String systemId) throws SAXException {
+            ReplayLocator locator = new ReplayLocator(systemId);
+            handler.setDocumentLocator(locator);
+            handler.startDocument();
+            for (int i = 0; i < events.length; i++) {
+                locator.line = events[i].line;
+                locator.column = events[i].column;
+                events[i].replay(handler);
+            }
+            handler.endDocument();
+        }
+    }
+
+    /**
+     * Forwards all events to a RootHandler and records them.
+     */
+    static final class Recorder extends DefaultHandler {
+        private final FileKey key;
+        private final ProjectHelper2.RootHandler handler;
+        private final List<Event> events = new ArrayList<Event>();
+        private Locator locator;
+        private boolean cacheable = true;
+
+        private Recorder(FileKey key, ProjectHelper2.RootHandler handler) {
+            this.key = key;
+            this.handler = handler;
+        }
+
+        /**
+         * Adds the recorded events to the cache unless something
+         * made the file unsuitable.  Must only be called after the
+         * file has been parsed successfully.
+         */
+        void store() {
+            if (!cacheable || !key.isSettled()) {
+                return;
+            }
+            if (CACHE.size() >= MAX_ENTRIES) {
+                CACHE.clear();
+            }
+            CACHE.put(key.path,
+                      new ParsedFile(key, events.toArray(new Event[events.size()])));
+        }
+
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+            handler.setDocumentLocator(locator);
+        }
+
+        public InputSource resolveEntity(String publicId, String systemId)
+            throws IOException, SAXException {
+            // content that doesn't come from the build file itself
+            cacheable = false;
+            return handler.resolveEntity(publicId, systemId);
+        }
+
+        public void notationDecl(String name, String publicId, String systemId)
+            throws SAXException {
+            cacheable = false;
+            handler.notationDecl(name, publicId, systemId);
+        }
+
+        public void unparsedEntityDecl(String name, String publicId,
+                                       String systemId, String notationName)
+            throws SAXException {
+            cacheable = false;
+            handler.unparsedEntityDecl(name, publicId, systemId, notationName);
+        }
+
+        public void startElement(String uri, String tag, String qname,
+                                 Attributes attrs) throws SAXException {
+            add(new StartElement(uri, tag, qname, new AttributesImpl(attrs)));
+            handler.startElement(uri, tag, qname, attrs);
+        }
+
+        public void endElement(String uri, String tag, String qname)
+            throws SAXException {
+            add(new EndElement(uri, tag, qname));
+            handler.endElement(uri, tag, qname);
+        }
+
+        public void characters(char[] buf, int start, int count)
+            throws SAXException {
+            char[] copy = new char[count];
+            System.arraycopy(buf, start, copy, 0, count);
+            add(new Characters(copy));
+            handler.characters(buf, start, count);
+        }
+
+        public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+            add(new StartPrefixMapping(prefix, uri));
+            handler.startPrefixMapping(prefix, uri);
+        }
+
+        public void endPrefixMapping(String prefix) throws SAXException {
+            add(new EndPrefixMapping(prefix));
+            handler.endPrefixMapping(prefix);
+        }
+
+        public void warning(SAXParseException e) throws SAXException {
+            // replaying wouldn't report the warning again
+            cacheable = false;
+            handler.warning(e);
+        }
+
+        public void error(SAXParseException e) throws SAXException {
+            cacheable = false;
+            handler.error(e);
+        }
+
+        public void fatalError(SAXParseException e) throws SAXException {
+            cacheable = false;
+            handler.fatalError(e);
+        }
+
+        private void add(Event e) {
+            if (locator != null) {
+                e.line = locator.getLineNumber();
+                e.column = locator.getColumnNumber();
+            }
+            events.add(e);
+        }
+    }
+
+    /**
+     * Locator that reports the positions of replayed events.
+     */
+    private static final class ReplayLocator implements Locator {
+        private final String systemId;
+        private int line = -1;
+        private int column = -1;
+
+        private ReplayLocator(String systemId) {
+            this.systemId = systemId;
+        }
+
+        public String getPublicId() {
+            return null;
+        }
+
+        public String getSystemId() {
+            return systemId;
+        }
+
+        public int getLineNumber() {
+            return line;
+        }
+
+        public int getColumnNumber() {
+            return column;
+        }
+    }
+
+    private abstract static class Event {
+        private int line = -1;
+        private int column = -1;
+
+        abstract void replay(DefaultHandler handler) throws SAXException;
+    }
+
+    private static final class StartElement extends Event {
+        private final String uri;
+        private final String tag;
+        private final String qname;
+        private final Attributes attrs;
+
+        private StartElement(String uri, String tag, String qname, Attributes attrs) {
+            this.uri = uri;
+            this.tag = tag;
+            this.qname = qname;
+            this.attrs = attrs;
+        }
+
+        void replay(DefaultHandler handler) throws SAXException {
+            handler.startElement(uri, tag, qname, attrs);
+        }
+    }
+
+    private static final class EndElement extends Event {
+        private final String uri;
+        private final String tag;
+        private final String qname;
+
+        private EndElement(String uri, String tag, String qname) {
+            this.uri = uri;
+            this.tag = tag;
+            this.qname = qname;
+        }
+
+        void replay(DefaultHandler handler) throws SAXException {
+            handler.endElement(uri, tag, qname);
+        }
+    }
+
+    private static final class Characters extends Event {
+        private final char[] chars;
+
+        private Characters(char[] chars) {
+            this.chars = chars;
+        }
+
+        void replay(DefaultHandler handler) throws SAXException {
+            handler.characters(chars, 0, chars.length);
+        }
+    }
+
+    private static final class StartPrefixMapping extends Event {
+        private final String prefix;
+        private final String uri;
+
+        private StartPrefixMapping(String prefix, String uri) {
+            this.prefix = prefix;
+            this.uri = uri;
+        }
+
+        void replay(DefaultHandler handler) throws SAXException {
+            handler.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    private static final class EndPrefixMapping extends Event {
+        private final String prefix;
+
+        private EndPrefixMapping(String prefix) {
+            this.prefix = prefix;
+        }
+
+        void replay(DefaultHandler handler) throws SAXException {
+            handler.endPrefixMapping(prefix);
+        }
+    }
+}
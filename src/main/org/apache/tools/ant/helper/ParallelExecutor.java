@@ -0,0 +1,286 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.helper;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Executor;
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Target;
+
+/**
+ * Target executor implementation that runs targets which don't
+ * depend on each other concurrently.
+ *
+ * <p>Like {@link SingleCheckExecutor} the dependencies of all
+ * targets are computed together so shared dependencies are run just
+ * once.  A target is started as soon as all targets it depends on
+ * have succeeded, at most as many targets as given by the
+ * <code>ant.executor.threads</code> property (defaulting to the
+ * number of available processors) run at the same time.</p>
+ *
+ * <p>If a target fails no further targets are started and the
+ * failure is reported once the running targets have finished.  In
+ * "keep-going" mode all targets that don't depend on the failed
+ * target are still executed.</p>
+ *
+ * <p>Targets are only ordered by their <code>depends</code>
+ * attributes, build files that rely on the order of independent
+ * targets - for example by setting properties one of them uses in an
+ * <code>if</code> attribute - should not use this executor.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public class ParallelExecutor implements Executor {
+
+    private static final SingleCheckExecutor SUB_EXECUTOR = new SingleCheckExecutor();
+
+    /** {@inheritDoc}. */
+    public void executeTargets(Project project, String[] targetNames)
+        throws BuildException {
+        Vector<Target> sorted =
+            project.topoSort(targetNames, project.getTargets(), false);
+        int threads = getThreadCount(project);
+        ExecutorService pool =
+            Executors.newFixedThreadPool(threads, new TargetThreadFactory());
+        try {
+            new Run(project, sorted, pool).execute();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** {@inheritDoc}. */
+    public Executor getSubProjectExecutor() {
+        return SUB_EXECUTOR;
+    }
+
+    /**
+     * Number of targets to run concurrently.
+     */
+    private static int getThreadCount(Project project) {
+        String threads = project.getProperty(MagicNames.ANT_EXECUTOR_THREADS);
+        if (threads == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int count = Integer.parseInt(threads.trim());
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException ex) {
+            // fall through
+        }
+        throw new BuildException("Invalid value for "
+                                 + MagicNames.ANT_EXECUTOR_THREADS + ": "
+                                 + threads);
+    }
+
+    /**
+     * State of a single invocation of executeTargets.
+     */
+    private static class Run {
+        private final Project project;
+        private final Vector<Target> sorted;
+        private final ExecutorService pool;
+        /** number of dependencies that haven't succeeded, yet */
+        private final Map<String, Integer> pending = new HashMap<String, Integer>();
+        /** targets depending on a given target */
+        private final Map<String, List<Target>> dependents =
+            new HashMap<String, List<Target>>();
+        private final Set<String> succeeded = new HashSet<String>();
+        private final BlockingQueue<Result> results =
+            new LinkedBlockingQueue<Result>();
+        private int running = 0;
+        /** first failure */
+        private Throwable failure = null;
+        /** first build exception, keep-going mode only */
+        private BuildException buildException = null;
+
+        Run(Project project, Vector<Target> sorted, ExecutorService pool) {
+            this.project = project;
+            this.sorted = sorted;
+            this.pool = pool;
+        }
+
+        void execute() {
+            for (Target t : sorted) {
+                int count = 0;
+                for (Enumeration<String> deps = t.getDependencies();
+                     deps.hasMoreElements();) {
+                    String dep = deps.nextElement();
+                    List<Target> l = dependents.get(dep);
+                    if (l == null) {
+                        l = new ArrayList<Target>();
+                        dependents.put(dep, l);
+                    }
+                    l.add(t);
+                    count++;
+                }
+                pending.put(t.getName(), Integer.valueOf(count));
+            }
+            for (Target t : sorted) {
+                if (pending.get(t.getName()).intValue() == 0) {
+                    start(t);
+                }
+            }
+            while (running > 0) {
+                Result r;
+                try {
+                    r = results.take();
+                } catch (InterruptedException ex) {
+                    throw new BuildException("interrupted while waiting for"
+                                             + " targets to finish", ex);
+                }
+                running--;
+                if (r.error == null) {
+                    succeeded(r.target);
+                } else {
+                    failed(r.target, r.error);
+                }
+            }
+            if (failure == null) {
+                return;
+            }
+            if (!project.isKeepGoingMode()) {
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                throw new BuildException(failure);
+            }
+            reportNotExecuted();
+            throw buildException;
+        }
+
+        private void start(final Target t) {
+            if (failure != null && !project.isKeepGoingMode()) {
+                // fail fast
+                return;
+            }
+            running++;
+            pool.execute(new Runnable() {
+                    public void run() {
+                        Throwable error = null;
+                        try {
+                            t.performTasks();
+                        } catch (Throwable ex) {
+                            error = ex;
+                        }
+                        results.add(new Result(t, error));
+                    }
+                });
+        }
+
+        private void succeeded(Target t) {
+            succeeded.add(t.getName());
+            List<Target> l = dependents.get(t.getName());
+            if (l == null) {
+                return;
+            }
+            for (Target d : l) {
+                int left = pending.get(d.getName()).intValue() - 1;
+                pending.put(d.getName(), Integer.valueOf(left));
+                if (left == 0) {
+                    start(d);
+                }
+            }
+        }
+
+        private void failed(Target t, Throwable error) {
+            if (failure == null) {
+                failure = error;
+            }
+            if (!project.isKeepGoingMode()) {
+                return;
+            }
+            project.log(t, "Target '" + t.getName()
+                        + "' failed with message '"
+                        + error.getMessage() + "'.", Project.MSG_ERR);
+            if (!(error instanceof BuildException)) {
+                error.printStackTrace(System.err);
+            }
+            // only the first build exception is reported
+            if (buildException == null) {
+                buildException = error instanceof BuildException
+                    ? (BuildException) error : new BuildException(error);
+            }
+        }
+
+        /**
+         * Logs targets that have not been run because one of their
+         * dependencies failed, the same way Project.executeSortedTargets
+         * does in keep-going mode.
+         */
+        private void reportNotExecuted() {
+            for (Target t : sorted) {
+                for (Enumeration<String> deps = t.getDependencies();
+                     deps.hasMoreElements();) {
+                    String dep = deps.nextElement();
+                    if (!succeeded.contains(dep)) {
+                        project.log(t, "Cannot execute '" + t.getName()
+                                    + "' - '" + dep
+                                    + "' failed or was not executed.",
+                                    Project.MSG_ERR);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcome of running a target.
+     */
+    private static class Result {
+        private final Target target;
+        private final Throwable error;
+
+        Result(Target target, Throwable error) {
+            this.target = target;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Creates daemon threads with a recognizable name.
+     */
+    private static class TargetThreadFactory implements ThreadFactory {
+        private int count = 0;
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ParallelExecutor-" + (++count));
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -238,15 +238,32 @@ public class ProjectHelper2 extends ProjectHelper {
         InputSource inputSource = null;
         ZipFile zf = null;
 
+        // subclasses of RootHandler may handle more events than get cached
+        boolean useCache = buildFile != null && handler.getClass() == RootHandler.class;
+        BuildFileCache.ParsedFile cached =
+            useCache ? BuildFileCache.lookup(project, buildFile) : null;
+
         try {
+            if (cached != null) {
+                String uri = FILE_UTILS.toURI(buildFile.getAbsolutePath());
+                project.log("using cached parse of buildfile " + buildFileName
+                            + " with URI = " + uri, Project.MSG_VERBOSE);
+                cached.replay(handler, uri);
+                return;
+            }
+
             /**
              * SAX 2 style parser used to parse the given file.
              */
             XMLReader parser = JAXPUtils.getNamespaceXMLReader();
 
+            BuildFileCache.Recorder recorder = null;
             String uri = null;
             if (buildFile != null) {
                 uri = FILE_UTILS.toURI(buildFile.getAbsolutePath());
+                if (useCache) {
+                    recorder = BuildFileCache.record(project, buildFile, handler);
+                }
                 inputStream = new FileInputStream(buildFile);
             } else {
                 uri = url.toString();
@@ -272,13 +289,16 @@ public class ProjectHelper2 extends ProjectHelper {
                         + uri + (zf != null ? " from a zip file" : ""),
                         Project.MSG_VERBOSE);
 
-            DefaultHandler hb = handler;
+            DefaultHandler hb = recorder != null ? recorder : handler;
 
             parser.setContentHandler(hb);
             parser.setEntityResolver(hb);
             parser.setErrorHandler(hb);
             parser.setDTDHandler(hb);
             parser.parse(inputSource);
+            if (recorder != null) {
+                recorder.store();
+            }
         } catch (SAXParseException exc) {
             Location location = new Location(exc.getSystemId(), exc.getLineNumber(), exc
                                              .getColumnNumber());
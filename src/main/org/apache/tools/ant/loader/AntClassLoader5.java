@@ -32,6 +32,17 @@ import org.apache.tools.ant.types.Path;
  * implements Closeable
  */
 public class AntClassLoader5 extends AntClassLoader implements Closeable {
+
+    static {
+        try {
+            // Java 7+, allows classes to be loaded concurrently
+            ClassLoader.class.getDeclaredMethod("registerAsParallelCapable")
+                .invoke(null);
+        } catch (Exception e) {
+            // loadClass will synchronize on the loader
+        }
+    }
+
     /**
      * Creates a classloader for the given project using the classpath given.
      *
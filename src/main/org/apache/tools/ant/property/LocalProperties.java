@@ -108,6 +108,18 @@ public class LocalProperties
         set(current().copy());
     }
 
+    /**
+     * Copy the stack of another thread for a pooled thread.
+     * To be called from the pooled thread itself, the stack must
+     * have been obtained using {@link #get get} on the thread that
+     * handed out the work.
+     * @param stack the stack to copy.
+     * @since Ant 1.9.5
+     */
+    public void copy(LocalPropertyStack stack) {
+        set(stack.copy());
+    }
+
     // --------------------------------------------------
     //
     //  PropertyHelper delegate methods
@@ -18,7 +18,9 @@
 package org.apache.tools.ant.property;
 
 import java.text.ParsePosition;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.tools.ant.Project;
 
@@ -118,6 +120,47 @@ public class ParseProperties implements ParseNextProperty {
         return sb.toString();
     }
 
+    /**
+     * Splits a String into literal text and property references
+     * without looking up any property.
+     *
+     * <p>Uses the configured {@link PropertyExpander
+     *  PropertyExpanders} the same way {@link #parseProperties
+     *  parseProperties} does.  The result may only be reused for
+     *  other projects or property values if the expanders don't
+     *  look up properties themselves.</p>
+     *
+     * @param value The string to be scanned for property references,
+     *              must not be <code>null</code>.
+     * @return the template.
+     * @since Ant 1.9.5
+     */
+    public PropertyTemplate compile(String value) {
+        final int len = value.length();
+        final List<Object> fragments = new ArrayList<Object>();
+        StringBuilder literal = new StringBuilder();
+        ParsePosition pos = new ParsePosition(0);
+        while (pos.getIndex() < len) {
+            final int start = pos.getIndex();
+            String propertyName = parsePropertyName(value, pos);
+            if (propertyName != null) {
+                if (literal.length() > 0) {
+                    fragments.add(literal.toString());
+                    literal = new StringBuilder();
+                }
+                fragments.add(PropertyTemplate.reference(propertyName,
+                    value.substring(start, pos.getIndex())));
+            } else {
+                literal.append(value.charAt(pos.getIndex()));
+                pos.setIndex(pos.getIndex() + 1);
+            }
+        }
+        if (literal.length() > 0 || fragments.isEmpty()) {
+            fragments.add(literal.toString());
+        }
+        return new PropertyTemplate(fragments);
+    }
+
     /**
      * Learn whether a String contains replaceable properties.
      *
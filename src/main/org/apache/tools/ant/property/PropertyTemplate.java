@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.property;
+
+import java.util.List;
+
+import org.apache.tools.ant.Project;
+
+/**
+ * A String that has been split into literal text and property
+ * references once so it can be expanded many times.
+ *
+ * <p>Instances are created by {@link ParseProperties#compile
+ * ParseProperties.compile} and are immutable.  Expanding a template
+ * gives the same result as {@link ParseProperties#parseProperties
+ * parsing} the original String as long as the {@link
+ * PropertyExpander PropertyExpanders} only look at the String
+ * itself, which is true for Ant's built-in expanders.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public final class PropertyTemplate {
+
+    /**
+     * Literal text as String and property references as Reference,
+     * adjacent literals have been joined.
+     */
+    private final Object[] fragments;
+
+    /**
+     * A property reference found in the String.
+     */
+    private static final class Reference {
+        private final String name;
+        private final String text;
+
+        private Reference(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Creates a template from the fragments of the parsed String.
+     * @param fragments literal Strings and property references
+     * created by {@link #reference reference}.
+     */
+    PropertyTemplate(List<Object> fragments) {
+        this.fragments = fragments.toArray();
+    }
+
+    /**
+     * Creates a fragment for a property reference.
+     * @param name the name of the property
+     * @param text the text of the reference, used if the property
+     * has not been set.
+     * @return the fragment
+     */
+    static Object reference(String name, String text) {
+        return new Reference(name, text);
+    }
+
+    /**
+     * Learn whether the String contains property references.
+     * @return true if at least one property reference has been found.
+     */
+    public boolean containsProperties() {
+        for (int i = 0; i < fragments.length; i++) {
+            if (fragments[i] instanceof Reference) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Expands the property references.
+     *
+     * <p>If the whole String is a single property reference, the
+     * looked up property value is returned.  Otherwise a String is
+     * returned that concatenates the literal text and the values of
+     * the properties.  References to properties that are not set
+     * stay as they are.</p>
+     *
+     * @param project the project used for logging, may be null.
+     * @param getProperty property resolver.
+     * @return the expanded value.
+     */
+    public Object expand(Project project, GetProperty getProperty) {
+        if (fragments.length == 1) {
+            return expand(fragments[0], project, getProperty);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fragments.length; i++) {
+            sb.append(expand(fragments[i], project, getProperty));
+        }
+        return sb.toString();
+    }
+
+    private static Object expand(Object fragment, Project project,
+                                 GetProperty getProperty) {
+        if (!(fragment instanceof Reference)) {
+            return fragment;
+        }
+        Reference r = (Reference) fragment;
+        Object result = getProperty.getProperty(r.name);
+        if (result != null) {
+            return result;
+        }
+        if (project != null) {
+            project.log("Property \"" + r.name + "\" has not been set",
+                        Project.MSG_VERBOSE);
+        }
+        return r.text;
+    }
+}
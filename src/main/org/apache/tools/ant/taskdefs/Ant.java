@@ -23,6 +23,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Hashtable;
@@ -38,6 +40,7 @@ import org.apache.tools.ant.Main;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.ProjectComponent;
 import org.apache.tools.ant.ProjectHelper;
+import org.apache.tools.ant.PropertyHelper;
 import org.apache.tools.ant.Target;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.PropertySet;
@@ -69,6 +72,14 @@ public class Ant extends Task {
 
     private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
 
+    /**
+     * Properties that get special treatment in execute() and are
+     * never copied to the new project.
+     */
+    private static final Set<String> NOT_INHERITED =
+        Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            new String[] {MagicNames.PROJECT_BASEDIR, MagicNames.ANT_FILE})));
+
     /** the basedir where is executed the build file */
     private File dir = null;
 
@@ -230,7 +241,8 @@ public class Ant extends Task {
 
         } else {
             // set all properties from calling project
-            addAlmostAll(getProject().getProperties(), PropertyType.PLAIN);
+            PropertyHelper.getPropertyHelper(getProject())
+                .copyNewProperties(newProject, NOT_INHERITED);
         }
 
         for (PropertySet ps : propertySets) {
@@ -521,6 +533,10 @@ public class Ant extends Task {
      * @throws BuildException if a reference does not have a refid.
      */
     private void addReferences() throws BuildException {
+        if (references.isEmpty() && !inheritRefs) {
+            // don't bother cloning the parent's references
+            return;
+        }
         @SuppressWarnings("unchecked")
         Hashtable<String, Object> thisReferences
             = (Hashtable<String, Object>) getProject().getReferences().clone();
@@ -625,8 +641,7 @@ public class Ant extends Task {
         Enumeration<?> e = props.keys();
         while (e.hasMoreElements()) {
             String key = e.nextElement().toString();
-            if (MagicNames.PROJECT_BASEDIR.equals(key)
-                || MagicNames.ANT_FILE.equals(key)) {
+            if (NOT_INHERITED.contains(key)) {
                 // basedir and ant.file get special treatment in execute()
                 continue;
             }
@@ -44,6 +44,19 @@ public class BUnzip2 extends Unpack {
 
     private static final String DEFAULT_EXTENSION = ".bz2";
 
+    private int parallel = 1;
+
+    /**
+     * Number of threads used to decompress the blocks of the file;
+     * default is 1.
+     *
+     * @param parallel number of threads
+     * @since Ant 1.9.5
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * Get the default extension.
      * @return the string ".bz2"
@@ -76,7 +89,7 @@ public class BUnzip2 extends Unpack {
                 if (b != 'Z') {
                     throw new BuildException("Invalid bz2 file.", getLocation());
                 }
-                zIn = new CBZip2InputStream(bis, true);
+                zIn = new CBZip2InputStream(bis, true, parallel);
                 byte[] buffer = new byte[BUFFER_SIZE];
                 int count = 0;
                 do {
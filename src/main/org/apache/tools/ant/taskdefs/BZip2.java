@@ -37,6 +37,20 @@ import org.apache.tools.bzip2.CBZip2OutputStream;
  */
 
 public class BZip2 extends Pack {
+    private int parallel = 1;
+
+    /**
+     * Set the number of blocks to compress at the same time.
+     *
+     * <p>Default is 1, i.e. blocks are compressed one after the
+     * other.</p>
+     * @param parallel the number of worker threads to use.
+     * @since Ant 1.9.5
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * Compress the zipFile.
      */
@@ -47,7 +61,9 @@ public class BZip2 extends Pack {
                 new BufferedOutputStream(new FileOutputStream(zipFile));
             bos.write('B');
             bos.write('Z');
-            zOut = new CBZip2OutputStream(bos);
+            zOut = new CBZip2OutputStream(bos,
+                                          CBZip2OutputStream.MAX_BLOCKSIZE,
+                                          parallel);
             zipResource(getSrcResource(), zOut);
         } catch (IOException ioe) {
             String msg = "Problem creating bzip2 " + ioe.getMessage();
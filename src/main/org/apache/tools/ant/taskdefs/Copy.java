@@ -27,6 +27,13 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
@@ -102,6 +109,7 @@ public class Copy extends Task {
     private long granularity = 0;
     private boolean force = false;
     private boolean quiet = false;
+    private int parallel = 1;
 
     // used to store the single non-file resource to copy when the
     // tofile attribute has been used
@@ -424,6 +432,18 @@ public class Copy extends Task {
         this.granularity = granularity;
     }
 
+    /**
+     * Set the number of files to copy at the same time.
+     *
+     * <p>Default is 1, i.e. files are copied one after the
+     * other.</p>
+     * @param parallel the number of worker threads to use.
+     * @since Ant 1.9.5
+     */
+    public void setParallel(final int parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * Perform the copy operation.
      * @exception BuildException if an error occurs.
@@ -866,6 +886,7 @@ public class Copy extends Task {
                 + " file" + (fileCopyMap.size() == 1 ? "" : "s")
                 + " to " + destDir.getAbsolutePath());
 
+            final List<CopyJob> jobs = new ArrayList<CopyJob>();
             for (final Map.Entry<String, String[]> e : fileCopyMap.entrySet()) {
                 final String fromFile = e.getKey();
                 final String[] toFiles = e.getValue();
@@ -877,41 +898,22 @@ public class Copy extends Task {
                         log("Skipping self-copy of " + fromFile, verbosity);
                         continue;
                     }
-                    try {
-                        log("Copying " + fromFile + " to " + toFile, verbosity);
-
-                        final FilterSetCollection executionFilters =
-                            new FilterSetCollection();
-                        if (filtering) {
-                            executionFilters
-                                .addFilterSet(getProject().getGlobalFilterSet());
-                        }
-                        for (final FilterSet filterSet : filterSets) {
-                            executionFilters.addFilterSet(filterSet);
-                        }
-                        fileUtils.copyFile(new File(fromFile), new File(toFile),
-                                           executionFilters,
-                                           filterChains, forceOverwrite,
-                                           preserveLastModified,
-                                           /* append: */ false, inputEncoding,
-                                           outputEncoding, getProject(),
-                                           getForce());
-                    } catch (final IOException ioe) {
-                        String msg = "Failed to copy " + fromFile + " to " + toFile
-                            + " due to " + getDueTo(ioe);
-                        final File targetFile = new File(toFile);
-                        if (!(ioe instanceof
-                              ResourceUtils.ReadOnlyTargetFileException)
-                            && targetFile.exists() && !targetFile.delete()) {
-                            msg += " and I couldn't delete the corrupt " + toFile;
-                        }
-                        if (failonerror) {
-                            throw new BuildException(msg, ioe, getLocation());
-                        }
-                        log(msg, Project.MSG_ERR);
-                    }
+                    jobs.add(new CopyJob(fromFile, toFile) {
+                            void copy() throws IOException {
+                                fileUtils.copyFile(new File(fromFile),
+                                                   new File(toFile),
+                                                   createExecutionFilters(),
+                                                   filterChains, forceOverwrite,
+                                                   preserveLastModified,
+                                                   /* append: */ false,
+                                                   inputEncoding,
+                                                   outputEncoding, getProject(),
+                                                   getForce());
+                            }
+                        });
                 }
             }
+            doCopyJobs(jobs);
         }
         if (includeEmpty) {
             int createCount = 0;
@@ -952,53 +954,152 @@ public class Copy extends Task {
                 + " resource" + (map.size() == 1 ? "" : "s")
                 + " to " + destDir.getAbsolutePath());
 
+            final List<CopyJob> jobs = new ArrayList<CopyJob>();
             for (final Map.Entry<Resource, String[]> e : map.entrySet()) {
                 final Resource fromResource = e.getKey();
                 for (final String toFile : e.getValue()) {
-                    try {
-                        log("Copying " + fromResource + " to " + toFile,
-                            verbosity);
+                    jobs.add(new CopyJob(String.valueOf(fromResource), toFile) {
+                            void copy() throws IOException {
+                                ResourceUtils.copyResource(fromResource,
+                                                           new FileResource(destDir,
+                                                                            toFile),
+                                                           createExecutionFilters(),
+                                                           filterChains,
+                                                           forceOverwrite,
+                                                           preserveLastModified,
+                                                           /* append: */ false,
+                                                           inputEncoding,
+                                                           outputEncoding,
+                                                           getProject(),
+                                                           getForce());
+                            }
+                        });
+                }
+            }
+            doCopyJobs(jobs);
+        }
+    }
 
-                        final FilterSetCollection executionFilters = new FilterSetCollection();
-                        if (filtering) {
-                            executionFilters
-                                .addFilterSet(getProject().getGlobalFilterSet());
-                        }
-                        for (final FilterSet filterSet : filterSets) {
-                            executionFilters.addFilterSet(filterSet);
-                        }
-                        ResourceUtils.copyResource(fromResource,
-                                                   new FileResource(destDir,
-                                                                    toFile),
-                                                   executionFilters,
-                                                   filterChains,
-                                                   forceOverwrite,
-                                                   preserveLastModified,
-                                                   /* append: */ false,
-                                                   inputEncoding,
-                                                   outputEncoding,
-                                                   getProject(),
-                                                   getForce());
-                    } catch (final IOException ioe) {
-                        String msg = "Failed to copy " + fromResource
-                            + " to " + toFile
-                            + " due to " + getDueTo(ioe);
-                        final File targetFile = new File(toFile);
-                        if (!(ioe instanceof
-                              ResourceUtils.ReadOnlyTargetFileException)
-                            && targetFile.exists() && !targetFile.delete()) {
-                            msg += " and I couldn't delete the corrupt " + toFile;
-                        }
-                        if (failonerror) {
-                            throw new BuildException(msg, ioe, getLocation());
+    /**
+     * The filters to apply to a single copy operation.
+     */
+    private FilterSetCollection createExecutionFilters() {
+        final FilterSetCollection executionFilters = new FilterSetCollection();
+        if (filtering) {
+            executionFilters.addFilterSet(getProject().getGlobalFilterSet());
+        }
+        for (final FilterSet filterSet : filterSets) {
+            executionFilters.addFilterSet(filterSet);
+        }
+        return executionFilters;
+    }
+
+    /**
+     * Performs the given copy operations, using up to parallel
+     * threads.
+     *
+     * <p>Failures are reported in the order of the operations, if
+     * failonerror is true no further operations are started once any
+     * of them has failed and the failure is reported after the
+     * operations that have already been started have finished.</p>
+     */
+    private void doCopyJobs(final List<CopyJob> jobs) {
+        if (parallel <= 1 || jobs.size() <= 1) {
+            for (final CopyJob job : jobs) {
+                log("Copying " + job.from + " to " + job.toFile, verbosity);
+                try {
+                    job.copy();
+                } catch (final IOException ioe) {
+                    copyFailed(job, ioe);
+                }
+            }
+            return;
+        }
+
+        final ExecutorService pool =
+            Executors.newFixedThreadPool(Math.min(parallel, jobs.size()));
+        final List<Future<Object>> results = new ArrayList<Future<Object>>(jobs.size());
+        final AtomicBoolean failed = new AtomicBoolean();
+        try {
+            for (final CopyJob job : jobs) {
+                log("Copying " + job.from + " to " + job.toFile, verbosity);
+                results.add(pool.submit(new Callable<Object>() {
+                        public Object call() throws IOException {
+                            if (failed.get()) {
+                                // an earlier job has failed and will be reported
+                                return null;
+                            }
+                            try {
+                                job.copy();
+                            } catch (final IOException ioe) {
+                                if (failonerror) {
+                                    failed.set(true);
+                                }
+                                throw ioe;
+                            }
+                            return null;
                         }
-                        log(msg, Project.MSG_ERR);
+                    }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (final ExecutionException ex) {
+                    final Throwable t = ex.getCause();
+                    if (t instanceof IOException) {
+                        copyFailed(jobs.get(i), (IOException) t);
+                    } else if (t instanceof RuntimeException) {
+                        throw (RuntimeException) t;
+                    } else if (t instanceof Error) {
+                        throw (Error) t;
+                    } else {
+                        throw new BuildException(t, getLocation());
                     }
+                } catch (final InterruptedException ex) {
+                    throw new BuildException("Interrupted while copying files",
+                                             ex, getLocation());
                 }
             }
+        } finally {
+            // don't start anything new but let running copies finish
+            // so no half-written files are left behind
+            for (final Future<Object> f : results) {
+                f.cancel(false);
+            }
+            pool.shutdown();
+            boolean interrupted = false;
+            while (!pool.isTerminated()) {
+                try {
+                    pool.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
+    /**
+     * Handles a failed copy operation, throws an exception if
+     * failonerror is true.
+     */
+    private void copyFailed(final CopyJob job, final IOException ioe) {
+        String msg = "Failed to copy " + job.from + " to " + job.toFile
+            + " due to " + getDueTo(ioe);
+        final File targetFile = new File(job.toFile);
+        if (!(ioe instanceof
+              ResourceUtils.ReadOnlyTargetFileException)
+            && targetFile.exists() && !targetFile.delete()) {
+            msg += " and I couldn't delete the corrupt " + job.toFile;
+        }
+        if (failonerror) {
+            throw new BuildException(msg, ioe, getLocation());
+        }
+        log(msg, Project.MSG_ERR);
+    }
+
     /**
      * Whether this task can deal with non-file resources.
      *
@@ -1108,4 +1209,19 @@ public class Copy extends Task {
         }
         return message.toString();
     }
+
+    /**
+     * A single copy operation.
+     */
+    private abstract static class CopyJob {
+        private final String from;
+        private final String toFile;
+
+        CopyJob(final String from, final String toFile) {
+            this.from = from;
+            this.toFile = toFile;
+        }
+
+        abstract void copy() throws IOException;
+    }
 }
@@ -23,12 +23,22 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
@@ -69,6 +79,13 @@ public class Expand extends Task {
     private boolean failOnEmptyArchive = false;
     private boolean stripAbsolutePathSpec = false;
     private boolean scanForUnicodeExtraFields = true;
+    private int parallel = 1;
+
+    /** parameter types of extractFile */
+    private static final Class<?>[] EXTRACT_FILE_PARAMETERS = new Class<?>[] {
+        FileUtils.class, File.class, File.class, InputStream.class,
+        String.class, Date.class, Boolean.TYPE, FileNameMapper.class
+    };
 
     public static final String NATIVE_ENCODING = "native-encoding";
 
@@ -164,22 +181,32 @@ public class Expand extends Task {
                     + " as the file does not exist",
                     getLocation());
         }
+        final boolean inParallel = parallel > 1 && !overridesExtractFile();
+        if (parallel > 1 && !inParallel) {
+            log("extractFile has been overridden, extracting entries one"
+                + " after the other", Project.MSG_VERBOSE);
+        }
         try {
-            zf = new ZipFile(srcF, encoding, scanForUnicodeExtraFields);
+            zf = new ZipFile(srcF, encoding, scanForUnicodeExtraFields,
+                             inParallel);
             boolean empty = true;
-            Enumeration<ZipEntry> e = zf.getEntries();
-            while (e.hasMoreElements()) {
-                empty = false;
-                ZipEntry ze = e.nextElement();
-                InputStream is = null;
-                log("extracting " + ze.getName(), Project.MSG_DEBUG);
-                try {
-                    extractFile(fileUtils, srcF, dir,
-                                is = zf.getInputStream(ze),
-                                ze.getName(), new Date(ze.getTime()),
-                                ze.isDirectory(), mapper);
-                } finally {
-                    FileUtils.close(is);
+            if (inParallel) {
+                empty = expandEntriesInParallel(fileUtils, zf, dir, mapper);
+            } else {
+                Enumeration<ZipEntry> e = zf.getEntries();
+                while (e.hasMoreElements()) {
+                    empty = false;
+                    ZipEntry ze = e.nextElement();
+                    InputStream is = null;
+                    log("extracting " + ze.getName(), Project.MSG_DEBUG);
+                    try {
+                        extractFile(fileUtils, srcF, dir,
+                                    is = zf.getInputStream(ze),
+                                    ze.getName(), new Date(ze.getTime()),
+                                    ze.isDirectory(), mapper);
+                    } finally {
+                        FileUtils.close(is);
+                    }
                 }
             }
             if (empty && getFailOnEmptyArchive()) {
@@ -196,6 +223,145 @@ public class Expand extends Task {
         }
     }
 
+    /**
+     * Extracts the entries of the archive using up to parallel
+     * threads.
+     *
+     * <p>Decides which entries to extract to which files and creates
+     * all needed directories first, only the contents of the files
+     * are written in parallel.  If several entries map to the same
+     * file, the one that would win when extracting the entries one
+     * after the other is used.</p>
+     *
+     * @return whether the archive is empty
+     */
+    private boolean expandEntriesInParallel(final FileUtils fileUtils,
+                                            final ZipFile zf, final File dir,
+                                            final FileNameMapper mapper)
+        throws IOException {
+        boolean empty = true;
+        final Map<File, ZipEntry> targets = new LinkedHashMap<File, ZipEntry>();
+        Enumeration<ZipEntry> e = zf.getEntries();
+        while (e.hasMoreElements()) {
+            empty = false;
+            ZipEntry ze = e.nextElement();
+            log("extracting " + ze.getName(), Project.MSG_DEBUG);
+            File f = getTargetFile(fileUtils, dir, ze.getName(),
+                                   new Date(ze.getTime()), mapper);
+            if (f == null) {
+                continue;
+            }
+            ZipEntry previous = targets.get(f);
+            if (previous != null && !overwrite
+                && previous.getTime() >= ze.getTime()) {
+                log("Skipping " + f + " as it is up-to-date",
+                    Project.MSG_DEBUG);
+                continue;
+            }
+            targets.put(f, ze);
+        }
+
+        final Set<File> dirs = new HashSet<File>();
+        final List<File> files = new ArrayList<File>();
+        for (Map.Entry<File, ZipEntry> target : targets.entrySet()) {
+            File f = target.getKey();
+            File dirF = f.getParentFile();
+            if (dirF != null && dirs.add(dirF)) {
+                dirF.mkdirs();
+            }
+            if (target.getValue().isDirectory()) {
+                if (dirs.add(f)) {
+                    f.mkdirs();
+                }
+                fileUtils.setFileLastModified(f, target.getValue().getTime());
+            } else {
+                files.add(f);
+            }
+        }
+        if (files.isEmpty()) {
+            return empty;
+        }
+
+        final ExecutorService pool =
+            Executors.newFixedThreadPool(Math.min(parallel, files.size()));
+        final List<Future<Object>> results =
+            new ArrayList<Future<Object>>(files.size());
+        try {
+            for (final File f : files) {
+                final ZipEntry ze = targets.get(f);
+                results.add(pool.submit(new Callable<Object>() {
+                        public Object call() throws IOException {
+                            InputStream is = null;
+                            try {
+                                writeFile(fileUtils, f, is = zf.getInputStream(ze),
+                                          new Date(ze.getTime()), false);
+                            } finally {
+                                FileUtils.close(is);
+                            }
+                            return null;
+                        }
+                    }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (final ExecutionException ex) {
+                    final Throwable t = ex.getCause();
+                    if (t instanceof FileNotFoundException) {
+                        log("Unable to expand to file " + files.get(i).getPath(),
+                            t, Project.MSG_WARN);
+                    } else if (t instanceof IOException) {
+                        throw (IOException) t;
+                    } else if (t instanceof RuntimeException) {
+                        throw (RuntimeException) t;
+                    } else if (t instanceof Error) {
+                        throw (Error) t;
+                    } else {
+                        throw new BuildException(t, getLocation());
+                    }
+                } catch (final InterruptedException ex) {
+                    throw new BuildException("Interrupted while expanding "
+                                             + "archive", ex, getLocation());
+                }
+            }
+        } finally {
+            // don't start anything new but let running extractions
+            // finish before the archive gets closed
+            for (final Future<Object> f : results) {
+                f.cancel(false);
+            }
+            pool.shutdown();
+            boolean interrupted = false;
+            while (!pool.isTerminated()) {
+                try {
+                    pool.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return empty;
+    }
+
+    /**
+     * Whether a subclass has overridden extractFile, which parallel
+     * extraction would bypass.
+     */
+    private boolean overridesExtractFile() {
+        for (Class<?> c = getClass(); c != Expand.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("extractFile", EXTRACT_FILE_PARAMETERS);
+                return true;
+            } catch (NoSuchMethodException ex) {
+                // look at the superclass
+            }
+        }
+        return false;
+    }
+
     /**
      * This method is to be overridden by extending unarchival tasks.
      *
@@ -239,7 +405,37 @@ public class Expand extends Task {
                                String entryName, Date entryDate,
                                boolean isDirectory, FileNameMapper mapper)
                                throws IOException {
+        File f = getTargetFile(fileUtils, dir, entryName, entryDate, mapper);
+        if (f == null) {
+            return;
+        }
+        try {
+            // create intermediary directories - sometimes zip don't add them
+            File dirF = f.getParentFile();
+            if (dirF != null) {
+                dirF.mkdirs();
+            }
+            writeFile(fileUtils, f, compressedInputStream, entryDate,
+                      isDirectory);
+        } catch (FileNotFoundException ex) {
+            log("Unable to expand to file " + f.getPath(),
+                    ex,
+                    Project.MSG_WARN);
+        }
+
+    }
+    // CheckStyle:ParameterNumberCheck ON
 
+    /**
+     * Applies the patternsets, the mapper and the overwrite setting
+     * to an entry.
+     *
+     * @return the file to extract the entry to or null if the entry
+     * should be skipped
+     */
+    private File getTargetFile(FileUtils fileUtils, File dir,
+                               String entryName, Date entryDate,
+                               FileNameMapper mapper) {
         if (stripAbsolutePathSpec && entryName.length() > 0
             && (entryName.charAt(0) == File.separatorChar
                 || entryName.charAt(0) == '/'
@@ -305,7 +501,7 @@ public class Expand extends Task {
                 log("skipping " + entryName
                     + " as it is excluded or not included.",
                     Project.MSG_VERBOSE);
-                return;
+                return null;
             }
         }
         String[] mappedNames = mapper.mapFileName(entryName);
@@ -313,52 +509,48 @@ public class Expand extends Task {
             mappedNames = new String[] {entryName};
         }
         File f = fileUtils.resolveFile(dir, mappedNames[0]);
-        try {
-            if (!overwrite && f.exists()
-                && f.lastModified() >= entryDate.getTime()) {
-                log("Skipping " + f + " as it is up-to-date",
-                    Project.MSG_DEBUG);
-                return;
-            }
-
-            log("expanding " + entryName + " to " + f,
-                Project.MSG_VERBOSE);
-            // create intermediary directories - sometimes zip don't add them
-            File dirF = f.getParentFile();
-            if (dirF != null) {
-                dirF.mkdirs();
-            }
-
-            if (isDirectory) {
-                f.mkdirs();
-            } else {
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int length = 0;
-                FileOutputStream fos = null;
-                try {
-                    fos = new FileOutputStream(f);
+        if (!overwrite && f.exists()
+            && f.lastModified() >= entryDate.getTime()) {
+            log("Skipping " + f + " as it is up-to-date",
+                Project.MSG_DEBUG);
+            return null;
+        }
 
-                    while ((length =
-                            compressedInputStream.read(buffer)) >= 0) {
-                        fos.write(buffer, 0, length);
-                    }
+        log("expanding " + entryName + " to " + f,
+            Project.MSG_VERBOSE);
+        return f;
+    }
 
-                    fos.close();
-                    fos = null;
-                } finally {
-                    FileUtils.close(fos);
+    /**
+     * Writes the contents of an entry to a file or creates the
+     * directory, assumes the parent directory exists.
+     */
+    private void writeFile(FileUtils fileUtils, File f,
+                           InputStream compressedInputStream, Date entryDate,
+                           boolean isDirectory) throws IOException {
+        if (isDirectory) {
+            f.mkdirs();
+        } else {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length = 0;
+            FileOutputStream fos = null;
+            try {
+                fos = new FileOutputStream(f);
+
+                while ((length =
+                        compressedInputStream.read(buffer)) >= 0) {
+                    fos.write(buffer, 0, length);
                 }
-            }
 
-            fileUtils.setFileLastModified(f, entryDate.getTime());
-        } catch (FileNotFoundException ex) {
-            log("Unable to expand to file " + f.getPath(),
-                    ex,
-                    Project.MSG_WARN);
+                fos.close();
+                fos = null;
+            } finally {
+                FileUtils.close(fos);
+            }
         }
 
+        fileUtils.setFileLastModified(f, entryDate.getTime());
     }
-    // CheckStyle:ParameterNumberCheck ON
 
     /**
      * Set the destination directory. File will be unzipped into the
@@ -388,6 +580,19 @@ public class Expand extends Task {
         overwrite = b;
     }
 
+    /**
+     * Set the number of entries to extract at the same time.
+     *
+     * <p>Default is 1, i.e. entries are extracted one after the
+     * other.  Only used when expanding zip archives and if {@link
+     * #extractFile extractFile} hasn't been overridden.</p>
+     * @param parallel the number of worker threads to use.
+     * @since Ant 1.9.5
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * Add a patternset.
      * @param set a pattern set
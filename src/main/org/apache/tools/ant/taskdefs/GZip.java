@@ -18,12 +18,16 @@
 
 package org.apache.tools.ant.taskdefs;
 
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.JavaEnvUtils;
 
 /**
  * Compresses a file with the GZIP algorithm. Normally used to compress
@@ -35,13 +39,35 @@ import org.apache.tools.ant.util.FileUtils;
  */
 
 public class GZip extends Pack {
+
+    /**
+     * Classname of the stream compressing chunks in parallel.
+     */
+    private static final String PARALLEL_GZIP =
+        "org.apache.tools.ant.util.java17.ParallelGZIPOutputStream";
+
+    private int parallel = 1;
+
+    /**
+     * Set the number of chunks to compress at the same time.
+     *
+     * <p>Default is 1, i.e. the data is compressed by a single
+     * thread.  Needs Java7 or later, the attribute is ignored on
+     * earlier versions.</p>
+     * @param parallel the number of worker threads to use.
+     * @since Ant 1.9.5
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * perform the GZip compression operation.
      */
     protected void pack() {
-        GZIPOutputStream zOut = null;
+        OutputStream zOut = null;
         try {
-            zOut = new GZIPOutputStream(new FileOutputStream(zipFile));
+            zOut = createOutputStream(new FileOutputStream(zipFile), parallel);
             zipResource(getSrcResource(), zOut);
         } catch (IOException ioe) {
             String msg = "Problem creating gzip " + ioe.getMessage();
@@ -51,6 +77,72 @@ public class GZip extends Pack {
         }
     }
 
+    /**
+     * Creates a stream writing a single gzip member.
+     *
+     * <p>With more than one thread chunks of the data are compressed
+     * in parallel if running on Java7 or later.</p>
+     *
+     * @param out the stream to write to
+     * @param threads the number of worker threads to use
+     * @return the compressing stream
+     * @throws IOException if the header cannot be written
+     * @since Ant 1.9.5
+     */
+    static OutputStream createOutputStream(OutputStream out, int threads)
+        throws IOException {
+        // the stream uses Deflater methods added in Java7, on older
+        // VMs it may be loaded but would fail once data gets written
+        return createOutputStream(out, threads,
+                                  JavaEnvUtils
+                                  .isAtLeastJavaVersion(JavaEnvUtils.JAVA_1_7)
+                                  ? PARALLEL_GZIP : null);
+    }
+
+    /**
+     * Creates a stream writing a single gzip member using the given
+     * class for parallel compression.
+     *
+     * @param out the stream to write to
+     * @param threads the number of worker threads to use
+     * @param parallelImpl name of the class to use if threads is
+     * bigger than one, a plain GZIPOutputStream is used if it is
+     * null or cannot be loaded
+     * @return the compressing stream
+     * @throws IOException if the header cannot be written
+     */
+    static OutputStream createOutputStream(OutputStream out, int threads,
+                                           String parallelImpl)
+        throws IOException {
+        if (threads > 1 && parallelImpl != null) {
+            try {
+                return (OutputStream) Class.forName(parallelImpl)
+                    .getConstructor(new Class[] {OutputStream.class,
+                                                 Integer.TYPE})
+                    .newInstance(new Object[] {
+                            new BufferedOutputStream(out),
+                            Integer.valueOf(threads)});
+            } catch (InvocationTargetException e) {
+                Throwable t = e.getTargetException();
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+                throw new BuildException(t);
+            } catch (ClassNotFoundException e) {
+                //not included, do nothing
+            } catch (NoSuchMethodException e) {
+                //not included, do nothing
+            } catch (IllegalAccessException e) {
+                //not included, do nothing
+            } catch (InstantiationException e) {
+                //not included, do nothing
+            } catch (NoClassDefFoundError e) {
+                //not included, do nothing
+            }
+        }
+        return new GZIPOutputStream(out);
+    }
+
     /**
      * Whether this task can deal with non-file resources.
      *
@@ -497,6 +497,17 @@ public class Jar extends Zip {
         flattenClassPaths = b;
     }
 
+    /**
+     * Jars are never updated in place as the manifest must be the
+     * first entry (or second after META-INF/) of the archive.
+     * @return false
+     * @since Ant 1.9.5
+     */
+    @Override
+    protected boolean canUpdateInPlace() {
+        return false;
+    }
+
     /**
      * Initialize the zip output stream.
      * @param zOut the zip output stream
@@ -92,6 +92,7 @@ public class Javac extends MatchingTask {
     private static final String MODERN = "modern";
     private static final String CLASSIC = "classic";
     private static final String EXTJAVAC = "extJavac";
+    private static final String JSR199 = "jsr199";
 
     private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
 
@@ -783,6 +784,9 @@ public class Javac extends MatchingTask {
                 || JAVAC11.equalsIgnoreCase(anImplementation)) {
             return CLASSIC;
         }
+        if (JSR199.equalsIgnoreCase(anImplementation)) {
+            return MODERN;
+        }
         if (MODERN.equalsIgnoreCase(anImplementation)) {
             final String nextSelected = assumedJavaVersion();
             if (JAVAC19.equalsIgnoreCase(nextSelected)
@@ -1018,12 +1022,13 @@ public class Javac extends MatchingTask {
      * Is the compiler implementation a jdk compiler
      *
      * @param compilerImpl the name of the compiler implementation
-     * @return true if compilerImpl is "modern", "classic",
+     * @return true if compilerImpl is "modern", "classic", "jsr199",
      * "javac1.1", "javac1.2", "javac1.3", "javac1.4", "javac1.5",
      * "javac1.6", "javac1.7", "javac1.8" or "javac1.9".
      */
     protected boolean isJdkCompiler(final String compilerImpl) {
         return MODERN.equals(compilerImpl)
+            || JSR199.equals(compilerImpl)
             || CLASSIC.equals(compilerImpl)
             || JAVAC19.equals(compilerImpl)
             || JAVAC18.equals(compilerImpl)
@@ -21,13 +21,22 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.ExitStatusException;
 import org.apache.tools.ant.Location;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.TaskContainer;
 import org.apache.tools.ant.property.LocalProperties;
+import org.apache.tools.ant.property.LocalPropertyStack;
 import org.apache.tools.ant.util.StringUtils;
 
 /**
@@ -44,6 +53,13 @@ import org.apache.tools.ant.util.StringUtils;
  * tasks or that those tasks will finish first (i.e. it's a classic race
  * condition).
  * </p>
+ * <p>
+ * Since Ant 1.9.5 the nested tasks are run by a bounded pool of
+ * threads shared by all parallel tasks, threads are reused rather
+ * than created for each nested task.  Nested tasks that find all
+ * pooled threads busy get a thread of their own so tasks waiting for
+ * each other cannot deadlock.
+ * </p>
  * @since Ant 1.4
  *
  * @ant.task category="control"
@@ -51,8 +67,6 @@ import org.apache.tools.ant.util.StringUtils;
 public class Parallel extends Task
                       implements TaskContainer {
 
-    private static final int NUMBER_TRIES = 100;
-
     /** Class which holds a list of tasks to execute */
     public static class TaskList implements TaskContainer {
         /** Collection holding the nested tasks */
@@ -87,6 +101,19 @@ public class Parallel extends Task
     /** Indicates threads are still running and new threads can be issued */
     private volatile boolean stillRunning;
 
+    /** Number of nested tasks (not counting daemons) currently running */
+    private int numRunning;
+
+    /** Most threads kept for reuse by all parallel tasks */
+    private static final int MAX_POOLED_THREADS =
+        4 * Runtime.getRuntime().availableProcessors();
+
+    /** Runs the nested tasks of all parallel tasks */
+    private static final ExecutorService POOL =
+        new ThreadPoolExecutor(0, MAX_POOLED_THREADS, 60, TimeUnit.SECONDS,
+                               new SynchronousQueue<Runnable>(),
+                               new TaskThreadFactory(), new RunInNewThread());
+
     /** Indicates that the execution timedout */
     private boolean timedOut;
 
@@ -266,97 +293,56 @@ public class Parallel extends Task
              threadNumber++) {
             Task nestedTask = (Task) e.nextElement();
             runnables[threadNumber]
-                = new TaskRunnable(nestedTask);
+                = new TaskRunnable(nestedTask, false);
         }
 
         final int maxRunning = numTasks < numThreads ? numTasks : numThreads;
-        TaskRunnable[] running = new TaskRunnable[maxRunning];
 
         threadNumber = 0;
-        ThreadGroup group = new ThreadGroup("parallel");
+        final Future[] futures = new Future[numTasks];
 
         TaskRunnable[] daemons = null;
         if (daemonTasks != null && daemonTasks.tasks.size() != 0) {
             daemons = new TaskRunnable[daemonTasks.tasks.size()];
         }
 
-        synchronized (semaphore) {
-            // When we leave this block we can be sure all data is really
-            // stored in main memory before the new threads start, the new
-            // threads will for sure load the data from main memory.
-            //
-            // This probably is slightly paranoid.
-        }
+        final long deadline = timeout != 0
+            ? System.currentTimeMillis() + timeout : 0;
 
         synchronized (semaphore) {
+            numRunning = 0;
+
             // start any daemon threads
             if (daemons != null) {
                 for (int i = 0; i < daemons.length; ++i) {
-                    daemons[i] = new TaskRunnable((Task) daemonTasks.tasks.get(i));
-                    Thread daemonThread =  new Thread(group, daemons[i]);
-                    daemonThread.setDaemon(true);
-                    daemonThread.start();
+                    daemons[i] = new TaskRunnable((Task) daemonTasks.tasks.get(i),
+                                                  true);
+                    POOL.execute(daemons[i]);
                 }
             }
 
-            // now run main threads in limited numbers...
-            // start initial batch of threads
-            for (int i = 0; i < maxRunning; ++i) {
-                running[i] = runnables[threadNumber++];
-                Thread thread =  new Thread(group, running[i]);
-                thread.start();
-            }
-
-            if (timeout != 0) {
-                // start the timeout thread
-                Thread timeoutThread = new Thread() {
-                    public synchronized void run() {
-                        try {
-                            wait(timeout);
-                            synchronized (semaphore) {
-                                stillRunning = false;
-                                timedOut = true;
-                                semaphore.notifyAll();
-                            }
-                        } catch (InterruptedException e) {
-                            // ignore
-                        }
-                    }
-                };
-                timeoutThread.start();
-            }
-
             try {
-                // now find available running slots for the remaining threads
-                outer: while (threadNumber < numTasks && stillRunning) {
-                    for (int i = 0; i < maxRunning; i++) {
-                        if (running[i] == null || running[i].isFinished()) {
-                            running[i] = runnables[threadNumber++];
-                            Thread thread = new Thread(group, running[i]);
-                            thread.start();
-                            // continue on outer while loop to get another
-                            // available slot
-                            continue outer;
-                        }
+                // run main threads in limited numbers and wait until
+                // one finishes if all slots are in use
+                while (stillRunning) {
+                    while (threadNumber < numTasks && numRunning < maxRunning) {
+                        numRunning++;
+                        futures[threadNumber] = POOL.submit(runnables[threadNumber]);
+                        threadNumber++;
                     }
-
-                    // if we got here all slots in use, so sleep until
-                    // something happens
-                    semaphore.wait();
-                }
-
-                // are all threads finished
-                outer2: while (stillRunning) {
-                    for (int i = 0; i < maxRunning; ++i) {
-                        if (running[i] != null && !running[i].isFinished()) {
-                            // System.out.println("Thread " + i + " is still
-                            // alive ");
-                            // still running - wait for it
-                            semaphore.wait();
-                            continue outer2;
+                    if (numRunning == 0) {
+                        stillRunning = false;
+                    } else if (deadline == 0) {
+                        semaphore.wait();
+                    } else {
+                        final long left = deadline - System.currentTimeMillis();
+                        if (left <= 0) {
+                            stillRunning = false;
+                            timedOut = true;
+                        } else {
+                            semaphore.wait(left);
                         }
                     }
-                    stillRunning = false;
                 }
             } catch (InterruptedException ie) {
                 interrupted = true;
@@ -364,7 +350,7 @@ public class Parallel extends Task
 
             if (!timedOut && !failOnAny) {
                 // https://issues.apache.org/bugzilla/show_bug.cgi?id=49527
-                killAll(running);
+                killAll(runnables, futures);
             }
         }
 
@@ -402,27 +388,19 @@ public class Parallel extends Task
     }
 
     /**
-     * Doesn't do anything if all threads where already gone,
-     * else it tries to interrupt the threads 100 times.
-     * @param running The list of tasks that may currently be running.
+     * Stops all tasks that haven't finished, tasks that haven't
+     * started yet won't run at all, running ones get interrupted.
+     * @param runnables the tasks that may currently be running.
+     * @param futures the results of the submitted tasks, null for
+     * tasks that haven't been submitted.
      */
-    private void killAll(TaskRunnable[] running) {
-        boolean oneAlive;
-        int tries = 0;
-        do {
-            oneAlive = false;
-            for (int i = 0; i < running.length; i++) {
-                if (running[i] != null && !running[i].isFinished()) {
-                    running[i].interrupt();
-                    Thread.yield();
-                    oneAlive = true;
-                }
-            }
-            if (oneAlive) {
-                tries++;
-                Thread.yield();
+    private void killAll(TaskRunnable[] runnables, Future[] futures) {
+        for (int i = 0; i < runnables.length; i++) {
+            if (futures[i] != null && !runnables[i].isFinished()
+                && !futures[i].cancel(false)) {
+                runnables[i].interrupt();
             }
-        } while (oneAlive && tries < NUMBER_TRIES);
+        }
     }
 
     /**
@@ -432,15 +410,23 @@ public class Parallel extends Task
         private Throwable exception;
         private Task task;
         private boolean finished;
-        private volatile Thread thread;
+        private final boolean daemon;
+        private final LocalPropertyStack localProperties;
+        private final ClassLoader contextLoader;
+        /** the thread running the task, null unless the task is running */
+        private Thread thread;
 
         /**
          * Construct a new TaskRunnable.<p>
          *
          * @param task the Task to be executed in a separate thread
+         * @param daemon whether this is one of the daemon tasks
          */
-        TaskRunnable(Task task) {
+        TaskRunnable(Task task, boolean daemon) {
             this.task = task;
+            this.daemon = daemon;
+            localProperties = LocalProperties.get(getProject()).get();
+            contextLoader = Thread.currentThread().getContextClassLoader();
         }
 
         /**
@@ -448,9 +434,16 @@ public class Parallel extends Task
          * Exceptions raised within the task.
          */
         public void run() {
+            final Thread current = Thread.currentThread();
+            final ClassLoader savedLoader = current.getContextClassLoader();
+            final LocalProperties lp = LocalProperties.get(getProject());
             try {
-                LocalProperties.get(getProject()).copy();
-                thread = Thread.currentThread();
+                lp.copy(localProperties);
+                current.setContextClassLoader(contextLoader);
+                synchronized (this) {
+                    thread = current;
+                }
+                getProject().registerThreadTask(current, task);
                 task.perform();
             } catch (Throwable t) {
                 exception = t;
@@ -458,8 +451,20 @@ public class Parallel extends Task
                     stillRunning = false;
                 }
             } finally {
+                synchronized (this) {
+                    thread = null;
+                }
+                // the thread is going to be reused, don't leak an
+                // interrupt or the registration meant for this task
+                getProject().registerThreadTask(current, null);
+                Thread.interrupted();
+                current.setContextClassLoader(savedLoader);
+                lp.remove();
                 synchronized (semaphore) {
                     finished = true;
+                    if (!daemon) {
+                        numRunning--;
+                    }
                     semaphore.notifyAll();
                 }
             }
@@ -481,9 +486,43 @@ public class Parallel extends Task
             return finished;
         }
 
-        void interrupt() {
-            thread.interrupt();
+        synchronized void interrupt() {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon threads of the pool.
+     *
+     * <p>Each thread gets a thread group of its own as Project uses
+     * the group to find the task threads started by a nested task -
+     * like the ones pumping the output of &lt;exec&gt; - belong
+     * to.</p>
+     */
+    private static class TaskThreadFactory implements ThreadFactory {
+        private final ThreadGroup parent = new ThreadGroup("parallel");
+        private int count = 0;
+
+        public synchronized Thread newThread(Runnable r) {
+            final String name = "parallel-" + (++count);
+            final ThreadGroup group = new ThreadGroup(parent, name);
+            // the group goes away together with its thread
+            group.setDaemon(true);
+            final Thread t = new Thread(group, r, name);
+            t.setDaemon(true);
+            return t;
         }
     }
 
+    /**
+     * Runs a nested task the pool has no thread for in a thread that
+     * ends together with the task.
+     */
+    private static class RunInNewThread implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            pool.getThreadFactory().newThread(r).start();
+        }
+    }
 }
@@ -160,6 +160,12 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
 
     private static final long JOIN_TIMEOUT = 200;
 
+    /**
+     * Size the buffers of the pumpers may grow to when a process
+     * writes a lot of output.
+     */
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Waits for a thread to finish while trying to make it finish
      * quicker by stopping the pumper (if the thread is a {@link
@@ -275,6 +281,8 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
                                 boolean closeWhenExhausted, boolean nonBlockingIO) {
         StreamPumper pumper = new StreamPumper(is, os, closeWhenExhausted, nonBlockingIO);
         pumper.setAutoflush(true);
+        pumper.setFlushWhenIdle(true);
+        pumper.setMaxBufferSize(MAX_BUFFER_SIZE);
         final Thread result = new ThreadWithPumper(pumper);
         result.setDaemon(true);
         return result;
@@ -40,6 +40,8 @@ public class StreamPumper implements Runnable {
     private boolean autoflush = false;
     private Exception exception = null;
     private int bufferSize = SMALL_BUFFER_SIZE;
+    private int maxBufferSize = SMALL_BUFFER_SIZE;
+    private boolean flushWhenIdle = false;
     private boolean started = false;
     private final boolean useAvailable;
 
@@ -107,6 +109,18 @@ public class StreamPumper implements Runnable {
         this.autoflush = autoflush;
     }
 
+    /**
+     * Set whether autoflush should only flush the output stream
+     * once all currently available input has been copied rather than
+     * after each read.
+     * @param flushWhenIdle if true, only flush before waiting for
+     * more input
+     * @since Ant 1.9.5
+     */
+    /*package*/ void setFlushWhenIdle(boolean flushWhenIdle) {
+        this.flushWhenIdle = flushWhenIdle;
+    }
+
     /**
      * Copies data from the input stream to the output stream.
      *
@@ -118,7 +132,7 @@ public class StreamPumper implements Runnable {
         }
         finished = false;
 
-        final byte[] buf = new byte[bufferSize];
+        byte[] buf = new byte[bufferSize];
 
         int length;
         try {
@@ -134,12 +148,16 @@ public class StreamPumper implements Runnable {
                     break;
                 }
                 os.write(buf, 0, length);
-                if (autoflush) {
+                if (autoflush && (!flushWhenIdle || !inputAvailable())) {
                     os.flush();
                 }
                 if (finish) {
                     break;
                 }
+                if (length == buf.length && buf.length < maxBufferSize) {
+                    // sustained output, read bigger chunks
+                    buf = new byte[Math.min(2 * buf.length, maxBufferSize)];
+                }
             }
             // On completion, drain any available data (which might be the first data available for quick executions)
             if (finish) {
@@ -212,6 +230,33 @@ public class StreamPumper implements Runnable {
         return bufferSize;
     }
 
+    /**
+     * Set the size in bytes the read buffer may grow to.
+     *
+     * <p>The buffer starts with {@link #setBufferSize the buffer
+     * size} and doubles each time a read fills it completely until
+     * it reaches this size.  Defaults to the buffer size, i.e. the
+     * buffer doesn't grow.</p>
+     * @param maxBufferSize the maximum buffer size to use.
+     * @throws IllegalStateException if the StreamPumper is already running.
+     * @since Ant 1.9.5
+     */
+    public synchronized void setMaxBufferSize(int maxBufferSize) {
+        if (started) {
+            throw new IllegalStateException("Cannot set buffer size on a running StreamPumper");
+        }
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * Get the size in bytes the read buffer may grow to.
+     * @return the maximum size of the read buffer.
+     * @since Ant 1.9.5
+     */
+    public synchronized int getMaxBufferSize() {
+        return Math.max(bufferSize, maxBufferSize);
+    }
+
     /**
      * Get the exception encountered, if any.
      * @return the Exception encountered.
@@ -234,6 +279,15 @@ public class StreamPumper implements Runnable {
 
     private static final long POLL_INTERVAL = 100;
 
+    private boolean inputAvailable() {
+        try {
+            return is.available() > 0;
+        } catch (IOException e) {
+            // the next read will tell
+            return false;
+        }
+    }
+
     private void waitForInput(InputStream is)
         throws IOException, InterruptedException {
         if (useAvailable) {
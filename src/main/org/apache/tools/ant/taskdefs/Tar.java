@@ -32,7 +32,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
@@ -52,6 +51,7 @@ import org.apache.tools.ant.util.MergingMapper;
 import org.apache.tools.ant.util.ResourceUtils;
 import org.apache.tools.ant.util.SourceFileScanner;
 import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.apache.tools.tar.TarBuffer;
 import org.apache.tools.tar.TarConstants;
 import org.apache.tools.tar.TarEntry;
 import org.apache.tools.tar.TarOutputStream;
@@ -123,6 +123,12 @@ public class Tar extends MatchingTask {
 
     private TarCompressionMethod compression = new TarCompressionMethod();
 
+    private int parallel = 1;
+
+    private int blockSize = TarBuffer.DEFAULT_BLKSIZE;
+
+    private boolean doubleBuffer = false;
+
     /**
      * Add a new fileset with the option to specify permissions
      * @return the tar fileset to be used as the nested element.
@@ -231,6 +237,42 @@ public class Tar extends MatchingTask {
         this.compression = mode;
     }
 
+    /**
+     * Set the number of threads used to compress the archive.
+     *
+     * <p>Default is 1, used for bzip2 and gzip compression.</p>
+     * @param parallel the number of worker threads to use.
+     * @since Ant 1.9.5
+     */
+    public void setParallel(final int parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Set the size of the blocks written to the archive in bytes,
+     * must be a multiple of 512.
+     *
+     * <p>Default is 10240, the archive is padded to a multiple of
+     * the block size.</p>
+     * @param blockSize the block size.
+     * @since Ant 1.9.5
+     */
+    public void setBlocksize(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Whether the blocks of the archive should be written on a
+     * separate thread while the next block gets assembled.
+     *
+     * <p>Default is false.</p>
+     * @param b boolean
+     * @since Ant 1.9.5
+     */
+    public void setDoubleBuffer(final boolean b) {
+        doubleBuffer = b;
+    }
+
     /**
      * do the business
      * @throws BuildException on error
@@ -247,6 +289,12 @@ public class Tar extends MatchingTask {
                                      getLocation());
         }
 
+        if (blockSize <= 0 || blockSize % TarBuffer.DEFAULT_RCDSIZE != 0) {
+            throw new BuildException("blocksize must be a positive multiple"
+                                     + " of " + TarBuffer.DEFAULT_RCDSIZE,
+                                     getLocation());
+        }
+
         if (tarFile.exists() && !tarFile.canWrite()) {
             throw new BuildException("Can not write to the specified tarfile!",
                                      getLocation());
@@ -301,10 +349,17 @@ public class Tar extends MatchingTask {
 
             TarOutputStream tOut = null;
             try {
-                tOut = new TarOutputStream(
-                    compression.compress(
-                        new BufferedOutputStream(
-                            new FileOutputStream(tarFile))));
+                OutputStream os = new FileOutputStream(tarFile);
+                // a double buffered TarBuffer writes big chunks to
+                // the file's channel on its own
+                if (!doubleBuffer
+                    || !TarCompressionMethod.NONE.equals(compression.getValue())) {
+                    os = new BufferedOutputStream(os);
+                }
+                tOut = new TarOutputStream(compression.compress(os, parallel),
+                                           blockSize,
+                                           TarBuffer.DEFAULT_RCDSIZE,
+                                           null, doubleBuffer);
                 tOut.setDebug(true);
                 if (longFileMode.isTruncateMode()) {
                     tOut.setLongFileMode(TarOutputStream.LONGFILE_TRUNCATE);
@@ -974,19 +1029,23 @@ public class Tar extends MatchingTask {
          *     corresponding compression method
          *
          *  @param ostream output stream
+         *  @param threads number of threads to use for compression
          *  @return output stream with on-the-fly compression
          *  @exception IOException thrown if file is not writable
          */
-        private OutputStream compress(final OutputStream ostream)
+        private OutputStream compress(final OutputStream ostream,
+                                      final int threads)
             throws IOException {
             final String v = getValue();
             if (GZIP.equals(v)) {
-                return new GZIPOutputStream(ostream);
+                return GZip.createOutputStream(ostream, threads);
             } else {
                 if (BZIP2.equals(v)) {
                     ostream.write('B');
                     ostream.write('Z');
-                    return new CBZip2OutputStream(ostream);
+                    return new CBZip2OutputStream(ostream,
+                                                  CBZip2OutputStream.MAX_BLOCKSIZE,
+                                                  threads);
                 }
             }
             return ostream;
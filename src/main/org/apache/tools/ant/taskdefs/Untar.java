@@ -32,6 +32,7 @@ import org.apache.tools.ant.types.Resource;
 import org.apache.tools.ant.util.FileNameMapper;
 import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.bzip2.CBZip2InputStream;
+import org.apache.tools.tar.TarBuffer;
 import org.apache.tools.tar.TarEntry;
 import org.apache.tools.tar.TarInputStream;
 
@@ -58,6 +59,13 @@ public class Untar extends Expand {
      */
     private UntarCompressionMethod compression = new UntarCompressionMethod();
 
+    /**
+     * number of threads used to decompress bzip2 archives.
+     */
+    private int parallel = 1;
+
+    private boolean doubleBuffer = false;
+
     /**
      * Set decompression algorithm to use; default=none.
      *
@@ -97,6 +105,28 @@ public class Untar extends Expand {
                                  + " attribute", getLocation());
     }
 
+    /**
+     * Number of threads used to decompress bzip2 compressed archives,
+     * the entries of a tar archive are always extracted sequentially.
+     *
+     * @param parallel number of threads
+     * @since Ant 1.9.5
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Whether the archive should be read ahead on a separate thread
+     * while the current block gets extracted; default is false.
+     *
+     * @param b boolean
+     * @since Ant 1.9.5
+     */
+    public void setDoubleBuffer(boolean b) {
+        doubleBuffer = b;
+    }
+
     /**
      * @see Expand#expandFile(FileUtils, File, File)
      */
@@ -155,9 +185,19 @@ public class Untar extends Expand {
         throws IOException {
         TarInputStream tis = null;
         try {
+            // a double buffered TarBuffer reads big chunks from the
+            // file's channel on its own
+            InputStream in = stream;
+            if (!doubleBuffer
+                || !UntarCompressionMethod.NONE.equals(compression.getValue())) {
+                in = new BufferedInputStream(stream);
+            }
             tis =
-                new TarInputStream(compression.decompress(name,
-                                                          new BufferedInputStream(stream)));
+                new TarInputStream(compression.decompress(name, in,
+                                                          parallel),
+                                   TarBuffer.DEFAULT_BLKSIZE,
+                                   TarBuffer.DEFAULT_RCDSIZE,
+                                   null, doubleBuffer);
             log("Expanding: " + name + " into " + dir, Project.MSG_INFO);
             TarEntry te = null;
             boolean empty = true;
@@ -230,6 +270,27 @@ public class Untar extends Expand {
         public InputStream decompress(final String name,
                                        final InputStream istream)
             throws IOException, BuildException {
+            return decompress(name, istream, 1);
+        }
+
+        /**
+         *  This method wraps the input stream with the
+         *     corresponding decompression method
+         *
+         *  @param name provides location information for BuildException
+         *  @param istream input stream
+         *  @param threads number of threads used to decompress bzip2
+         *     streams
+         *  @return input stream with on-the-fly decompression
+         *  @exception IOException thrown by GZIPInputStream constructor
+         *  @exception BuildException thrown if bzip stream does not
+         *     start with expected magic values
+         *  @since Ant 1.9.5
+         */
+        public InputStream decompress(final String name,
+                                      final InputStream istream,
+                                      final int threads)
+            throws IOException, BuildException {
             final String v = getValue();
             if (GZIP.equals(v)) {
                 return new GZIPInputStream(istream);
@@ -242,7 +303,7 @@ public class Untar extends Expand {
                                                      "Invalid bz2 file." + name);
                         }
                     }
-                    return new CBZip2InputStream(istream);
+                    return new CBZip2InputStream(istream, false, threads);
                 }
             }
             return istream;
@@ -17,11 +17,13 @@
  */
 package org.apache.tools.ant.taskdefs;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -32,10 +34,18 @@ import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
@@ -229,6 +239,41 @@ public class Zip extends MatchingTask {
      */
     private Zip64ModeAttribute zip64Mode = Zip64ModeAttribute.AS_NEEDED;
 
+    /**
+     * Whether to append to the existing archive when updating.
+     *
+     * @since Ant 1.9.5
+     */
+    private boolean updateInPlace = false;
+
+    /**
+     * Percentage of unused space that makes an update rewrite the
+     * archive even if updateInPlace is true.
+     *
+     * @since Ant 1.9.5
+     */
+    private int compactThreshold = 50;
+
+    /**
+     * Number of threads used to compress files.
+     *
+     * @since Ant 1.9.5
+     */
+    private int parallel = 1;
+
+    /**
+     * Compresses file entries if parallel is bigger than 1, only
+     * exists while the archive is being written.
+     */
+    private ExecutorService deflaters;
+
+    /**
+     * Entries that are being compressed by the deflaters, in the
+     * order they are going to be added to the archive.
+     */
+    private final LinkedList<Future<DeflatedEntry>> pendingEntries =
+        new LinkedList<Future<DeflatedEntry>>();
+
     /**
      * This is the name/location of where to
      * create the .zip file.
@@ -329,6 +374,50 @@ public class Zip extends MatchingTask {
         return doUpdate;
     }
 
+    /**
+     * Whether an update should append new entries to the existing
+     * archive and only rewrite its central directory rather than
+     * copying the existing archive's entries to a new one.
+     *
+     * <p>Defaults to false.</p>
+     * @param b boolean
+     * @since Ant 1.9.5
+     */
+    public void setUpdateInPlace(final boolean b) {
+        updateInPlace = b;
+    }
+
+    /**
+     * Whether an update should append new entries to the existing
+     * archive.
+     * @since Ant 1.9.5
+     */
+    public boolean getUpdateInPlace() {
+        return updateInPlace;
+    }
+
+    /**
+     * Percentage of the archive's size that may be occupied by the
+     * data of replaced entries before an update rewrites the whole
+     * archive even if updateInPlace is true.
+     *
+     * <p>Defaults to 50.</p>
+     * @param percent int
+     * @since Ant 1.9.5
+     */
+    public void setCompactThreshold(final int percent) {
+        compactThreshold = percent;
+    }
+
+    /**
+     * Percentage of the archive's size that may be occupied by the
+     * data of replaced entries.
+     * @since Ant 1.9.5
+     */
+    public int getCompactThreshold() {
+        return compactThreshold;
+    }
+
     /**
      * Adds a set of files.
      * @param set the fileset to add
@@ -580,6 +669,26 @@ public class Zip extends MatchingTask {
         return zip64Mode;
     }
 
+    /**
+     * Set the number of files to compress at the same time.
+     *
+     * <p>Default is 1, i.e. all entries are compressed by the thread
+     * writing the archive.</p>
+     * @param parallel the number of worker threads to use.
+     * @since Ant 1.9.5
+     */
+    public void setParallel(final int parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * The number of files to compress at the same time.
+     * @since Ant 1.9.5
+     */
+    public int getParallel() {
+        return parallel;
+    }
+
     /**
      * validate and build
      * @throws BuildException on error
@@ -639,6 +748,7 @@ public class Zip extends MatchingTask {
         final ResourceCollection[] fss = new ResourceCollection[vfss.size()];
         vfss.copyInto(fss);
         boolean success = false;
+        boolean reverted = false;
         try {
             // can also handle empty archives
             final ArchiveState state = getResourcesToAdd(fss, zipFile, false);
@@ -662,9 +772,14 @@ public class Zip extends MatchingTask {
             }
             final Resource[][] addThem = state.getResourcesToAdd();
 
+            ZipFile existing = null;
             if (doUpdate) {
-                renamedFile = renameFile();
+                existing = openForUpdateInPlace();
+                if (existing == null) {
+                    renamedFile = renameFile();
+                }
             }
+            final boolean inPlace = existing != null;
 
             final String action = doUpdate ? "Updating " : "Building ";
 
@@ -675,7 +790,15 @@ public class Zip extends MatchingTask {
             ZipOutputStream zOut = null;
             try {
                 if (!skipWriting) {
-                    zOut = new ZipOutputStream(zipFile);
+                    if (inPlace) {
+                        try {
+                            zOut = new ZipOutputStream(zipFile, existing);
+                        } finally {
+                            ZipFile.closeQuietly(existing);
+                        }
+                    } else {
+                        zOut = new ZipOutputStream(zipFile);
+                    }
 
                     zOut.setEncoding(encoding);
                     zOut.setUseLanguageEncodingFlag(useLanguageEncodingFlag);
@@ -686,6 +809,9 @@ public class Zip extends MatchingTask {
                         ? ZipOutputStream.DEFLATED : ZipOutputStream.STORED);
                     zOut.setLevel(level);
                     zOut.setUseZip64(zip64Mode.getMode());
+                    if (parallel > 1 && doCompress) {
+                        deflaters = Executors.newFixedThreadPool(parallel);
+                    }
                 }
                 initZipOutputStream(zOut);
 
@@ -696,7 +822,10 @@ public class Zip extends MatchingTask {
                     }
                 }
 
-                if (doUpdate) {
+                if (inPlace) {
+                    addingNewFiles = false;
+                    removeReplacedEntries(zOut);
+                } else if (doUpdate) {
                     addingNewFiles = false;
                     final ZipFileSet oldFiles = new ZipFileSet();
                     oldFiles.setProject(getProject());
@@ -732,13 +861,14 @@ public class Zip extends MatchingTask {
                     addResources(oldFiles, r, zOut);
                 }
                 if (zOut != null) {
+                    writePendingEntries(zOut);
                     zOut.setComment(comment);
                 }
                 finalizeZipOutputStream(zOut);
 
                 // If we've been successful on an update, delete the
                 // temporary file
-                if (doUpdate) {
+                if (renamedFile != null) {
                     if (!renamedFile.delete()) {
                         log ("Warning: unable to delete temporary file "
                             + renamedFile.getName(), Project.MSG_WARN);
@@ -746,15 +876,22 @@ public class Zip extends MatchingTask {
                 }
                 success = true;
             } finally {
-                // Close the output stream.
-                closeZout(zOut, success);
+                stopDeflaters();
+                if (inPlace && !success && zOut != null) {
+                    // restore the original central directory
+                    reverted = revertZout(zOut);
+                } else {
+                    // Close the output stream.
+                    closeZout(zOut, success);
+                }
             }
         } catch (final IOException ioe) {
             String msg = "Problem creating " + archiveType + ": "
                 + ioe.getMessage();
 
             // delete a bogus ZIP file (but only if it's not the original one)
-            if ((!doUpdate || renamedFile != null) && !zipFile.delete()) {
+            if ((!doUpdate || renamedFile != null) && !reverted
+                && !zipFile.delete()) {
                 msg += " (and the archive is probably corrupt but I could not "
                     + "delete it)";
             }
@@ -774,6 +911,65 @@ public class Zip extends MatchingTask {
         }
     }
 
+    /**
+     * Opens the existing archive if it should be updated in place.
+     *
+     * @return null if the archive should be rewritten instead
+     */
+    private ZipFile openForUpdateInPlace() {
+        if (!updateInPlace || skipWriting || !canUpdateInPlace()) {
+            return null;
+        }
+        ZipFile zf = null;
+        try {
+            zf = new ZipFile(zipFile, encoding);
+            final long unused = zf.getUnusedBytes();
+            if (unused * 100 > zipFile.length() * compactThreshold) {
+                log(unused + " bytes of " + zipFile + " are unused, rewriting"
+                    + " the whole archive", Project.MSG_VERBOSE);
+            } else {
+                final ZipFile result = zf;
+                zf = null;
+                return result;
+            }
+        } catch (final IOException ex) {
+            log("Can't update " + zipFile + " in place: " + ex.getMessage(),
+                Project.MSG_VERBOSE);
+        } finally {
+            ZipFile.closeQuietly(zf);
+        }
+        return null;
+    }
+
+    /**
+     * Whether this task is able to update an archive in place.
+     *
+     * <p>Subclasses must return false if they need to control the
+     * physical position of some entries inside the archive.</p>
+     *
+     * @return true
+     * @since Ant 1.9.5
+     */
+    protected boolean canUpdateInPlace() {
+        return true;
+    }
+
+    /**
+     * Removes the entries that have been replaced by the current
+     * update from the central directory.
+     */
+    private void removeReplacedEntries(final ZipOutputStream zOut) {
+        if (zOut == null) {
+            return;
+        }
+        for (final String name : addedFiles) {
+            zOut.removeExistingEntries(name);
+        }
+        for (final String name : addedDirs.keySet()) {
+            zOut.removeExistingEntries(name);
+        }
+    }
+
     /** rename the zip file. */
     private File renameFile() {
         final File renamedFile = FILE_UTILS.createTempFile(
@@ -794,6 +990,21 @@ public class Zip extends MatchingTask {
         return renamedFile;
     }
 
+    /**
+     * Reverts an archive that has been updated in place.
+     * @return whether the archive has been reverted successfully
+     */
+    private boolean revertZout(final ZipOutputStream zOut) {
+        try {
+            zOut.revert();
+            return true;
+        } catch (final IOException ex) {
+            log("Failed to restore " + zipFile + ": " + ex.getMessage(),
+                Project.MSG_WARN);
+            return false;
+        }
+    }
+
     /** Close zout */
     private void closeZout(final ZipOutputStream zOut, final boolean success)
         throws IOException {
@@ -1057,7 +1268,7 @@ public class Zip extends MatchingTask {
                 }
                 InputStream is = null;
                 try {
-                    is = zf.getInputStream(ze);
+                    is = new SourceStream(zf.getInputStream(ze), null, zf, ze);
                     zipFile(is, zOut, prefix + name, ze.getTime(),
                             fromArchive, mode, ze.getExtraFields(true));
                 } finally {
@@ -1727,10 +1938,123 @@ public class Zip extends MatchingTask {
                 ze.setExtraFields(extra);
             }
 
+            writePendingEntries(zOut);
             zOut.putNextEntry(ze);
         }
     }
 
+    /**
+     * Stream passed to the stream based zipFile method by the file
+     * based one or addResource, knows the file or archive entry it
+     * reads from so the data can be compressed by the deflaters or
+     * copied without being uncompressed.
+     */
+    private static final class SourceStream extends FilterInputStream {
+        private final File file;
+        private final ZipFile zip;
+        private final ZipEntry entry;
+
+        private SourceStream(final InputStream in, final File file,
+                             final ZipFile zip, final ZipEntry entry) {
+            super(in);
+            this.file = file;
+            this.zip = zip;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Compresses a file into memory - or a temporary file if the
+     * compressed data gets too big - and remembers CRC and sizes so
+     * the entry can be added via ZipOutputStream#addRawEntry.
+     */
+    private static final class DeflatedEntry implements Callable<DeflatedEntry> {
+        /** compressed data bigger than this is written to a temporary file */
+        private static final int MAX_BUFFERED = 1024 * 1024;
+
+        private final ZipEntry entry;
+        private final File source;
+        private final int level;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private File tmpFile;
+        private OutputStream tmpOut;
+
+        private DeflatedEntry(final ZipEntry entry, final File source,
+                              final int level) {
+            this.entry = entry;
+            this.source = source;
+            this.level = level;
+        }
+
+        public DeflatedEntry call() throws IOException {
+            final Deflater def = new Deflater(level, true);
+            final CRC32 crc = new CRC32();
+            final byte[] in = new byte[BUFFER_SIZE];
+            final byte[] out = new byte[BUFFER_SIZE];
+            long size = 0;
+            long compressedSize = 0;
+            final InputStream is = new FileInputStream(source);
+            try {
+                int count;
+                while ((count = is.read(in, 0, in.length)) != -1) {
+                    size += count;
+                    crc.update(in, 0, count);
+                    def.setInput(in, 0, count);
+                    while (!def.needsInput()) {
+                        compressedSize += store(out, def.deflate(out, 0, out.length));
+                    }
+                }
+                def.finish();
+                while (!def.finished()) {
+                    compressedSize += store(out, def.deflate(out, 0, out.length));
+                }
+                if (tmpOut != null) {
+                    tmpOut.close();
+                }
+            } catch (final IOException ex) {
+                FileUtils.close(tmpOut);
+                delete();
+                throw ex;
+            } finally {
+                FileUtils.close(is);
+                def.end();
+            }
+            entry.setSize(size);
+            entry.setCompressedSize(compressedSize);
+            entry.setCrc(crc.getValue());
+            return this;
+        }
+
+        private int store(final byte[] data, final int length) throws IOException {
+            if (tmpOut == null && buffer.size() + length > MAX_BUFFERED) {
+                tmpFile = FILE_UTILS.createTempFile("zip", ".tmp", null,
+                                                    false, true);
+                tmpOut = new BufferedOutputStream(new FileOutputStream(tmpFile));
+                buffer.writeTo(tmpOut);
+                buffer = null;
+            }
+            if (tmpOut != null) {
+                tmpOut.write(data, 0, length);
+            } else {
+                buffer.write(data, 0, length);
+            }
+            return length;
+        }
+
+        private InputStream openData() throws IOException {
+            return tmpFile != null ? (InputStream) new FileInputStream(tmpFile)
+                : new ByteArrayInputStream(buffer.toByteArray());
+        }
+
+        private void delete() {
+            buffer = null;
+            if (tmpFile != null) {
+                FILE_UTILS.tryHardToDelete(tmpFile);
+                tmpFile = null;
+            }
+        }
+    }
+
     /*
      * This is a hacky construct to extend the zipFile method to
      * support a new parameter (extra fields to preserve) without
@@ -1847,16 +2171,30 @@ public class Zip extends MatchingTask {
                 ze.setExtraFields(extra);
             }
 
-            zOut.putNextEntry(ze);
-
-            final byte[] buffer = new byte[BUFFER_SIZE];
-            int count = 0;
-            do {
-                if (count != 0) {
-                    zOut.write(buffer, 0, count);
-                }
-                count = in.read(buffer, 0, buffer.length);
-            } while (count != -1);
+            final SourceStream source =
+                in instanceof SourceStream ? (SourceStream) in : null;
+            if (deflaters != null && doCompress
+                && source != null && source.file != null) {
+                // the worker reads the file itself, in is closed by
+                // our caller
+                addDeflatedLater(zOut, ze, source.file);
+            } else if (source != null && source.entry != null
+                       && canCopyRawData(ze, source.entry)) {
+                writePendingEntries(zOut);
+                zOut.addRawEntry(ze, source.zip, source.entry);
+            } else {
+                writePendingEntries(zOut);
+                zOut.putNextEntry(ze);
+
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int count = 0;
+                do {
+                    if (count != 0) {
+                        zOut.write(buffer, 0, count);
+                    }
+                    count = in.read(buffer, 0, buffer.length);
+                } while (count != -1);
+            }
         }
         addedFiles.addElement(vPath);
     }
@@ -1911,7 +2249,8 @@ public class Zip extends MatchingTask {
                                      getLocation());
         }
 
-        final FileInputStream fIn = new FileInputStream(file);
+        final InputStream fIn =
+            new SourceStream(new FileInputStream(file), file, null, null);
         try {
             // ZIPs store time with a granularity of 2 seconds, round up
             zipFile(fIn, zOut, vPath,
@@ -1922,6 +2261,127 @@ public class Zip extends MatchingTask {
         }
     }
 
+    /**
+     * Whether the compressed data of an entry of an archive can be
+     * copied as is rather than being uncompressed and compressed
+     * again.
+     *
+     * <p>This is the case if the entry uses the compression method
+     * we'd use and no specific compression level has been
+     * requested.</p>
+     */
+    private boolean canCopyRawData(final ZipEntry ze, final ZipEntry source) {
+        return ze.getMethod() == source.getMethod()
+            && (source.getMethod() == ZipEntry.STORED
+                || level == ZipOutputStream.DEFAULT_COMPRESSION)
+            && !source.getGeneralPurposeBit().usesEncryption();
+    }
+
+    /**
+     * Hands the file over to the deflaters, the entry will be added
+     * to the archive by writePendingEntries.
+     *
+     * <p>Writes the oldest pending entries if too many of them are
+     * waiting already so the amount of memory used for compressed
+     * data is limited.</p>
+     */
+    private void addDeflatedLater(final ZipOutputStream zOut, final ZipEntry ze,
+                                  final File file)
+        throws IOException {
+        while (pendingEntries.size() >= 2 * parallel) {
+            writePendingEntry(zOut, pendingEntries.removeFirst());
+        }
+        pendingEntries.add(deflaters.submit(new DeflatedEntry(ze, file, level)));
+    }
+
+    /**
+     * Adds all entries that have been handed to the deflaters to the
+     * archive, in the order they have been handed over.
+     *
+     * <p>Must be invoked before anything else is written to the
+     * archive.</p>
+     * @param zOut the stream to write to
+     * @throws IOException on error
+     * @since Ant 1.9.5
+     */
+    protected final void writePendingEntries(final ZipOutputStream zOut)
+        throws IOException {
+        while (!pendingEntries.isEmpty()) {
+            writePendingEntry(zOut, pendingEntries.removeFirst());
+        }
+    }
+
+    private void writePendingEntry(final ZipOutputStream zOut,
+                                   final Future<DeflatedEntry> pending)
+        throws IOException {
+        final DeflatedEntry deflated;
+        try {
+            deflated = pending.get();
+        } catch (final ExecutionException ex) {
+            final Throwable t = ex.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new BuildException(t, getLocation());
+        } catch (final InterruptedException ex) {
+            throw new BuildException("Interrupted while compressing "
+                                     + archiveType + " entries",
+                                     ex, getLocation());
+        }
+        try {
+            final InputStream data = deflated.openData();
+            try {
+                zOut.addRawEntry(deflated.entry, data);
+            } finally {
+                FileUtils.close(data);
+            }
+        } finally {
+            deflated.delete();
+        }
+    }
+
+    /**
+     * Shuts down the deflaters and throws away everything they have
+     * compressed but that has not been added to the archive.
+     */
+    private void stopDeflaters() {
+        if (deflaters == null) {
+            return;
+        }
+        for (final Future<DeflatedEntry> f : pendingEntries) {
+            f.cancel(false);
+        }
+        deflaters.shutdown();
+        boolean interrupted = false;
+        while (!deflaters.isTerminated()) {
+            try {
+                deflaters.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (final InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        for (final Future<DeflatedEntry> f : pendingEntries) {
+            if (!f.isCancelled()) {
+                try {
+                    f.get().delete();
+                } catch (final ExecutionException ex) {
+                    // already reported or about to be ignored
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        pendingEntries.clear();
+        deflaters = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Ensure all parent dirs of a given entry have been added.
      * @param baseDir the base directory to use (may be null)
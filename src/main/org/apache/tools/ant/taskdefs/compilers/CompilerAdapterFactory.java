@@ -32,6 +32,8 @@ import org.apache.tools.ant.util.JavaEnvUtils;
  */
 public final class CompilerAdapterFactory {
     private static final String MODERN_COMPILER = "com.sun.tools.javac.Main";
+    private static final String JSR199_ADAPTER =
+        "org.apache.tools.ant.taskdefs.compilers.JavacJsr199";
 
     /** This is a singleton -- can't create instances!! */
     private CompilerAdapterFactory() {
@@ -46,6 +48,7 @@ public final class CompilerAdapterFactory {
      * <li>classic, javac1.1, javac1.2 = the standard compiler from JDK
      * 1.1/1.2
      * <li>modern, javac1.3, javac1.4, javac1.5 = the compiler of JDK 1.3+
+     * <li>jsr199 = the compiler of JDK 1.6+ invoked via javax.tools</li>
      * <li>jvc, microsoft = the command line compiler from Microsoft's SDK
      * for Java / Visual J++
      * <li>kjc = the kopi compiler</li>
@@ -76,6 +79,7 @@ public final class CompilerAdapterFactory {
      * <li>classic, javac1.1, javac1.2 = the standard compiler from JDK
      * 1.1/1.2
      * <li>modern, javac1.3, javac1.4, javac1.5 = the compiler of JDK 1.3+
+     * <li>jsr199 = the compiler of JDK 1.6+ invoked via javax.tools</li>
      * <li>jvc, microsoft = the command line compiler from Microsoft's SDK
      * for Java / Visual J++
      * <li>kjc = the kopi compiler</li>
@@ -140,6 +144,13 @@ public final class CompilerAdapterFactory {
                 }
             }
 
+            if (compilerType.equalsIgnoreCase("jsr199")) {
+                // only present if Ant has been compiled on Java6+
+                return resolveClassName(JSR199_ADAPTER,
+                                        CompilerAdapterFactory.class
+                                        .getClassLoader());
+            }
+
             if (compilerType.equalsIgnoreCase("jvc")
                 || compilerType.equalsIgnoreCase("microsoft")) {
                 return new Jvc();
@@ -626,6 +626,8 @@ public abstract class DefaultCompilerAdapter
                 && JavaEnvUtils.isJavaVersion(javaEnvVersionXY))
             || ("modern".equals(attributes.getCompilerVersion())
                 && JavaEnvUtils.isJavaVersion(javaEnvVersionXY))
+            || ("jsr199".equals(attributes.getCompilerVersion())
+                && JavaEnvUtils.isJavaVersion(javaEnvVersionXY))
             || ("extJavac".equals(attributes.getCompilerVersion())
                 && JavaEnvUtils.isJavaVersion(javaEnvVersionXY));
     }
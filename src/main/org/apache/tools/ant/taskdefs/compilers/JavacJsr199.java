@@ -0,0 +1,319 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.taskdefs.compilers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.LogOutputStream;
+import org.apache.tools.ant.types.Commandline;
+
+/**
+ * Compiles in-process using the javax.tools API of the running JDK.
+ *
+ * <p>Unlike {@link Javac13} the compiler and its file managers are
+ * kept for the whole build, so the jars of the classpath don't have
+ * to be opened and indexed again for each &lt;javac&gt; task.  A file
+ * manager is only reused by tasks that use the same encoding and
+ * the same options besides classpath, sourcepath and destination
+ * directories, and it is discarded as soon as a jar it has read
+ * changes.  Diagnostics are logged by the task as they are
+ * reported.</p>
+ *
+ * <p>Java6+ is needed to compile this class.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public class JavacJsr199 extends DefaultCompilerAdapter {
+
+    /** locations set from the options of each compilation */
+    private static final StandardLocation[] RESET_LOCATIONS = {
+        StandardLocation.CLASS_OUTPUT, StandardLocation.SOURCE_OUTPUT,
+        StandardLocation.CLASS_PATH, StandardLocation.SOURCE_PATH,
+        StandardLocation.ANNOTATION_PROCESSOR_PATH
+    };
+
+    /** options whose values end up in one of RESET_LOCATIONS */
+    private static final List<String> LOCATION_OPTIONS = Arrays.asList(new String[] {
+        "-d", "-s", "-classpath", "-cp", "-sourcepath", "-processorpath"
+    });
+
+    /** file managers not used by any task, keyed by options, guarded by IDLE */
+    private static final Map<String, LinkedList<SharedFileManager>> IDLE =
+        new HashMap<String, LinkedList<SharedFileManager>>();
+
+    /** projects the adapter listens to, guarded by IDLE */
+    private static final Map<Project, Boolean> PROJECTS = new WeakHashMap<Project, Boolean>();
+
+    private static JavaCompiler compiler;
+
+    /**
+     * Run the compilation.
+     * @return true if the compilation succeeded
+     * @exception BuildException if the compilation has problems.
+     */
+    public boolean execute() throws BuildException {
+        attributes.log("Using javax.tools compiler", Project.MSG_VERBOSE);
+        final JavaCompiler javac = getSystemCompiler();
+
+        final Commandline cmd = new Commandline();
+        setupModernJavacCommandlineSwitches(cmd);
+        final int firstFileName = cmd.size();
+        logAndAddFilesToCompile(cmd);
+        final List<String> options = new ArrayList<String>(
+            Arrays.asList(cmd.getArguments()).subList(0, firstFileName));
+
+        final String key = getKey(options);
+        final SharedFileManager fm = acquire(javac, key);
+        boolean reusable = false;
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(
+            new LogOutputStream(attributes, Project.MSG_INFO)));
+        try {
+            for (int i = 0; i < RESET_LOCATIONS.length; i++) {
+                fm.fileManager.setLocation(RESET_LOCATIONS[i], null);
+            }
+            final Iterable<? extends JavaFileObject> units =
+                fm.fileManager.getJavaFileObjectsFromFiles(Arrays.asList(compileList));
+            final boolean success = javac.getTask(out, fm.fileManager,
+                                                  new LoggingListener(),
+                                                  options, null, units)
+                .call().booleanValue();
+            fm.recordJars();
+            reusable = true;
+            return success;
+        } catch (final IOException ex) {
+            throw new BuildException("Error running javax.tools compiler",
+                                     ex, location);
+        } catch (final IllegalArgumentException ex) {
+            // invalid option
+            throw new BuildException(ex.getMessage(), ex, location);
+        } catch (final BuildException ex) {
+            throw ex;
+        } catch (final RuntimeException ex) {
+            throw new BuildException("Error running javax.tools compiler",
+                                     ex, location);
+        } finally {
+            out.close();
+            if (reusable) {
+                release(key, fm);
+            } else {
+                fm.close();
+            }
+        }
+    }
+
+    /**
+     * The options that must match for tasks to share a file manager.
+     */
+    private String getKey(final List<String> options) {
+        final StringBuffer key = new StringBuffer();
+        key.append(encoding);
+        for (int i = 0; i < options.size(); i++) {
+            final String option = options.get(i);
+            if (LOCATION_OPTIONS.contains(option)) {
+                i++;
+            } else {
+                key.append('\n').append(option);
+            }
+        }
+        return key.toString();
+    }
+
+    private static synchronized JavaCompiler getSystemCompiler() {
+        if (compiler == null) {
+            compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler == null) {
+                throw new BuildException("Unable to find a javac compiler;\n"
+                                         + "the running Java runtime doesn't "
+                                         + "provide one via javax.tools.\n"
+                                         + "Perhaps JAVA_HOME does not point "
+                                         + "to the JDK.");
+            }
+        }
+        return compiler;
+    }
+
+    /**
+     * Takes an idle file manager created for the given options or
+     * creates a new one.
+     */
+    private SharedFileManager acquire(final JavaCompiler javac, final String key) {
+        synchronized (IDLE) {
+            if (!PROJECTS.containsKey(project)) {
+                PROJECTS.put(project, Boolean.TRUE);
+                project.addBuildListener(new BuildFinishedListener());
+            }
+            final LinkedList<SharedFileManager> idle = IDLE.get(key);
+            while (idle != null && !idle.isEmpty()) {
+                final SharedFileManager fm = idle.removeFirst();
+                if (!fm.jarsChanged()) {
+                    attributes.log("Reusing javax.tools file manager",
+                                   Project.MSG_DEBUG);
+                    return fm;
+                }
+                fm.close();
+            }
+        }
+        return new SharedFileManager(javac.getStandardFileManager(
+            null, null, encoding == null ? null : Charset.forName(encoding)));
+    }
+
+    private static void release(final String key, final SharedFileManager fm) {
+        synchronized (IDLE) {
+            LinkedList<SharedFileManager> idle = IDLE.get(key);
+            if (idle == null) {
+                idle = new LinkedList<SharedFileManager>();
+                IDLE.put(key, idle);
+            }
+            idle.addFirst(fm);
+        }
+    }
+
+    /**
+     * Closes all file managers not used by any task.
+     */
+    private static void closeIdle() {
+        final List<SharedFileManager> toClose = new ArrayList<SharedFileManager>();
+        synchronized (IDLE) {
+            for (final LinkedList<SharedFileManager> idle : IDLE.values()) {
+                toClose.addAll(idle);
+            }
+            IDLE.clear();
+        }
+        for (final SharedFileManager fm : toClose) {
+            fm.close();
+        }
+    }
+
+    /**
+     * A file manager together with the timestamps and sizes of the
+     * jars it has read.
+     */
+    private static final class SharedFileManager {
+        private final StandardJavaFileManager fileManager;
+        private final Map<File, long[]> jars = new HashMap<File, long[]>();
+
+        private SharedFileManager(final StandardJavaFileManager fileManager) {
+            this.fileManager = fileManager;
+        }
+
+        private void recordJars() {
+            for (int i = 0; i < RESET_LOCATIONS.length; i++) {
+                final Iterable<? extends File> path =
+                    fileManager.getLocation(RESET_LOCATIONS[i]);
+                if (path == null) {
+                    continue;
+                }
+                for (final File f : path) {
+                    if (f.isFile() && !jars.containsKey(f)) {
+                        jars.put(f, new long[] {f.lastModified(), f.length()});
+                    }
+                }
+            }
+        }
+
+        private boolean jarsChanged() {
+            for (final Map.Entry<File, long[]> e : jars.entrySet()) {
+                final File f = e.getKey();
+                if (f.lastModified() != e.getValue()[0]
+                    || f.length() != e.getValue()[1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void close() {
+            try {
+                fileManager.close();
+            } catch (final IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Logs diagnostics through the javac task.
+     */
+    private class LoggingListener implements DiagnosticListener<JavaFileObject> {
+        public void report(final Diagnostic<? extends JavaFileObject> diagnostic) {
+            int level;
+            switch (diagnostic.getKind()) {
+            case ERROR:
+                level = Project.MSG_ERR;
+                break;
+            case WARNING:
+            case MANDATORY_WARNING:
+                level = Project.MSG_WARN;
+                break;
+            default:
+                level = Project.MSG_INFO;
+                break;
+            }
+            attributes.log(diagnostic.toString(), level);
+        }
+    }
+
+    /**
+     * Closes unused file managers at the end of the build.
+     */
+    private static final class BuildFinishedListener implements BuildListener {
+        public void buildStarted(final BuildEvent event) {
+        }
+        public void buildFinished(final BuildEvent event) {
+            event.getProject().removeBuildListener(this);
+            synchronized (IDLE) {
+                PROJECTS.remove(event.getProject());
+            }
+            closeIdle();
+        }
+        public void targetStarted(final BuildEvent event) {
+        }
+        public void targetFinished(final BuildEvent event) {
+        }
+        public void taskStarted(final BuildEvent event) {
+        }
+        public void taskFinished(final BuildEvent event) {
+        }
+        public void messageLogged(final BuildEvent event) {
+        }
+    }
+}
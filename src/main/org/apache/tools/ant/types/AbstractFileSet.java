@@ -27,6 +27,7 @@ import java.util.Stack;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.FileScanner;
+import org.apache.tools.ant.MagicNames;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.selectors.AndSelector;
 import org.apache.tools.ant.types.selectors.ContainsRegexpSelector;
@@ -51,6 +52,8 @@ import org.apache.tools.ant.types.selectors.SizeSelector;
 import org.apache.tools.ant.types.selectors.TypeSelector;
 import org.apache.tools.ant.types.selectors.WritableSelector;
 import org.apache.tools.ant.types.selectors.modifiedselector.ModifiedSelector;
+import org.apache.tools.ant.util.CachingDirectoryLister;
+import org.apache.tools.ant.util.DirectoryLister;
 
 /**
  * Class that holds an implicit patternset and supports nested
@@ -72,6 +75,7 @@ public abstract class AbstractFileSet extends DataType
     private boolean followSymlinks = true;
     private boolean errorOnMissingDir = true;
     private int maxLevelsOfSymlinks = DirectoryScanner.MAX_LEVELS_OF_SYMLINKS;
+    private Boolean parallel = null;
 
     /* cached DirectoryScanner instance for our own Project only */
     private DirectoryScanner directoryScanner = null;
@@ -98,6 +102,7 @@ public abstract class AbstractFileSet extends DataType
         this.followSymlinks = fileset.followSymlinks;
         this.errorOnMissingDir = fileset.errorOnMissingDir;
         this.maxLevelsOfSymlinks = fileset.maxLevelsOfSymlinks;
+        this.parallel = fileset.parallel;
         setProject(fileset.getProject());
     }
 
@@ -434,6 +439,44 @@ public abstract class AbstractFileSet extends DataType
         return maxLevelsOfSymlinks;
     }
 
+    /**
+     * Sets whether subdirectories should be scanned concurrently.
+     *
+     * <p>If not set explicitly the value of the {@link
+     * MagicNames#SCANNER_PARALLEL ant.scanner.parallel} property is
+     * used.</p>
+     *
+     * @param parallel whether to scan using several threads.
+     * @since Ant 1.9.5
+     */
+    public synchronized void setParallel(boolean parallel) {
+        if (isReference()) {
+            throw tooManyAttributes();
+        }
+        this.parallel = Boolean.valueOf(parallel);
+        directoryScanner = null;
+    }
+
+    /**
+     * Whether subdirectories get scanned concurrently.
+     *
+     * @param p the Project to read the ant.scanner.parallel property
+     * from if the attribute has not been set.
+     * @return whether to scan using several threads.
+     * @since Ant 1.9.5
+     */
+    public synchronized boolean isParallel(Project p) {
+        if (isReference()) {
+            return getRef(p).isParallel(p);
+        }
+        dieOnCircularReference(p);
+        if (parallel != null) {
+            return parallel.booleanValue();
+        }
+        return p != null
+            && Project.toBoolean(p.getProperty(MagicNames.SCANNER_PARALLEL));
+    }
+
     /**
      * Sets whether an error is thrown if a directory does not exist.
      *
@@ -494,6 +537,17 @@ public abstract class AbstractFileSet extends DataType
                 ds.setFollowSymlinks(followSymlinks);
                 ds.setErrorOnMissingDir(errorOnMissingDir);
                 ds.setMaxLevelsOfSymlinks(maxLevelsOfSymlinks);
+                ds.setParallel(isParallel(p));
+                ds.setUseNio(Project.toBoolean(p.getProperty(MagicNames
+                                                             .SCANNER_NIO)));
+                final String cache = p.getProperty(MagicNames.SCANNER_CACHE);
+                final DirectoryLister nio =
+                    DirectoryScanner.getNioDirectoryLister();
+                if (cache != null && nio != null) {
+                    ds.setDirectoryLister(CachingDirectoryLister
+                                          .getInstance(p, p.resolveFile(cache),
+                                                       nio));
+                }
                 directoryScanner = (p == getProject()) ? ds : directoryScanner;
             }
         }
@@ -130,7 +130,7 @@ public class ZipResource extends ArchiveResource {
         if (isReference()) {
             return ((Resource) getCheckedRef()).getInputStream();
         }
-        final ZipFile z = new ZipFile(getZipfile(), getEncoding());
+        final ZipFile z = new ZipFile(getZipfile(), getEncoding(), true, true);
         ZipEntry ze = z.getEntry(getName());
         if (ze == null) {
             z.close();
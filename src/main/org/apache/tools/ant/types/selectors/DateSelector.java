@@ -34,7 +34,8 @@ import org.apache.tools.ant.util.FileUtils;
  *
  * @since 1.5
  */
-public class DateSelector extends BaseExtendSelector {
+public class DateSelector extends BaseExtendSelector
+    implements FileAttributesSelector {
 
     /** Utilities used for file operations */
     private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
@@ -248,6 +249,26 @@ public class DateSelector extends BaseExtendSelector {
             || when.evaluate(file.lastModified(), millis, granularity);
     }
 
+    /**
+     * Like {@link #isSelected(File, String, File)} but uses the
+     * attributes read by the scanner.
+     *
+     * @param basedir the base directory from which the scan is being performed.
+     * @param filename is the name of the file to check.
+     * @param file is a java.io.File object the selector can use.
+     * @param attributes the attributes of file.
+     * @return whether the file is selected.
+     * @since Ant 1.9.5
+     */
+    public boolean isSelected(File basedir, String filename, File file,
+                              FileAttributes attributes) {
+
+        validate();
+
+        return (attributes.isDirectory() && !includeDirs)
+            || when.evaluate(attributes.getLastModified(), millis, granularity);
+    }
+
     /**
      * Enumerated attribute with the values for time comparison.
      * <p>
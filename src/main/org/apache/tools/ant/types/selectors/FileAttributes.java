@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.types.selectors;
+
+/**
+ * The attributes of a directory entry as read by a scanner.
+ *
+ * <p>Allows selectors implementing {@link FileAttributesSelector} to
+ * use information the scanner already has rather than querying the
+ * file system once again.</p>
+ *
+ * <p>Unless the entry is a symbolic link that doesn't point to
+ * anything, all information but {@link #isSymbolicLink} is about the
+ * target of a link rather than the link itself.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public class FileAttributes {
+
+    private final String name;
+    private final boolean directory;
+    private final boolean regularFile;
+    private final boolean symbolicLink;
+    private final long lastModified;
+    private final long size;
+    private final Object fileKey;
+
+    /**
+     * @param name name of the entry inside its directory.
+     * @param directory whether the entry is a directory.
+     * @param regularFile whether the entry is a regular file.
+     * @param symbolicLink whether the entry is a symbolic link.
+     * @param lastModified modification time in milliseconds since
+     * the epoch.
+     * @param size size in bytes.
+     * @param fileKey an object that uniquely identifies the file or
+     * directory, may be null.
+     */
+    public FileAttributes(String name, boolean directory, boolean regularFile,
+                          boolean symbolicLink, long lastModified, long size,
+                          Object fileKey) {
+        this.name = name;
+        this.directory = directory;
+        this.regularFile = regularFile;
+        this.symbolicLink = symbolicLink;
+        this.lastModified = lastModified;
+        this.size = size;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * Name of the entry inside its directory.
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether the entry is a directory.
+     * @return boolean
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Whether the entry is a regular file.
+     * @return boolean
+     */
+    public boolean isRegularFile() {
+        return regularFile;
+    }
+
+    /**
+     * Whether the entry itself is a symbolic link.
+     * @return boolean
+     */
+    public boolean isSymbolicLink() {
+        return symbolicLink;
+    }
+
+    /**
+     * Modification time in milliseconds since the epoch.
+     * @return long
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Size in bytes.
+     * @return long
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * An object that uniquely identifies the file - like device and
+     * inode on Unix - or null if the file system doesn't provide one.
+     * @return the key, may be null
+     */
+    public Object getFileKey() {
+        return fileKey;
+    }
+}
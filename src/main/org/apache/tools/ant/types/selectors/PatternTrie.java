@@ -0,0 +1,305 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.types.selectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of path patterns compiled into a single automaton over the
+ * tokens of a path.
+ *
+ * <p>Patterns sharing a common prefix share the states for that
+ * prefix, tokens without wildcards are looked up in a map, so a path
+ * is matched against all patterns in a single pass over its tokens
+ * rather than once per pattern.  The results are the same as those
+ * of {@link TokenizedPattern#matchPath TokenizedPattern}.</p>
+ *
+ * <p>Instances are immutable and can be shared between threads, use
+ * {@link #getInstance getInstance} to obtain a cached instance for a
+ * given set of patterns.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public final class PatternTrie {
+
+    /** Number of compiled pattern sets kept by getInstance. */
+    private static final int CACHE_SIZE = 64;
+
+    private static final Map<List<String>, PatternTrie> CASE_SENSITIVE_CACHE =
+        new Cache();
+    private static final Map<List<String>, PatternTrie> CASE_INSENSITIVE_CACHE =
+        new Cache();
+
+    private final boolean isCaseSensitive;
+    private final Node root = new Node(false);
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param patterns the patterns to match against.  Must not be
+     *                 <code>null</code>.
+     * @param isCaseSensitive Whether or not matching should be
+     *                        performed case sensitively.
+     */
+    public PatternTrie(String[] patterns, boolean isCaseSensitive) {
+        this.isCaseSensitive = isCaseSensitive;
+        for (int i = 0; i < patterns.length; i++) {
+            add(SelectorUtils.tokenizePathAsArray(patterns[i]));
+        }
+    }
+
+    /**
+     * Returns a compiled version of the given patterns, reusing an
+     * earlier instance if the same patterns have been compiled
+     * before.
+     *
+     * @param patterns the patterns to match against.  Must not be
+     *                 <code>null</code>.
+     * @param isCaseSensitive Whether or not matching should be
+     *                        performed case sensitively.
+     * @return the compiled patterns
+     */
+    public static PatternTrie getInstance(String[] patterns,
+                                          boolean isCaseSensitive) {
+        final Map<List<String>, PatternTrie> cache =
+            isCaseSensitive ? CASE_SENSITIVE_CACHE : CASE_INSENSITIVE_CACHE;
+        final List<String> key = Arrays.asList(patterns.clone());
+        synchronized (cache) {
+            PatternTrie t = cache.get(key);
+            if (t == null) {
+                t = new PatternTrie(patterns, isCaseSensitive);
+                cache.put(key, t);
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Tests whether the given path matches at least one of the
+     * patterns.
+     *
+     * @param path the path to match
+     * @return <code>true</code> if at least one pattern matches the
+     *         path, or <code>false</code> otherwise.
+     */
+    public boolean matchPath(TokenizedPath path) {
+        final List<Node> states = run(path);
+        for (int i = 0; i < states.size(); i++) {
+            if (states.get(i).isEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether at least one pattern matches the start of the
+     * given path and could match something below it, i.e. either
+     * contains "**" or has more tokens than the path.
+     *
+     * <p>Like {@link TokenizedPattern#matchStartOf
+     * TokenizedPattern.matchStartOf} this yields false positives for
+     * patterns containing "**".</p>
+     *
+     * @param path the path of a directory
+     * @return whether a file or directory inside path could match.
+     */
+    public boolean couldHoldMatch(TokenizedPath path) {
+        final List<Node> states = run(path);
+        for (int i = 0; i < states.size(); i++) {
+            final Node n = states.get(i);
+            if (n.isDeep || n.hasChildren()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether everything below the given path is matched,
+     * i.e. at least one pattern ending in "**" matches the path
+     * once the trailing "**" has been removed.
+     *
+     * @param path the path of a directory
+     * @return whether all contents of the directory match.
+     */
+    public boolean matchesAllBelow(TokenizedPath path) {
+        final List<Node> states = run(path);
+        for (int i = 0; i < states.size(); i++) {
+            final Node n = states.get(i);
+            if (n.deep != null && n.deep.isEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(String[] tokens) {
+        Node current = root;
+        for (int i = 0; i < tokens.length; i++) {
+            final String token = tokens[i];
+            if (token.equals(SelectorUtils.DEEP_TREE_MATCH)) {
+                if (current.deep == null) {
+                    current.deep = new Node(true);
+                }
+                current = current.deep;
+            } else if (SelectorUtils.hasWildcards(token)) {
+                if (current.wildcards == null) {
+                    current.wildcards = new ArrayList<String>();
+                    current.wildcardChildren = new ArrayList<Node>();
+                }
+                final int idx = current.wildcards.indexOf(token);
+                if (idx >= 0) {
+                    current = current.wildcardChildren.get(idx);
+                } else {
+                    final Node n = new Node(false);
+                    current.wildcards.add(token);
+                    current.wildcardChildren.add(n);
+                    current = n;
+                }
+            } else {
+                if (current.literals == null) {
+                    current.literals = new HashMap<String, Node>();
+                }
+                final String key = fold(token);
+                Node n = current.literals.get(key);
+                if (n == null) {
+                    n = new Node(false);
+                    current.literals.put(key, n);
+                }
+                current = n;
+            }
+        }
+        current.isEnd = true;
+    }
+
+    /**
+     * Feeds all tokens of the path to the automaton.
+     * @return the states reached after the last token
+     */
+    private List<Node> run(TokenizedPath path) {
+        final String[] tokens = path.getTokens();
+        List<Node> states = new ArrayList<Node>();
+        Set<Node> seen = new HashSet<Node>();
+        addWithDeep(root, states, seen);
+        for (int i = 0; i < tokens.length && !states.isEmpty(); i++) {
+            final String token = tokens[i];
+            final String key = fold(token);
+            final List<Node> next = new ArrayList<Node>();
+            seen = new HashSet<Node>();
+            for (int j = 0; j < states.size(); j++) {
+                final Node n = states.get(j);
+                if (n.isDeep) {
+                    addWithDeep(n, next, seen);
+                }
+                if (n.literals != null) {
+                    final Node c = n.literals.get(key);
+                    if (c != null) {
+                        addWithDeep(c, next, seen);
+                    }
+                }
+                if (n.wildcards != null) {
+                    for (int k = 0; k < n.wildcards.size(); k++) {
+                        if (SelectorUtils.match(n.wildcards.get(k), token,
+                                                isCaseSensitive)) {
+                            addWithDeep(n.wildcardChildren.get(k), next, seen);
+                        }
+                    }
+                }
+            }
+            states = next;
+        }
+        return states;
+    }
+
+    /**
+     * Adds the node and - as "**" may match no token at all - the
+     * "**" nodes following it.
+     */
+    private static void addWithDeep(Node n, List<Node> states, Set<Node> seen) {
+        for (Node current = n; current != null; current = current.deep) {
+            if (seen.add(current)) {
+                states.add(current);
+            }
+        }
+    }
+
+    /**
+     * Key used to look up tokens without wildcards, consistent with
+     * the character comparison of {@link SelectorUtils#match(String,
+     * String, boolean) SelectorUtils.match}.
+     */
+    private String fold(String token) {
+        if (isCaseSensitive) {
+            return token;
+        }
+        final char[] chars = token.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toUpperCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * A state of the automaton.
+     */
+    private static final class Node {
+        /** whether this node stands for "**" and thus matches any token */
+        private final boolean isDeep;
+        /** whether a pattern ends here */
+        private boolean isEnd;
+        /** transitions for tokens without wildcards */
+        private Map<String, Node> literals;
+        /** transitions for tokens with wildcards */
+        private List<String> wildcards;
+        private List<Node> wildcardChildren;
+        /** transition for "**" */
+        private Node deep;
+
+        private Node(boolean isDeep) {
+            this.isDeep = isDeep;
+        }
+
+        private boolean hasChildren() {
+            return literals != null || wildcards != null || deep != null;
+        }
+    }
+
+    /**
+     * Keeps the most recently used instances.
+     */
+    private static class Cache extends LinkedHashMap<List<String>, PatternTrie> {
+        private static final long serialVersionUID = 1L;
+
+        Cache() {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<List<String>, PatternTrie> e) {
+            return size() > CACHE_SIZE;
+        }
+    }
+}
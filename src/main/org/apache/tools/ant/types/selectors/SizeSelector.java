@@ -29,7 +29,8 @@ import org.apache.tools.ant.types.Parameter;
  *
  * @since 1.5
  */
-public class SizeSelector extends BaseExtendSelector {
+public class SizeSelector extends BaseExtendSelector
+    implements FileAttributesSelector {
 
     /** Constants for kilo, kibi etc */
     private static final int  KILO = 1000;
@@ -233,6 +234,31 @@ public class SizeSelector extends BaseExtendSelector {
         return when.evaluate(diff == 0 ? 0 : (int) (diff / Math.abs(diff)));
     }
 
+    /**
+     * Like {@link #isSelected(File, String, File)} but uses the
+     * attributes read by the scanner.
+     *
+     * @param basedir A java.io.File object for the base directory
+     * @param filename The name of the file to check
+     * @param file A File object for this filename
+     * @param attributes the attributes of file.
+     * @return whether the file should be selected or not
+     * @since Ant 1.9.5
+     */
+    public boolean isSelected(File basedir, String filename, File file,
+                              FileAttributes attributes) {
+
+        // throw BuildException on error
+        validate();
+
+        // Directory size never selected for
+        if (attributes.isDirectory()) {
+            return true;
+        }
+        long diff = attributes.getSize() - sizelimit;
+        return when.evaluate(diff == 0 ? 0 : (int) (diff / Math.abs(diff)));
+    }
+
 
     /**
      * Enumerated attribute with the values for units.
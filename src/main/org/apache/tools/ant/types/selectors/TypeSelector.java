@@ -28,7 +28,8 @@ import org.apache.tools.ant.types.Parameter;
  *
  * @since 1.6
  */
-public class TypeSelector extends BaseExtendSelector {
+public class TypeSelector extends BaseExtendSelector
+    implements FileAttributesSelector {
 
     private String type = null;
 
@@ -114,6 +115,27 @@ public class TypeSelector extends BaseExtendSelector {
         }
     }
 
+    /**
+     * Like {@link #isSelected(File, String, File)} but uses the
+     * attributes read by the scanner.
+     *
+     * @param basedir the base directory the scan is being done from
+     * @param filename is the name of the file to check
+     * @param file is a java.io.File object the selector can use
+     * @param attributes the attributes of file.
+     * @return whether the file should be selected or not
+     * @since Ant 1.9.5
+     */
+    public boolean isSelected(File basedir, String filename, File file,
+                              FileAttributes attributes) {
+
+        // throw BuildException on error
+        validate();
+
+        return type.equals(attributes.isDirectory() ? FileType.DIR
+                           : FileType.FILE);
+    }
+
     /**
      * Enumerated attribute with the values for types of file
      */
@@ -0,0 +1,390 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.SubBuildListener;
+import org.apache.tools.ant.types.selectors.FileAttributes;
+
+/**
+ * A DirectoryLister that keeps the listings of directories in a
+ * file and only reads directories again whose modification time has
+ * changed.
+ *
+ * <p>Only the names, types and file keys of the entries are cached,
+ * modification times and sizes of files are read when somebody asks
+ * for them as changing a file doesn't change the modification time
+ * of its directory.</p>
+ *
+ * <p>Listings taken within the file system's timestamp granularity
+ * of the directory's last modification are not trusted as the
+ * directory may have been modified again without its timestamp
+ * changing.</p>
+ *
+ * <p>There is one instance per index file and build, the index is
+ * written when a build using it has finished and the instance is
+ * discarded, so the next build reads the index again.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public class CachingDirectoryLister implements DirectoryLister, SubBuildListener {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    /** Marks the format of the index file. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int IS_DIRECTORY = 1;
+    private static final int IS_FILE = 2;
+    private static final int IS_LINK = 4;
+
+    /** index file to instance of the currently running builds */
+    private static final Map<File, CachingDirectoryLister> INSTANCES =
+        new HashMap<File, CachingDirectoryLister>();
+
+    private final File index;
+    private final DirectoryLister delegate;
+    private final Map<String, Listing> listings =
+        new ConcurrentHashMap<String, Listing>();
+    private volatile boolean dirty = false;
+
+    /**
+     * Creates a cache backed by the given index file.
+     *
+     * <p>The index file is read right away if it exists.</p>
+     *
+     * @param index the file holding the cached listings
+     * @param delegate used to read directories that have changed
+     */
+    public CachingDirectoryLister(File index, DirectoryLister delegate) {
+        this.index = index;
+        this.delegate = delegate;
+        load();
+    }
+
+    /**
+     * Returns the shared instance for the given index file and
+     * makes sure it is going to be saved once the project's build
+     * has finished.
+     *
+     * @param project the project using the cache
+     * @param index the file holding the cached listings
+     * @param delegate used to read directories that have changed if
+     * a new instance needs to be created
+     * @return the shared instance
+     */
+    public static CachingDirectoryLister getInstance(Project project, File index,
+                                                     DirectoryLister delegate) {
+        final File key = FILE_UTILS.normalize(index.getAbsolutePath());
+        CachingDirectoryLister l;
+        synchronized (INSTANCES) {
+            l = INSTANCES.get(key);
+            if (l == null) {
+                l = new CachingDirectoryLister(key, delegate);
+                INSTANCES.put(key, l);
+            }
+        }
+        project.addBuildListener(l);
+        return l;
+    }
+
+    /**
+     * Lists the entries of a directory.
+     * @param dir the directory to list
+     * @return the attributes of all entries
+     * @throws IOException if the directory cannot be read
+     */
+    public FileAttributes[] list(File dir) throws IOException {
+        final String path = dir.getAbsolutePath();
+        final long lastModified = dir.lastModified();
+        final Listing cached = listings.get(path);
+        if (cached != null && cached.isValid(lastModified)) {
+            final FileAttributes[] result = new FileAttributes[cached.names.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new CachedAttributes(dir, cached.names[i],
+                                                 cached.flags[i],
+                                                 cached.keys[i]);
+            }
+            return result;
+        }
+
+        final long listedAt = System.currentTimeMillis();
+        final FileAttributes[] entries = delegate.list(dir);
+        final FileAttributes[] result = new FileAttributes[entries.length];
+        final Listing l = new Listing(lastModified, listedAt, entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            final FileAttributes a = entries[i];
+            l.names[i] = a.getName();
+            l.flags[i] = (a.isDirectory() ? IS_DIRECTORY : 0)
+                | (a.isRegularFile() ? IS_FILE : 0)
+                | (a.isSymbolicLink() ? IS_LINK : 0);
+            l.keys[i] = a.getFileKey() == null ? null
+                : a.getFileKey().toString();
+            // always hand out keys as strings so fresh and cached
+            // entries can be compared
+            result[i] = new FileAttributes(a.getName(), a.isDirectory(),
+                                           a.isRegularFile(),
+                                           a.isSymbolicLink(),
+                                           a.getLastModified(), a.getSize(),
+                                           l.keys[i]);
+        }
+        listings.put(path, l);
+        dirty = true;
+        return result;
+    }
+
+    /**
+     * Reads the attributes of a single file or directory.
+     * @param file the file
+     * @return its attributes
+     * @throws IOException if the attributes cannot be read
+     */
+    public FileAttributes readAttributes(File file) throws IOException {
+        final FileAttributes a = delegate.readAttributes(file);
+        return new FileAttributes(a.getName(), a.isDirectory(),
+                                  a.isRegularFile(), a.isSymbolicLink(),
+                                  a.getLastModified(), a.getSize(),
+                                  a.getFileKey() == null ? null
+                                  : a.getFileKey().toString());
+    }
+
+    /**
+     * Writes the index file if any listing has changed.
+     * @throws IOException on error
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        final File parent = index.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        final File tmp = FILE_UTILS.createTempFile("scan", ".tmp", parent,
+                                                   true, false);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(listings.size());
+            for (final Map.Entry<String, Listing> e : listings.entrySet()) {
+                final Listing l = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(l.lastModified);
+                out.writeLong(l.listedAt);
+                out.writeInt(l.names.length);
+                for (int i = 0; i < l.names.length; i++) {
+                    out.writeUTF(l.names[i]);
+                    out.writeByte(l.flags[i]);
+                    out.writeBoolean(l.keys[i] != null);
+                    if (l.keys[i] != null) {
+                        out.writeUTF(l.keys[i]);
+                    }
+                }
+            }
+            out.close();
+            out = null;
+            FILE_UTILS.rename(tmp, index);
+        } finally {
+            FileUtils.close(out);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Reads the index file, silently starts with an empty cache if
+     * it cannot be read.
+     */
+    private void load() {
+        if (!index.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                final Listing l = new Listing(in.readLong(), in.readLong(),
+                                              in.readInt());
+                for (int j = 0; j < l.names.length; j++) {
+                    l.names[j] = in.readUTF();
+                    l.flags[j] = in.readByte();
+                    l.keys[j] = in.readBoolean() ? in.readUTF() : null;
+                }
+                listings.put(path, l);
+            }
+        } catch (final IOException ex) {
+            // corrupt index, start over
+            listings.clear();
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+
+    /**
+     * Saves the index and forgets this instance.
+     * @param event the build event
+     */
+    public void buildFinished(BuildEvent event) {
+        saveAndLog(event);
+        event.getProject().removeBuildListener(this);
+        synchronized (INSTANCES) {
+            if (INSTANCES.get(index) == this) {
+                INSTANCES.remove(index);
+            }
+        }
+    }
+
+    /**
+     * Saves the index.
+     * @param event the build event
+     */
+    public void subBuildFinished(BuildEvent event) {
+        saveAndLog(event);
+    }
+
+    private void saveAndLog(BuildEvent event) {
+        try {
+            save();
+        } catch (final IOException ex) {
+            event.getProject().log("failed to write directory scan cache "
+                                   + index + ": " + ex.getMessage(),
+                                   Project.MSG_WARN);
+        }
+    }
+
+    /**
+     * Empty.
+     * @param event ignored
+     */
+    public void buildStarted(BuildEvent event) {
+    }
+
+    /**
+     * Empty.
+     * @param event ignored
+     */
+    public void subBuildStarted(BuildEvent event) {
+    }
+
+    /**
+     * Empty.
+     * @param event ignored
+     */
+    public void targetStarted(BuildEvent event) {
+    }
+
+    /**
+     * Empty.
+     * @param event ignored
+     */
+    public void targetFinished(BuildEvent event) {
+    }
+
+    /**
+     * Empty.
+     * @param event ignored
+     */
+    public void taskStarted(BuildEvent event) {
+    }
+
+    /**
+     * Empty.
+     * @param event ignored
+     */
+    public void taskFinished(BuildEvent event) {
+    }
+
+    /**
+     * Empty.
+     * @param event ignored
+     */
+    public void messageLogged(BuildEvent event) {
+    }
+
+    /**
+     * The cached content of a single directory.
+     */
+    private static class Listing {
+        private final long lastModified;
+        private final long listedAt;
+        private final String[] names;
+        private final int[] flags;
+        private final String[] keys;
+
+        private Listing(long lastModified, long listedAt, int size) {
+            this.lastModified = lastModified;
+            this.listedAt = listedAt;
+            names = new String[size];
+            flags = new int[size];
+            keys = new String[size];
+        }
+
+        /**
+         * Whether the directory with the given modification time
+         * can still be represented by this listing.
+         */
+        private boolean isValid(long currentLastModified) {
+            return currentLastModified != 0
+                && currentLastModified == lastModified
+                && listedAt - lastModified
+                   > FILE_UTILS.getFileTimestampGranularity();
+        }
+    }
+
+    /**
+     * Attributes of a cached entry, reads modification time and size
+     * on demand.
+     */
+    private static class CachedAttributes extends FileAttributes {
+        private final File file;
+
+        private CachedAttributes(File dir, String name, int flags, String key) {
+            super(name, (flags & IS_DIRECTORY) != 0, (flags & IS_FILE) != 0,
+                  (flags & IS_LINK) != 0, 0, 0, key);
+            file = new File(dir, name);
+        }
+
+        public long getLastModified() {
+            return file.lastModified();
+        }
+
+        public long getSize() {
+            return file.length();
+        }
+    }
+}
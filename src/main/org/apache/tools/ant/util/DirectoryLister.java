@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.tools.ant.types.selectors.FileAttributes;
+
+/**
+ * Lists a directory's entries together with their attributes.
+ *
+ * <p>Implementations are expected to read the attributes of each
+ * entry once, following symbolic links but remembering whether the
+ * entry itself has been a link.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public interface DirectoryLister {
+
+    /**
+     * Lists the entries of a directory.
+     * @param dir the directory to list
+     * @return the attributes of all entries
+     * @throws IOException if the directory cannot be read
+     */
+    FileAttributes[] list(File dir) throws IOException;
+
+    /**
+     * Reads the attributes of a single file or directory.
+     * @param file the file
+     * @return its attributes
+     * @throws IOException if the attributes cannot be read
+     */
+    FileAttributes readAttributes(File file) throws IOException;
+}
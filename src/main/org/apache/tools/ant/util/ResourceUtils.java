@@ -793,8 +793,10 @@ public class ResourceUtils {
             final long count = srcChannel.size();
             while (position < count) {
                 final long chunk = Math.min(MAX_IO_CHUNK_SIZE, count - position);
+                // transferTo lets the OS copy the data without moving it
+                // through user space where supported
                 position +=
-                    destChannel.transferFrom(srcChannel, position, chunk);
+                    srcChannel.transferTo(position, chunk, destChannel);
             }
         } finally {
             FileUtils.close(srcChannel);
@@ -0,0 +1,91 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.util.java17;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.types.selectors.FileAttributes;
+import org.apache.tools.ant.util.DirectoryLister;
+
+/**
+ * DirectoryLister based on java.nio.file that reads the attributes
+ * of every entry with a single call (two for symbolic links).
+ *
+ * <p>Java7+ is needed to compile this class.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public class NioDirectoryLister implements DirectoryLister {
+
+    /**
+     * Lists the entries of a directory.
+     * @param dir the directory to list
+     * @return the attributes of all entries
+     * @throws IOException if the directory cannot be read
+     */
+    public FileAttributes[] list(File dir) throws IOException {
+        final List<FileAttributes> result = new ArrayList<FileAttributes>();
+        final DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath());
+        try {
+            for (Path p : stream) {
+                result.add(read(p));
+            }
+        } finally {
+            stream.close();
+        }
+        return result.toArray(new FileAttributes[result.size()]);
+    }
+
+    /**
+     * Reads the attributes of a single file or directory.
+     * @param file the file
+     * @return its attributes
+     * @throws IOException if the attributes cannot be read
+     */
+    public FileAttributes readAttributes(File file) throws IOException {
+        return read(file.toPath());
+    }
+
+    private static FileAttributes read(Path p) throws IOException {
+        BasicFileAttributes attrs =
+            Files.readAttributes(p, BasicFileAttributes.class,
+                                 LinkOption.NOFOLLOW_LINKS);
+        final boolean link = attrs.isSymbolicLink();
+        if (link) {
+            try {
+                attrs = Files.readAttributes(p, BasicFileAttributes.class);
+            } catch (IOException ex) {
+                // dangling link, keep the attributes of the link itself
+            }
+        }
+        final Path name = p.getFileName();
+        return new FileAttributes(name == null ? "" : name.toString(),
+                                  attrs.isDirectory(), attrs.isRegularFile(),
+                                  link, attrs.lastModifiedTime().toMillis(),
+                                  attrs.size(), attrs.fileKey());
+    }
+}
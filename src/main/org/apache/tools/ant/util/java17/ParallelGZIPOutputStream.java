@@ -0,0 +1,319 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.util.java17;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a single gzip member, compressing chunks of the data on
+ * several threads like pigz does.
+ *
+ * <p>Each chunk is deflated on its own, using the last 32k of the
+ * previous chunk as preset dictionary, and ends with a sync flush so
+ * the chunks can simply be concatenated.  The CRCs of the chunks are
+ * combined into the CRC of the whole member.</p>
+ *
+ * <p>Java7+ is needed to compile this class.</p>
+ *
+ * @since Ant 1.9.5
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+
+    private static final int CHUNK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final ExecutorService pool;
+    private final int maxPending;
+    private final LinkedList<Future<Chunk>> pending =
+        new LinkedList<Future<Chunk>>();
+
+    private byte[] previous;
+    private byte[] current = new byte[CHUNK_SIZE];
+    private int currentLength;
+
+    private long crc;
+    private long totalLength;
+    private boolean finished;
+
+    /**
+     * Creates a new stream and writes the gzip header.
+     * @param out the stream to write the compressed data to
+     * @param threads the number of chunks to compress at the same time
+     * @throws IOException if the header cannot be written
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int threads)
+        throws IOException {
+        super(out);
+        maxPending = 2 * Math.max(1, threads);
+        pool = Executors.newFixedThreadPool(Math.max(1, threads),
+                                            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "gzip chunk compressor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        out.write(HEADER);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(int b) throws IOException {
+        if (finished) {
+            throw new IOException("stream has already been finished");
+        }
+        if (currentLength == current.length) {
+            submit(false);
+        }
+        current[currentLength++] = (byte) b;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("stream has already been finished");
+        }
+        while (len > 0) {
+            if (currentLength == current.length) {
+                submit(false);
+            }
+            int n = Math.min(len, current.length - currentLength);
+            System.arraycopy(b, off, current, currentLength, n);
+            currentLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Finishes writing the gzip member without closing the
+     * underlying stream.
+     * @throws IOException if the data cannot be written
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeChunk();
+            }
+            writeInt((int) crc);
+            writeInt((int) totalLength);
+            out.flush();
+        } finally {
+            for (Future<Chunk> f : pending) {
+                f.cancel(false);
+            }
+            pool.shutdown();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submit(final boolean last) throws IOException {
+        final byte[] dictionary = previous;
+        final byte[] data = current;
+        final int length = currentLength;
+        pending.add(pool.submit(new Callable<Chunk>() {
+                public Chunk call() {
+                    return compress(dictionary, data, length, last);
+                }
+            }));
+        previous = current;
+        current = new byte[CHUNK_SIZE];
+        currentLength = 0;
+        while (pending.size() > maxPending) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        Chunk c;
+        try {
+            c = pending.removeFirst().get();
+        } catch (InterruptedException ex) {
+            InterruptedIOException iox =
+                new InterruptedIOException("interrupted while compressing");
+            iox.initCause(ex);
+            throw iox;
+        } catch (ExecutionException ex) {
+            Throwable t = ex.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new RuntimeException(t);
+        }
+        c.compressed.writeTo(out);
+        crc = crc32Combine(crc, c.crc, c.length);
+        totalLength += c.length;
+    }
+
+    private void writeInt(int i) throws IOException {
+        out.write(i & 0xff);
+        out.write((i >> 8) & 0xff);
+        out.write((i >> 16) & 0xff);
+        out.write((i >> 24) & 0xff);
+    }
+
+    private static Chunk compress(byte[] dictionary, byte[] data, int length,
+                                  boolean last) {
+        CRC32 c = new CRC32();
+        c.update(data, 0, length);
+        ByteArrayOutputStream compressed =
+            new ByteArrayOutputStream(length / 2 + 64);
+        Deflater def = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                def.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE,
+                                  DICTIONARY_SIZE);
+            }
+            def.setInput(data, 0, length);
+            byte[] buf = new byte[8192];
+            int n;
+            if (last) {
+                def.finish();
+                while (!def.finished()) {
+                    n = def.deflate(buf);
+                    compressed.write(buf, 0, n);
+                }
+            } else {
+                // byte aligned end of the chunk without finishing the
+                // deflate stream
+                while ((n = def.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH)) > 0) {
+                    compressed.write(buf, 0, n);
+                }
+            }
+        } finally {
+            def.end();
+        }
+        return new Chunk(compressed, c.getValue(), length);
+    }
+
+    private static final class Chunk {
+        private final ByteArrayOutputStream compressed;
+        private final long crc;
+        private final int length;
+
+        private Chunk(ByteArrayOutputStream compressed, long crc, int length) {
+            this.compressed = compressed;
+            this.crc = crc;
+            this.length = length;
+        }
+    }
+
+    // CRC combination as done by zlib's crc32_combine
+
+    private static final int GF2_DIM = 32;
+
+    private static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+        int i = 0;
+        while (vec != 0) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+            vec >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n = 0; n < GF2_DIM; n++) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+
+    /**
+     * Computes the CRC of two concatenated blocks of data.
+     * @param crc1 CRC of the first block
+     * @param crc2 CRC of the second block
+     * @param len2 length of the second block
+     */
+    private static long crc32Combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[GF2_DIM];
+        long[] odd = new long[GF2_DIM];
+
+        // operator for one zero bit in odd
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < GF2_DIM; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // operator for two zero bits in even
+        gf2MatrixSquare(even, odd);
+        // operator for four zero bits in odd
+        gf2MatrixSquare(odd, even);
+
+        // apply len2 zeros to crc1, the first square puts the
+        // operator for one zero byte, eight zero bits, in even
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+
+        return crc1 ^ crc2;
+    }
+}
@@ -23,8 +23,18 @@
  */
 package org.apache.tools.bzip2;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * An input stream that decompresses from the BZip2 format (without the file
@@ -40,6 +50,13 @@ import java.io.InputStream;
  * source stream via the single byte {@link java.io.InputStream#read()
  * read()} method exclusively. Thus you should consider to use a
  * buffered source stream.</p>
+ *
+ * <p>When created {@link #CBZip2InputStream(InputStream, boolean,
+ * int) with more than one thread} the stream locates the blocks of
+ * the compressed data by their header magic and decodes several
+ * blocks at the same time.  This requires the decompression memory
+ * once for each thread plus the compressed and decompressed data of
+ * the blocks read ahead.</p>
  * 
  * <p>Instances of this class are not threadsafe.</p>
  */
@@ -72,6 +89,18 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     private InputStream in;
     private final boolean decompressConcatenated;
 
+    /**
+     * Whether this instance decodes a single block on behalf of a
+     * stream using multiple threads.
+     */
+    private final boolean singleBlock;
+
+    /**
+     * Decodes the blocks if more than one thread is used, null
+     * otherwise.
+     */
+    private ParallelDecoder parallelDecoder;
+
     private int currentChar = -1;
 
     private static final int EOF                  = 0;
@@ -151,21 +180,81 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     public CBZip2InputStream(final InputStream in,
                              final boolean decompressConcatenated)
             throws IOException {
+        this(in, decompressConcatenated, 1);
+    }
+
+    /**
+     * Constructs a new CBZip2InputStream which decompresses bytes
+     * read from the specified stream using up to the given number of
+     * threads.
+     *
+     * <p>Although BZip2 headers are marked with the magic
+     * <tt>"Bz"</tt> this constructor expects the next byte in the
+     * stream to be the first one after the magic.  Thus callers have
+     * to skip the first two bytes. Otherwise this constructor will
+     * throw an exception. </p>
+     *
+     * @param in the InputStream from which this object should be created
+     * @param decompressConcatenated
+     *                     if true, decompress until the end of the input;
+     *                     if false, stop after the first .bz2 stream and
+     *                     leave the input position to point to the next
+     *                     byte after the .bz2 stream
+     * @param threads
+     *                     the number of blocks to decode in parallel,
+     *                     values smaller than two decode on the
+     *                     caller's thread.
+     *
+     * @throws IOException
+     *             if the stream content is malformed or an I/O error occurs.
+     * @throws NullPointerException
+     *             if <tt>in == null</tt>
+     *
+     * @since Ant 1.9.5
+     */
+    public CBZip2InputStream(final InputStream in,
+                             final boolean decompressConcatenated,
+                             final int threads)
+            throws IOException {
         super();
 
         this.in = in;
         this.decompressConcatenated = decompressConcatenated;
+        this.singleBlock = false;
 
         init(true);
-        initBlock();
-        setupBlock();
+        if (threads > 1) {
+            parallelDecoder = new ParallelDecoder(threads);
+        } else {
+            initBlock();
+            setupBlock();
+        }
+    }
+
+    /**
+     * Creates a stream that decodes the single block starting at the
+     * given bit of the array on behalf of a multi-threaded stream.
+     */
+    private CBZip2InputStream(final byte[] block, final int bitOffset,
+                              final int blockSize100k, final Data data)
+        throws IOException {
+        super();
+
+        this.in = new ByteArrayInputStream(block);
+        this.decompressConcatenated = false;
+        this.singleBlock = true;
+        this.blockSize100k = blockSize100k;
+        this.data = data;
+        if (bitOffset > 0) {
+            bsR(bitOffset);
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public int read() throws IOException {
         if (this.in != null) {
-            return read0();
+            return parallelDecoder != null ? parallelDecoder.read() : read0();
         } else {
             throw new IOException("stream closed");
         }
@@ -193,6 +282,9 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
         if (this.in == null) {
             throw new IOException("stream closed");
         }
+        if (parallelDecoder != null) {
+            return parallelDecoder.read(dest, offs, len);
+        }
 
         final int hi = offs + len;
         int destOffs = offs;
@@ -361,6 +453,12 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     private void endBlock() throws IOException {
         this.computedBlockCRC = this.crc.getFinalCRC();
 
+        if (singleBlock) {
+            // the CRCs are checked by the stream reading the block
+            this.currentState = EOF;
+            return;
+        }
+
         // A bad CRC is considered a fatal error.
         if (this.storedBlockCRC != this.computedBlockCRC) {
             // make next blocks readable without error
@@ -404,6 +502,10 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
             } finally {
                 this.data = null;
                 this.in = null;
+                if (parallelDecoder != null) {
+                    parallelDecoder.close();
+                    parallelDecoder = null;
+                }
             }
         }
     }
@@ -895,6 +997,9 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
             this.crc.updateCRC(su_ch2Shadow);
         } else {
             endBlock();
+            if (singleBlock) {
+                return;
+            }
             initBlock();
             setupBlock();
         }
@@ -913,6 +1018,9 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
         } else {
             this.currentState = NO_RAND_PART_A_STATE;
             endBlock();
+            if (singleBlock) {
+                return;
+            }
             initBlock();
             setupBlock();
         }
@@ -1050,6 +1158,477 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
 
     }
 
+    /**
+     * Decodes the single block this stream has been created for.
+     */
+    private DecodedBlock decodeBlock(final int bitOffset, final int length)
+        throws IOException {
+        initBlock();
+        setupBlock();
+        byte[] out = new byte[Math.max(this.last + 1, 1024)];
+        int n = 0;
+        for (int b; (b = read0()) >= 0;) {
+            if (n == out.length) {
+                final byte[] larger = new byte[2 * out.length];
+                System.arraycopy(out, 0, larger, 0, n);
+                out = larger;
+            }
+            out[n++] = (byte) b;
+        }
+        final long consumed = 8L * (length - this.in.available())
+            - this.bsLive - bitOffset;
+        return new DecodedBlock(out, n, consumed, this.storedBlockCRC,
+                                this.computedBlockCRC);
+    }
+
+    /**
+     * Result of decoding a single block.
+     */
+    private static final class DecodedBlock {
+        private final byte[] data;
+        private final int length;
+        private final long bitsConsumed;
+        private final int storedCRC;
+        private final int computedCRC;
+
+        private DecodedBlock(final byte[] data, final int length,
+                             final long bitsConsumed, final int storedCRC,
+                             final int computedCRC) {
+            this.data = data;
+            this.length = length;
+            this.bitsConsumed = bitsConsumed;
+            this.storedCRC = storedCRC;
+            this.computedCRC = computedCRC;
+        }
+    }
+
+    /**
+     * A block found in the compressed data or the end of a stream.
+     */
+    private static final class Segment {
+        /** Position of the block's first bit, counted from the start of the input. */
+        private final long start;
+        /** Number of bits up to the next magic. */
+        private final long length;
+        /** The compressed data starting with the byte holding the first bit. */
+        private final byte[] bytes;
+        private final int blockSize100k;
+        private final boolean endOfStream;
+        private final int storedCombinedCRC;
+        private Future<DecodedBlock> future;
+        private DecodedBlock result;
+        private boolean valid;
+
+        private Segment(final long start, final long length, final byte[] bytes,
+                        final int blockSize100k) {
+            this.start = start;
+            this.length = length;
+            this.bytes = bytes;
+            this.blockSize100k = blockSize100k;
+            this.endOfStream = false;
+            this.storedCombinedCRC = 0;
+        }
+
+        private Segment(final int storedCombinedCRC) {
+            this.start = -1;
+            this.length = 0;
+            this.bytes = null;
+            this.blockSize100k = 0;
+            this.endOfStream = true;
+            this.storedCombinedCRC = storedCombinedCRC;
+            this.valid = true;
+        }
+    }
+
+    private static final long MAGIC_MASK = 0xffffffffffffL;
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+    private static final int MAGIC_BITS = 48;
+
+    /**
+     * Splits the compressed data into blocks by looking for the block
+     * header magic and decodes the blocks on a pool of threads,
+     * keeping a bounded number of blocks ahead of the reader.
+     *
+     * <p>The magic numbers may occur inside the compressed data by
+     * chance.  A block is only accepted if decoding it consumes
+     * exactly the bits up to the next magic, otherwise it is merged
+     * with the following block and decoded again.  The end of stream
+     * magic is only accepted once all blocks in front of it have
+     * been accepted.</p>
+     */
+    private final class ParallelDecoder {
+        private final ExecutorService pool;
+        private final int lookAhead;
+
+        /** Blocks that haven't been read, yet, in stream order. */
+        private final LinkedList<Segment> pending = new LinkedList<Segment>();
+
+        /** Memory that can be reused by the block decoders. */
+        private final ConcurrentLinkedQueue<Data> spareData =
+            new ConcurrentLinkedQueue<Data>();
+
+        /** Compressed data of the current block. */
+        private byte[] buf = new byte[8192];
+        private int bufLen;
+        /** Bit position of buf[0], always a multiple of eight. */
+        private long bufStart;
+        /** Bit position after the last byte read. */
+        private long position;
+        /** The last 64 bits read. */
+        private long shift;
+        /** Bit position of the current block's magic. */
+        private long segmentStart = -1;
+        private boolean inputDone;
+
+        private byte[] block;
+        private int blockPos;
+        private int blockLen;
+        private int computedCombined;
+
+        private ParallelDecoder(final int threads) throws IOException {
+            lookAhead = 2 * threads;
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        final Thread t = new Thread(r, "bzip2 block decoder");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            startBlocks();
+        }
+
+        int read() throws IOException {
+            while (blockPos >= blockLen) {
+                if (!nextBlock()) {
+                    return -1;
+                }
+            }
+            return block[blockPos++] & 0xff;
+        }
+
+        int read(final byte[] dest, final int offs, final int len)
+            throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (blockPos >= blockLen) {
+                if (!nextBlock()) {
+                    return -1;
+                }
+            }
+            final int n = Math.min(len, blockLen - blockPos);
+            System.arraycopy(block, blockPos, dest, offs, n);
+            blockPos += n;
+            return n;
+        }
+
+        void close() {
+            pool.shutdownNow();
+            pending.clear();
+            spareData.clear();
+            block = null;
+        }
+
+        /**
+         * Makes the oldest pending block the current one, checking
+         * CRCs on the way.
+         *
+         * @return false if the end of the input has been reached
+         */
+        private boolean nextBlock() throws IOException {
+            while (true) {
+                while (!inputDone && pending.size() < lookAhead) {
+                    scan();
+                }
+                if (pending.isEmpty()) {
+                    block = null;
+                    blockPos = blockLen = 0;
+                    return false;
+                }
+                if (pending.getFirst().endOfStream) {
+                    if (pending.removeFirst().storedCombinedCRC
+                        != computedCombined) {
+                        reportCRCError();
+                    }
+                    computedCombined = 0;
+                    continue;
+                }
+                while (!check(pending.getFirst())) {
+                    if (pending.size() < 2) {
+                        if (inputDone) {
+                            throw new IOException("stream corrupted");
+                        }
+                        scan();
+                    } else if (pending.get(1).endOfStream) {
+                        throw new IOException("stream corrupted");
+                    } else {
+                        merge(0);
+                    }
+                }
+                final DecodedBlock r = pending.removeFirst().result;
+                if (r.storedCRC != r.computedCRC) {
+                    reportCRCError();
+                }
+                computedCombined = (computedCombined << 1)
+                    | (computedCombined >>> 31);
+                computedCombined ^= r.computedCRC;
+                block = r.data;
+                blockPos = 0;
+                blockLen = r.length;
+                return true;
+            }
+        }
+
+        /**
+         * Reads the first block magic of a stream, which is supposed
+         * to immediately follow the stream header.
+         */
+        private void startBlocks() throws IOException {
+            bufLen = 0;
+            bufStart = position;
+            for (int i = 0; i < MAGIC_BITS / 8; i++) {
+                append(readByte());
+            }
+            final long magic = shift & MAGIC_MASK;
+            if (magic == BLOCK_MAGIC) {
+                segmentStart = bufStart;
+            } else if (magic == EOS_MAGIC) {
+                // empty stream
+                pending.add(new Segment(readCombinedCRC(0)));
+                nextStream();
+            } else {
+                throw new IOException("bad block header");
+            }
+        }
+
+        private void nextStream() throws IOException {
+            segmentStart = -1;
+            if (decompressConcatenated && init(false)) {
+                startBlocks();
+            } else {
+                inputDone = true;
+            }
+        }
+
+        /**
+         * Reads until the next block or end of stream magic has been
+         * found.
+         */
+        private void scan() throws IOException {
+            while (true) {
+                append(readByte());
+                for (int k = 7; k >= 0; k--) {
+                    final long magic = (shift >>> k) & MAGIC_MASK;
+                    if (magic != BLOCK_MAGIC && magic != EOS_MAGIC) {
+                        continue;
+                    }
+                    final long start = position - k - MAGIC_BITS;
+                    if (start < segmentStart + MAGIC_BITS) {
+                        continue;
+                    }
+                    if (magic == BLOCK_MAGIC) {
+                        submit(newSegment(start));
+                        compact(start);
+                        return;
+                    }
+                    if (endOfStream(start, k)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Deals with a possible end of stream magic.
+         *
+         * @param start position of the magic
+         * @param trailingBits number of bits read after the magic
+         * @return false if the magic has been part of a block
+         */
+        private boolean endOfStream(final long start, final int trailingBits)
+            throws IOException {
+            submit(newSegment(start));
+            for (int i = 0; i < pending.size();) {
+                final Segment s = pending.get(i);
+                if (check(s)) {
+                    i++;
+                } else if (i == pending.size() - 1) {
+                    // the block needs more data than there is in front
+                    // of the magic
+                    pending.removeLast();
+                    restore(s);
+                    return false;
+                } else {
+                    merge(i);
+                }
+            }
+            pending.add(new Segment(readCombinedCRC(trailingBits)));
+            nextStream();
+            return true;
+        }
+
+        /**
+         * Reads the combined CRC following the end of stream magic,
+         * skipping the padding after it.
+         */
+        private int readCombinedCRC(final int trailingBits)
+            throws IOException {
+            long v = shift & ((1L << trailingBits) - 1);
+            int bits = trailingBits;
+            while (bits < 32) {
+                v = (v << 8) | readByte();
+                position += 8;
+                bits += 8;
+            }
+            return (int) (v >>> (bits - 32));
+        }
+
+        private int readByte() throws IOException {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("unexpected end of stream");
+            }
+            return b;
+        }
+
+        private void append(final int b) {
+            if (bufLen == buf.length) {
+                final byte[] larger = new byte[2 * buf.length];
+                System.arraycopy(buf, 0, larger, 0, bufLen);
+                buf = larger;
+            }
+            buf[bufLen++] = (byte) b;
+            position += 8;
+            shift = (shift << 8) | b;
+        }
+
+        /**
+         * Creates a segment for the current block ending at the given
+         * position.
+         */
+        private Segment newSegment(final long end) {
+            final int from = (int) ((segmentStart - bufStart) >> 3);
+            final int to = (int) ((end - bufStart + 7) >> 3);
+            final byte[] bytes = new byte[to - from];
+            System.arraycopy(buf, from, bytes, 0, bytes.length);
+            return new Segment(segmentStart, end - segmentStart, bytes,
+                               blockSize100k);
+        }
+
+        /**
+         * Starts a new block at the given position.
+         */
+        private void compact(final long newStart) {
+            final int drop = (int) ((newStart - bufStart) >> 3);
+            System.arraycopy(buf, drop, buf, 0, bufLen - drop);
+            bufLen -= drop;
+            bufStart += 8L * drop;
+            segmentStart = newStart;
+        }
+
+        /**
+         * Makes the given - rejected - segment the start of the
+         * current block again.
+         */
+        private void restore(final Segment s) {
+            if (s.start < segmentStart) {
+                final int keep = (int) ((bufStart >> 3) - (s.start >> 3));
+                final byte[] restored = new byte[keep + Math.max(bufLen, 8192)];
+                System.arraycopy(s.bytes, 0, restored, 0, keep);
+                System.arraycopy(buf, 0, restored, keep, bufLen);
+                buf = restored;
+                bufLen += keep;
+                bufStart -= 8L * keep;
+                segmentStart = s.start;
+            }
+        }
+
+        private void submit(final Segment s) {
+            s.future = pool.submit(new Callable<DecodedBlock>() {
+                    public DecodedBlock call() {
+                        return decode(s);
+                    }
+                });
+            pending.add(s);
+        }
+
+        /**
+         * Replaces the segment at the given index and its successor
+         * by a single segment.
+         */
+        private void merge(final int i) {
+            final Segment a = pending.get(i);
+            final Segment b = pending.remove(i + 1);
+            b.future.cancel(false);
+            final int keep = (int) ((b.start >> 3) - (a.start >> 3));
+            final byte[] bytes = new byte[keep + b.bytes.length];
+            System.arraycopy(a.bytes, 0, bytes, 0, keep);
+            System.arraycopy(b.bytes, 0, bytes, keep, b.bytes.length);
+            pending.remove(i);
+            final Segment merged = new Segment(a.start, a.length + b.length,
+                                               bytes, a.blockSize100k);
+            submit(merged);
+            pending.removeLast();
+            pending.add(i, merged);
+        }
+
+        /**
+         * Waits for a block to be decoded.
+         *
+         * @return whether decoding consumed exactly the block's bits
+         */
+        private boolean check(final Segment s) throws IOException {
+            if (!s.valid && s.result == null) {
+                try {
+                    s.result = s.future.get();
+                } catch (final InterruptedException ex) {
+                    final InterruptedIOException iox =
+                        new InterruptedIOException("interrupted while"
+                                                   + " decoding block");
+                    iox.initCause(ex);
+                    throw iox;
+                } catch (final ExecutionException ex) {
+                    final Throwable t = ex.getCause();
+                    if (t instanceof Error) {
+                        throw (Error) t;
+                    }
+                    throw new RuntimeException(t);
+                }
+                s.valid = s.result != null && s.result.bitsConsumed == s.length;
+            }
+            return s.valid;
+        }
+
+        /**
+         * Decodes a segment, returns null if it doesn't hold a valid
+         * block.
+         */
+        private DecodedBlock decode(final Segment s) {
+            Data d = spareData.poll();
+            if (d != null
+                && d.ll8.length < s.blockSize100k * BZip2Constants.baseBlockSize) {
+                d = null;
+            }
+            CBZip2InputStream decoder = null;
+            try {
+                final int bitOffset = (int) (s.start & 7);
+                decoder = new CBZip2InputStream(s.bytes, bitOffset,
+                                                s.blockSize100k, d);
+                return decoder.decodeBlock(bitOffset, s.bytes.length);
+            } catch (final IOException ex) {
+                return null;
+            } catch (final RuntimeException ex) {
+                return null;
+            } finally {
+                final Data used = decoder != null ? decoder.data : d;
+                if (used != null) {
+                    spareData.offer(used);
+                }
+            }
+        }
+    }
+
     private static void reportCRCError() throws IOException {
         // The clean way would be to throw an exception.
         //throw new IOException("crc error");
@@ -24,8 +24,17 @@
 
 package org.apache.tools.bzip2;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * An output stream that compresses into the BZip2 format (without the file
@@ -120,6 +129,13 @@ import java.io.OutputStream;
  * bzipped input is smaller than one block.
  * </p>
  *
+ * <p> Blocks are independent of each other, when created {@link
+ * #CBZip2OutputStream(OutputStream, int, int) with more than one
+ * thread} the stream sorts and encodes several blocks at the same
+ * time and writes them in order.  The output is the same as the one
+ * of a single threaded stream but compressing requires the memory
+ * given above once per thread plus one more time.</p>
+ *
  * <p>
  * Instances of this class are not threadsafe.
  * </p>
@@ -557,6 +573,53 @@ public class CBZip2OutputStream extends OutputStream
 
     private OutputStream out;
 
+    /**
+     * Number of blocks to compress at the same time.
+     */
+    private final int threads;
+
+    /**
+     * Compresses blocks if more than one thread is used, null
+     * otherwise.
+     */
+    private ExecutorService blockCompressors;
+
+    /**
+     * Blocks that are being compressed, in the order they have to be
+     * written.
+     */
+    private final LinkedList<Future<CBZip2OutputStream>> pendingBlocks =
+        new LinkedList<Future<CBZip2OutputStream>>();
+
+    /**
+     * Block streams that can be used to compress the next block.
+     */
+    private final LinkedList<CBZip2OutputStream> idleBlocks =
+        new LinkedList<CBZip2OutputStream>();
+
+    /**
+     * The block stream whose data is currently being filled if more
+     * than one thread is used, null between handing a block to the
+     * pool and starting the next one.
+     */
+    private CBZip2OutputStream currentBlock;
+
+    /**
+     * Number of used bits in the last byte written by a block
+     * stream, 0 if the last byte is used completely.
+     */
+    private int trailingBits;
+
+    /**
+     * Holds the compressed data of a block stream, null for all
+     * other streams.
+     *
+     * <p>A block stream only writes to it while compressing a block
+     * and its out is null at all other times, so finishing or
+     * finalizing a block stream does nothing.</p>
+     */
+    private final ByteArrayOutputStream blockBuffer;
+
     /**
      * Chooses a blocksize based on the given length of the data to compress.
      *
@@ -622,6 +685,40 @@ public class CBZip2OutputStream extends OutputStream
      */
     public CBZip2OutputStream(final OutputStream out, final int blockSize)
         throws IOException {
+        this(out, blockSize, 1);
+    }
+
+    /**
+     * Constructs a new <tt>CBZip2OutputStream</tt> with specified
+     * blocksize that compresses up to the given number of blocks at
+     * the same time.
+     *
+     * <p>
+     * <b>Attention: </b>The caller is responsible to write the two BZip2 magic
+     * bytes <tt>"BZ"</tt> to the specified stream prior to calling this
+     * constructor.
+     * </p>
+     *
+     * @param out
+     *            the destination stream.
+     * @param blockSize
+     *            the blockSize as 100k units.
+     * @param threads
+     *            the number of blocks to compress in parallel, values
+     *            smaller than two compress on the caller's thread.
+     *
+     * @throws IOException
+     *             if an I/O error occurs in the specified stream.
+     * @throws IllegalArgumentException
+     *             if <code>(blockSize &lt; 1) || (blockSize &gt; 9)</code>.
+     * @throws NullPointerException
+     *             if <code>out == null</code>.
+     *
+     * @since Ant 1.9.5
+     */
+    public CBZip2OutputStream(final OutputStream out, final int blockSize,
+                              final int threads)
+        throws IOException {
         super();
 
         if (blockSize < 1) {
@@ -635,12 +732,27 @@ public class CBZip2OutputStream extends OutputStream
 
         this.blockSize100k = blockSize;
         this.out = out;
+        this.threads = threads;
+        this.blockBuffer = null;
 
         /* 20 is just a paranoia constant */
         this.allowableBlockSize = (this.blockSize100k * BZip2Constants.baseBlockSize) - 20;
         init();
     }
 
+    /**
+     * Creates a stream that compresses single blocks into a byte
+     * array on behalf of a multi-threaded stream.
+     */
+    private CBZip2OutputStream(final int blockSize) {
+        this.blockSize100k = blockSize;
+        this.blockBuffer = new ByteArrayOutputStream();
+        this.threads = 1;
+        this.allowableBlockSize = (this.blockSize100k * BZip2Constants.baseBlockSize) - 20;
+        this.data = new Data(this.blockSize100k);
+        this.blockSorter = new BlockSort(this.data);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void write(final int b) throws IOException {
@@ -736,11 +848,21 @@ public class CBZip2OutputStream extends OutputStream
                 }
                 this.currentChar = -1;
                 endBlock();
+                while (!pendingBlocks.isEmpty()) {
+                    writeCompressedBlock();
+                }
                 endCompression();
             } finally {
                 this.out = null;
                 this.data = null;
                 this.blockSorter = null;
+                if (blockCompressors != null) {
+                    blockCompressors.shutdown();
+                    blockCompressors = null;
+                    pendingBlocks.clear();
+                    idleBlocks.clear();
+                    currentBlock = null;
+                }
             }
         }
     }
@@ -767,8 +889,19 @@ public class CBZip2OutputStream extends OutputStream
         // this.out.write('B');
         // this.out.write('Z');
 
-        this.data = new Data(this.blockSize100k);
-        this.blockSorter = new BlockSort(this.data);
+        if (this.threads > 1) {
+            blockCompressors =
+                Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+                        public Thread newThread(final Runnable r) {
+                            final Thread t = new Thread(r, "bzip2 block compressor");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        } else {
+            this.data = new Data(this.blockSize100k);
+            this.blockSorter = new BlockSort(this.data);
+        }
 
         /*
          * Write `magic' bytes h indicating file-format == huffmanised, followed
@@ -782,6 +915,12 @@ public class CBZip2OutputStream extends OutputStream
     }
 
     private void initBlock() {
+        if (blockCompressors != null && currentBlock == null) {
+            currentBlock = idleBlocks.isEmpty()
+                ? new CBZip2OutputStream(this.blockSize100k)
+                : idleBlocks.removeFirst();
+            this.data = currentBlock.data;
+        }
         // blockNo++;
         this.crc.initialiseCRC();
         this.last = -1;
@@ -803,6 +942,94 @@ public class CBZip2OutputStream extends OutputStream
             return;
         }
 
+        if (blockCompressors != null) {
+            submitBlock();
+        } else {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Hands the current block over to a thread of the pool and
+     * switches to a new block stream, writes the oldest pending
+     * block if all threads are busy.
+     */
+    private void submitBlock() throws IOException {
+        final CBZip2OutputStream block = currentBlock;
+        block.last = this.last;
+        block.blockCRC = this.blockCRC;
+        pendingBlocks.add(blockCompressors.submit(new Callable<CBZip2OutputStream>() {
+                public CBZip2OutputStream call() throws IOException {
+                    block.compressBlock();
+                    return block;
+                }
+            }));
+        if (pendingBlocks.size() >= this.threads) {
+            writeCompressedBlock();
+        }
+        currentBlock = null;
+        this.data = null;
+    }
+
+    /**
+     * Compresses the block held by this block stream into its byte
+     * array, used by the threads of a multi-threaded stream.
+     */
+    private void compressBlock() throws IOException {
+        this.blockBuffer.reset();
+        this.out = this.blockBuffer;
+        try {
+            this.bsBuff = 0;
+            this.bsLive = 0;
+            writeBlock();
+            this.trailingBits = this.bsLive & 7;
+            bsFinishedWithStream();
+        } finally {
+            this.out = null;
+        }
+    }
+
+    /**
+     * Waits for the oldest pending block and appends its bits to the
+     * stream.
+     */
+    private void writeCompressedBlock() throws IOException {
+        final CBZip2OutputStream block;
+        try {
+            block = pendingBlocks.removeFirst().get();
+        } catch (final InterruptedException ex) {
+            final InterruptedIOException iox =
+                new InterruptedIOException("interrupted while waiting for"
+                                           + " compressed block");
+            iox.initCause(ex);
+            throw iox;
+        } catch (final ExecutionException ex) {
+            final Throwable t = ex.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new RuntimeException(t);
+        }
+        final byte[] b = block.blockBuffer.toByteArray();
+        final int fullBytes = block.trailingBits == 0 ? b.length : b.length - 1;
+        for (int i = 0; i < fullBytes; i++) {
+            bsW(8, b[i] & 0xff);
+        }
+        if (block.trailingBits > 0) {
+            bsW(block.trailingBits,
+                (b[fullBytes] & 0xff) >> (8 - block.trailingBits));
+        }
+        idleBlocks.add(block);
+    }
+
+    /**
+     * Sorts, encodes and writes the current block.
+     */
+    private void writeBlock() throws IOException {
         /* sort the block and establish posn of original string */
         blockSort();
 
@@ -23,10 +23,21 @@
 
 package org.apache.tools.tar;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The TarBuffer class implements the tar archive concept
@@ -38,6 +49,12 @@ import java.util.Arrays;
  * <p>
  * You should never have a need to access this class directly.
  * TarBuffers are created by Tar IO Streams.
+ * <p>
+ * A double buffered TarBuffer reads or writes the underlying stream
+ * on a background thread while the caller works on the other
+ * buffer.  The I/O happens in chunks of about one megabyte, using a
+ * direct buffer and the stream's channel if the stream is a file
+ * stream.
  *
  */
 
@@ -49,12 +66,23 @@ public class TarBuffer {
     /** Default block size */
     public static final int DEFAULT_BLKSIZE = (DEFAULT_RCDSIZE * 20);
 
+    /** Size of the chunks read or written by a double buffered TarBuffer */
+    private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
     private InputStream     inStream;
     private OutputStream    outStream;
     private final int       blockSize;
     private final int       recordSize;
     private final int       recsPerBlock;
-    private final byte[]    blockBuffer;
+    private byte[]          blockBuffer;
+
+    // state of double buffered mode, ioThread is null otherwise
+    private final ExecutorService ioThread;
+    private byte[]          spareBuffer;
+    private Future<Boolean> pendingIO;
+    // only accessed by ioThread
+    private FileChannel     channel;
+    private ByteBuffer      ioBuffer;
 
     private int             currBlkIdx;
     private int             currRecIdx;
@@ -84,7 +112,20 @@ public class TarBuffer {
      * @param recordSize the record size to use
      */
     public TarBuffer(InputStream inStream, int blockSize, int recordSize) {
-        this(inStream, null, blockSize, recordSize);
+        this(inStream, null, blockSize, recordSize, false);
+    }
+
+    /**
+     * Constructor for a TarBuffer on an input stream.
+     * @param inStream the input stream to use
+     * @param blockSize the block size to use
+     * @param recordSize the record size to use
+     * @param doubleBuffer whether to read ahead on a background thread
+     * @since Ant 1.9.5
+     */
+    public TarBuffer(InputStream inStream, int blockSize, int recordSize,
+                     boolean doubleBuffer) {
+        this(inStream, null, blockSize, recordSize, doubleBuffer);
     }
 
     /**
@@ -111,13 +152,27 @@ public class TarBuffer {
      * @param recordSize the record size to use
      */
     public TarBuffer(OutputStream outStream, int blockSize, int recordSize) {
-        this(null, outStream, blockSize, recordSize);
+        this(null, outStream, blockSize, recordSize, false);
+    }
+
+    /**
+     * Constructor for a TarBuffer on an output stream.
+     * @param outStream the output stream to use
+     * @param blockSize the block size to use
+     * @param recordSize the record size to use
+     * @param doubleBuffer whether to write on a background thread
+     * @since Ant 1.9.5
+     */
+    public TarBuffer(OutputStream outStream, int blockSize, int recordSize,
+                     boolean doubleBuffer) {
+        this(null, outStream, blockSize, recordSize, doubleBuffer);
     }
 
     /**
      * Private constructor to perform common setup.
      */
-    private TarBuffer(InputStream inStream, OutputStream outStream, int blockSize, int recordSize) {
+    private TarBuffer(InputStream inStream, OutputStream outStream, int blockSize, int recordSize,
+                      boolean doubleBuffer) {
         this.inStream = inStream;
         this.outStream = outStream;
         this.debug = false;
@@ -126,6 +181,32 @@ public class TarBuffer {
         this.recsPerBlock = (this.blockSize / this.recordSize);
         this.blockBuffer = new byte[this.blockSize];
 
+        if (doubleBuffer) {
+            this.spareBuffer = new byte[this.blockSize];
+            if (inStream instanceof FileInputStream) {
+                this.channel = ((FileInputStream) inStream).getChannel();
+            } else if (outStream instanceof FileOutputStream) {
+                this.channel = ((FileOutputStream) outStream).getChannel();
+            }
+            // a multiple of the block size so blocks are never split
+            // when writing
+            int size = Math.max(1, IO_BUFFER_SIZE / this.blockSize) * this.blockSize;
+            this.ioBuffer = channel != null
+                ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+            if (inStream != null) {
+                this.ioBuffer.limit(0);
+            }
+            this.ioThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "tar block I/O");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        } else {
+            this.ioThread = null;
+        }
+
         if (this.inStream != null) {
             this.currBlkIdx = -1;
             this.currRecIdx = this.recsPerBlock;
@@ -246,6 +327,21 @@ public class TarBuffer {
 
         currRecIdx = 0;
 
+        if (ioThread != null) {
+            if (pendingIO == null) {
+                startRead(spareBuffer);
+            }
+            if (!awaitIO()) {
+                return false;
+            }
+            byte[] filled = spareBuffer;
+            spareBuffer = blockBuffer;
+            blockBuffer = filled;
+            startRead(spareBuffer);
+            currBlkIdx++;
+            return true;
+        }
+
         int offset = 0;
         int bytesNeeded = blockSize;
 
@@ -409,12 +505,124 @@ public class TarBuffer {
             throw new IOException("writing to an input buffer");
         }
 
-        outStream.write(blockBuffer, 0, blockSize);
-        outStream.flush();
+        if (ioThread != null) {
+            // the previous block has been written and its buffer
+            // cleared once this returns
+            awaitIO();
+            final byte[] full = blockBuffer;
+            blockBuffer = spareBuffer;
+            spareBuffer = full;
+            pendingIO = ioThread.submit(new Callable<Boolean>() {
+                    public Boolean call() throws IOException {
+                        ioBuffer.put(full, 0, blockSize);
+                        if (!ioBuffer.hasRemaining()) {
+                            writeIOBuffer();
+                        }
+                        Arrays.fill(full, (byte) 0);
+                        return Boolean.TRUE;
+                    }
+                });
+        } else {
+            outStream.write(blockBuffer, 0, blockSize);
+            outStream.flush();
+            Arrays.fill(blockBuffer, (byte) 0);
+        }
 
         currRecIdx = 0;
         currBlkIdx++;
-        Arrays.fill(blockBuffer, (byte) 0);
+    }
+
+    /**
+     * Reads the next block into the given buffer on the I/O thread.
+     */
+    private void startRead(final byte[] buffer) {
+        pendingIO = ioThread.submit(new Callable<Boolean>() {
+                public Boolean call() throws IOException {
+                    int offset = 0;
+                    while (offset < blockSize) {
+                        if (!ioBuffer.hasRemaining() && !fillIOBuffer()) {
+                            break;
+                        }
+                        int n = Math.min(ioBuffer.remaining(), blockSize - offset);
+                        ioBuffer.get(buffer, offset, n);
+                        offset += n;
+                    }
+                    if (offset == 0) {
+                        return Boolean.FALSE;
+                    }
+                    // see readBlock for why an incomplete block is
+                    // accepted and filled with zeros
+                    Arrays.fill(buffer, offset, blockSize, (byte) 0);
+                    return Boolean.TRUE;
+                }
+            });
+    }
+
+    /**
+     * Reads the next chunk of the input, runs on the I/O thread.
+     * @return false if End-Of-File
+     */
+    private boolean fillIOBuffer() throws IOException {
+        ioBuffer.clear();
+        int n = 0;
+        while (n == 0) {
+            if (channel != null) {
+                n = channel.read(ioBuffer);
+            } else {
+                n = inStream.read(ioBuffer.array(), 0, ioBuffer.capacity());
+                if (n > 0) {
+                    ioBuffer.position(n);
+                }
+            }
+        }
+        ioBuffer.flip();
+        return n > 0;
+    }
+
+    /**
+     * Writes the collected blocks, runs on the I/O thread.
+     */
+    private void writeIOBuffer() throws IOException {
+        ioBuffer.flip();
+        if (channel != null) {
+            while (ioBuffer.hasRemaining()) {
+                channel.write(ioBuffer);
+            }
+        } else {
+            outStream.write(ioBuffer.array(), 0, ioBuffer.limit());
+        }
+        ioBuffer.clear();
+    }
+
+    /**
+     * Waits for the I/O thread to finish the last request.
+     * @return the result of the last request, true if there hasn't
+     * been any
+     */
+    private boolean awaitIO() throws IOException {
+        if (pendingIO == null) {
+            return true;
+        }
+        try {
+            return pendingIO.get().booleanValue();
+        } catch (InterruptedException ex) {
+            InterruptedIOException iox =
+                new InterruptedIOException("interrupted while waiting for I/O");
+            iox.initCause(ex);
+            throw iox;
+        } catch (ExecutionException ex) {
+            Throwable t = ex.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new RuntimeException(t);
+        } finally {
+            pendingIO = null;
+        }
     }
 
     /**
@@ -432,6 +640,18 @@ public class TarBuffer {
         if (currRecIdx > 0) {
             writeBlock();
         }
+
+        if (ioThread != null) {
+            awaitIO();
+            pendingIO = ioThread.submit(new Callable<Boolean>() {
+                    public Boolean call() throws IOException {
+                        writeIOBuffer();
+                        outStream.flush();
+                        return Boolean.TRUE;
+                    }
+                });
+            awaitIO();
+        }
     }
 
     /**
@@ -445,7 +665,13 @@ public class TarBuffer {
         }
 
         if (outStream != null) {
-            flushBlock();
+            try {
+                flushBlock();
+            } finally {
+                if (ioThread != null) {
+                    ioThread.shutdown();
+                }
+            }
 
             if (outStream != System.out
                     && outStream != System.err) {
@@ -454,6 +680,11 @@ public class TarBuffer {
                 outStream = null;
             }
         } else if (inStream != null) {
+            if (ioThread != null) {
+                // stop reading ahead
+                ioThread.shutdownNow();
+                pendingIO = null;
+            }
             if (inStream != System.in) {
                 inStream.close();
             }
@@ -126,8 +126,22 @@ public class TarInputStream extends FilterInputStream {
      */
     public TarInputStream(InputStream is, int blockSize, int recordSize,
                           String encoding) {
+        this(is, blockSize, recordSize, encoding, false);
+    }
+
+    /**
+     * Constructor for TarInputStream.
+     * @param is the input stream to use
+     * @param blockSize the block size to use
+     * @param recordSize the record size to use
+     * @param encoding name of the encoding to use for file names
+     * @param doubleBuffer whether to read ahead on a background thread
+     * @since Ant 1.9.5
+     */
+    public TarInputStream(InputStream is, int blockSize, int recordSize,
+                          String encoding, boolean doubleBuffer) {
         super(is);
-        this.buffer = new TarBuffer(is, blockSize, recordSize);
+        this.buffer = new TarBuffer(is, blockSize, recordSize, doubleBuffer);
         this.readBuf = null;
         this.oneBuf = new byte[1];
         this.debug = false;
@@ -147,10 +147,25 @@ public class TarOutputStream extends FilterOutputStream {
      */
     public TarOutputStream(OutputStream os, int blockSize, int recordSize,
                            String encoding) {
+        this(os, blockSize, recordSize, encoding, false);
+    }
+
+    /**
+     * Constructor for TarInputStream.
+     * @param os the output stream to use
+     * @param blockSize the block size to use
+     * @param recordSize the record size to use
+     * @param encoding name of the encoding to use for file names
+     * @param doubleBuffer whether to write the blocks on a background
+     * thread
+     * @since Ant 1.9.5
+     */
+    public TarOutputStream(OutputStream os, int blockSize, int recordSize,
+                           String encoding, boolean doubleBuffer) {
         super(os);
         this.encoding = ZipEncodingHelper.getZipEncoding(encoding);
 
-        this.buffer = new TarBuffer(os, blockSize, recordSize);
+        this.buffer = new TarBuffer(os, blockSize, recordSize, doubleBuffer);
         this.debug = false;
         this.assemLen = 0;
         this.assemBuf = new byte[recordSize];
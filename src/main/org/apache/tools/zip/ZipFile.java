@@ -29,13 +29,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.Inflater;
@@ -71,6 +72,14 @@ import java.util.zip.ZipException;
  *   <li>close is allowed to throw IOException.</li>
  * </ul>
  *
+ * <p>The central directory is read in a single operation when the
+ * archive is opened.  Archives opened with {@link #ZipFile(File,
+ * String, boolean, boolean) lazy local file header resolution} only
+ * read the local file header of an entry when its data is requested
+ * for the first time and serve the entries' data using positional
+ * reads of a FileChannel, so several threads can read entries of the
+ * same archive concurrently.</p>
+ *
  */
 public class ZipFile {
     private static final int HASH_SIZE = 509;
@@ -85,13 +94,16 @@ public class ZipFile {
      * List of entries in the order they appear inside the central
      * directory.
      */
-    private final List<ZipEntry> entries = new LinkedList<ZipEntry>();
+    private final ArrayList<ZipEntry> entries = new ArrayList<ZipEntry>();
 
     /**
      * Maps String to list of ZipEntrys, name -> actual entries.
+     *
+     * <p>Names that are only used by a single entry - which is the
+     * normal case - map to a singleton list.</p>
      */
-    private final Map<String, LinkedList<ZipEntry>> nameMap =
-        new HashMap<String, LinkedList<ZipEntry>>(HASH_SIZE);
+    private final Map<String, List<ZipEntry>> nameMap =
+        new HashMap<String, List<ZipEntry>>(HASH_SIZE);
 
     private static final class OffsetEntry {
         private long headerOffset = -1;
@@ -127,11 +139,39 @@ public class ZipFile {
      */
     private final boolean useUnicodeExtraFields;
 
+    /**
+     * Whether local file headers are only read when the data of an
+     * entry is requested.
+     */
+    private final boolean resolveLocalHeadersLazily;
+
+    /**
+     * Channel used for positional reads if local file headers are
+     * resolved lazily, null otherwise.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Offset of the &quot;End of central dir record&quot;.
+     */
+    private long endOfCentralDirectoryStart;
+
+    /**
+     * Contents of the central directory while it is parsed, null if
+     * the central directory is read record by record.
+     */
+    private ByteBuffer centralDirectory;
+
     /**
      * Whether the file is closed.
      */
     private volatile boolean closed;
 
+    /**
+     * Offset of the first central directory record.
+     */
+    private long centralDirectoryStart;
+
     // cached buffers
     private final byte[] DWORD_BUF = new byte[DWORD];
     private final byte[] WORD_BUF = new byte[WORD];
@@ -204,14 +244,50 @@ public class ZipFile {
      */
     public ZipFile(final File f, final String encoding, final boolean useUnicodeExtraFields)
         throws IOException {
+        this(f, encoding, useUnicodeExtraFields, false);
+    }
+
+    /**
+     * Opens the given file for reading, assuming the specified
+     * encoding for file names.
+     *
+     * <p>If <code>resolveLocalHeadersLazily</code> is true, opening
+     * the archive only reads its central directory and the local
+     * file header of an entry is read when the entry's data is
+     * requested for the first time.  This makes opening archives
+     * with many entries a lot cheaper if only a few of them are
+     * read.  Entries read this way don't know the extra fields only
+     * present in the local file header and Unicode extra fields are
+     * only taken from the central directory.  The entries' data is
+     * read using positional reads so several threads can read from
+     * the same archive at the same time - interrupting a thread
+     * while it reads closes the archive, though.</p>
+     *
+     * @param f the archive.
+     * @param encoding the encoding to use for file names, use null
+     * for the platform's default encoding
+     * @param useUnicodeExtraFields whether to use InfoZIP Unicode
+     * Extra Fields (if present) to set the file names.
+     * @param resolveLocalHeadersLazily whether to defer reading the
+     * local file headers until an entry's data is read.
+     *
+     * @throws IOException if an error occurs while reading the file.
+     * @since Ant 1.9.5
+     */
+    public ZipFile(final File f, final String encoding,
+                   final boolean useUnicodeExtraFields,
+                   final boolean resolveLocalHeadersLazily)
+        throws IOException {
         this.archiveName = f.getAbsolutePath();
         this.encoding = encoding;
         this.zipEncoding = ZipEncodingHelper.getZipEncoding(encoding);
         this.useUnicodeExtraFields = useUnicodeExtraFields;
+        this.resolveLocalHeadersLazily = resolveLocalHeadersLazily;
         archive = new RandomAccessFile(f, "r");
+        channel = resolveLocalHeadersLazily ? archive.getChannel() : null;
         boolean success = false;
         try {
-            final Map<ZipEntry, NameAndComment> entriesWithoutUTF8Flag =
+            final List<NameAndComment> entriesWithoutUTF8Flag =
                 populateFromCentralDirectory();
             resolveLocalFileHeaderData(entriesWithoutUTF8Flag);
             success = true;
@@ -305,8 +381,8 @@ public class ZipFile {
      * {@code null} if not present.
      */
     public ZipEntry getEntry(final String name) {
-        final LinkedList<ZipEntry> entriesOfThatName = nameMap.get(name);
-        return entriesOfThatName != null ? entriesOfThatName.getFirst() : null;
+        final List<ZipEntry> entriesOfThatName = nameMap.get(name);
+        return entriesOfThatName != null ? entriesOfThatName.get(0) : null;
     }
 
     /**
@@ -320,7 +396,8 @@ public class ZipFile {
      */
     public Iterable<ZipEntry> getEntries(final String name) {
         final List<ZipEntry> entriesOfThatName = nameMap.get(name);
-        return entriesOfThatName != null ? entriesOfThatName
+        return entriesOfThatName != null
+            ? Collections.unmodifiableList(entriesOfThatName)
             : Collections.<ZipEntry>emptyList();
     }
 
@@ -365,10 +442,9 @@ public class ZipFile {
         if (!(ze instanceof Entry)) {
             return null;
         }
-        // cast valididty is checked just above
-        final OffsetEntry offsetEntry = ((Entry) ze).getOffsetEntry();
         ZipUtil.checkRequestedFeatures(ze);
-        final long start = offsetEntry.dataOffset;
+        // cast valididty is checked just above
+        final long start = getDataOffset((Entry) ze);
         final BoundedInputStream bis =
             new BoundedInputStream(start, ze.getCompressedSize());
         switch (ze.getMethod()) {
@@ -390,6 +466,103 @@ public class ZipFile {
         }
     }
 
+    /**
+     * Returns the number of bytes between the first local file
+     * header and the central directory that don't belong to any of
+     * the entries listed in the central directory.
+     *
+     * <p>Archives that have been updated in place contain the data
+     * of the entries that have been replaced.  Data descriptors are
+     * counted as unused as well.</p>
+     *
+     * <p>If local file headers are resolved lazily, this method
+     * reads all of them.</p>
+     *
+     * @return the number of unused bytes
+     * @since Ant 1.9.5
+     */
+    public long getUnusedBytes() throws IOException {
+        long firstHeader = centralDirectoryStart;
+        long used = 0;
+        for (final ZipEntry ze : entries) {
+            final long headerOffset = ((Entry) ze).getOffsetEntry().headerOffset;
+            firstHeader = Math.min(firstHeader, headerOffset);
+            used += getDataOffset((Entry) ze) - headerOffset
+                + ze.getCompressedSize();
+        }
+        return Math.max(0, centralDirectoryStart - firstHeader - used);
+    }
+
+    /**
+     * Offset of the first central directory record.
+     */
+    long getCentralDirectoryStart() {
+        return centralDirectoryStart;
+    }
+
+    /**
+     * Offset of the local file header of an entry read from the
+     * central directory.
+     */
+    static long getLocalFileHeaderOffset(final ZipEntry ze) {
+        return ((Entry) ze).getOffsetEntry().headerOffset;
+    }
+
+    /**
+     * Returns an InputStream for reading the compressed data of the
+     * given entry as it is stored inside the archive.
+     *
+     * @param ze the entry to get the stream for.
+     * @return a stream to read the raw data from, null if the entry
+     * doesn't belong to this archive.
+     * @throws IOException if the entry's local file header cannot
+     * be read
+     * @since Ant 1.9.5
+     */
+    public InputStream getRawInputStream(final ZipEntry ze)
+        throws IOException {
+        if (!(ze instanceof Entry)) {
+            return null;
+        }
+        return new BoundedInputStream(getDataOffset((Entry) ze),
+                                      ze.getCompressedSize());
+    }
+
+    /**
+     * Offset of the data of an entry, reads the local file header
+     * if it hasn't been read, yet.
+     */
+    private long getDataOffset(final Entry ze) throws IOException {
+        final OffsetEntry offsetEntry = ze.getOffsetEntry();
+        synchronized (offsetEntry) {
+            if (offsetEntry.dataOffset == -1) {
+                final ByteBuffer lengths = ByteBuffer.allocate(SHORT + SHORT);
+                final long offset = offsetEntry.headerOffset;
+                readFully(lengths, offset + LFH_OFFSET_FOR_FILENAME_LENGTH);
+                final byte[] b = lengths.array();
+                offsetEntry.dataOffset = offset + LFH_OFFSET_FOR_FILENAME_LENGTH
+                    + SHORT + SHORT + ZipShort.getValue(b, 0)
+                    + ZipShort.getValue(b, SHORT);
+            }
+            return offsetEntry.dataOffset;
+        }
+    }
+
+    /**
+     * Fills the buffer using positional reads starting at the given
+     * offset.
+     */
+    private void readFully(final ByteBuffer buf, long pos)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            final int read = channel.read(buf, pos);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            pos += read;
+        }
+    }
+
     /**
      * Ensures that the close method of this zipfile is called when
      * there are no more references to it.
@@ -441,45 +614,79 @@ public class ZipFile {
      * the central directory alone, but not the data that requires the
      * local file header or additional data to be read.</p>
      *
-     * @return a map of zipentries that didn't have the language
+     * <p>The whole central directory is read in one go unless it is
+     * too big to fit into an array.</p>
+     *
+     * @return the raw names and comments of the entries, in the same
+     * order as the entries, null for entries that had the language
      * encoding flag set when read.
      */
-    private Map<ZipEntry, NameAndComment> populateFromCentralDirectory()
+    private List<NameAndComment> populateFromCentralDirectory()
         throws IOException {
-        final HashMap<ZipEntry, NameAndComment> noUTF8Flag =
-            new HashMap<ZipEntry, NameAndComment>();
+        final ArrayList<NameAndComment> noUTF8Flag =
+            new ArrayList<NameAndComment>();
 
         positionAtCentralDirectory();
+        centralDirectoryStart = archive.getFilePointer();
+        // include the signature of the end of central directory
+        // record that terminates the loop below
+        final long centralDirectoryLength =
+            endOfCentralDirectoryStart - centralDirectoryStart + WORD;
+        if (centralDirectoryLength > 0
+            && centralDirectoryLength < Integer.MAX_VALUE) {
+            final byte[] cd = new byte[(int) centralDirectoryLength];
+            archive.readFully(cd);
+            centralDirectory = ByteBuffer.wrap(cd);
+        }
 
-        archive.readFully(WORD_BUF);
-        long sig = ZipLong.getValue(WORD_BUF);
+        try {
+            readCentralDirectory(WORD_BUF);
+            long sig = ZipLong.getValue(WORD_BUF);
 
-        if (sig != CFH_SIG && startsWithLocalFileHeader()) {
-            throw new IOException("central directory is empty, can't expand"
-                                  + " corrupt archive.");
-        }
+            if (sig != CFH_SIG && startsWithLocalFileHeader()) {
+                throw new IOException("central directory is empty, can't"
+                                      + " expand corrupt archive.");
+            }
 
-        while (sig == CFH_SIG) {
-            readCentralDirectoryEntry(noUTF8Flag);
-            archive.readFully(WORD_BUF);
-            sig = ZipLong.getValue(WORD_BUF);
+            while (sig == CFH_SIG) {
+                readCentralDirectoryEntry(noUTF8Flag);
+                readCentralDirectory(WORD_BUF);
+                sig = ZipLong.getValue(WORD_BUF);
+            }
+        } finally {
+            centralDirectory = null;
         }
+        entries.trimToSize();
         return noUTF8Flag;
     }
 
+    /**
+     * Reads the next bytes of the central directory.
+     */
+    private void readCentralDirectory(final byte[] b) throws IOException {
+        if (centralDirectory == null) {
+            archive.readFully(b);
+        } else if (centralDirectory.remaining() < b.length) {
+            throw new EOFException();
+        } else {
+            centralDirectory.get(b);
+        }
+    }
+
     /**
      * Reads an individual entry of the central directory, creats an
      * ZipEntry from it and adds it to the global maps.
      *
-     * @param noUTF8Flag map used to collect entries that don't have
-     * their UTF-8 flag set and whose name will be set by data read
-     * from the local file header later.  The current entry may be
-     * added to this map.
+     * @param noUTF8Flag list used to collect the raw names of
+     * entries that don't have their UTF-8 flag set and whose name
+     * will be set by data read from extra fields later.  An element
+     * is added for each entry, null if the entry doesn't need to be
+     * looked at again.
      */
     private void
-        readCentralDirectoryEntry(final Map<ZipEntry, NameAndComment> noUTF8Flag)
+        readCentralDirectoryEntry(final List<NameAndComment> noUTF8Flag)
         throws IOException {
-        archive.readFully(CFH_BUF);
+        readCentralDirectory(CFH_BUF);
         int off = 0;
         final OffsetEntry offset = new OffsetEntry();
         final Entry ze = new Entry(offset);
@@ -533,7 +740,7 @@ public class ZipFile {
         off += WORD;
 
         final byte[] fileName = new byte[fileNameLen];
-        archive.readFully(fileName);
+        readCentralDirectory(fileName);
         ze.setName(entryEncoding.decode(fileName), fileName);
 
         // LFH offset,
@@ -542,18 +749,17 @@ public class ZipFile {
         entries.add(ze);
 
         final byte[] cdExtraData = new byte[extraLen];
-        archive.readFully(cdExtraData);
+        readCentralDirectory(cdExtraData);
         ze.setCentralDirectoryExtra(cdExtraData);
 
         setSizesAndOffsetFromZip64Extra(ze, offset, diskStart);
 
         final byte[] comment = new byte[commentLen];
-        archive.readFully(comment);
+        readCentralDirectory(comment);
         ze.setComment(entryEncoding.decode(comment));
 
-        if (!hasUTF8Flag && useUnicodeExtraFields) {
-            noUTF8Flag.put(ze, new NameAndComment(fileName, comment));
-        }
+        noUTF8Flag.add(!hasUTF8Flag && useUnicodeExtraFields
+                       ? new NameAndComment(fileName, comment) : null);
     }
 
     /**
@@ -770,6 +976,7 @@ public class ZipFile {
         if (!found) {
             throw new ZipException("archive is not a ZIP archive");
         }
+        endOfCentralDirectoryStart = archive.getFilePointer();
     }
 
     /**
@@ -847,51 +1054,68 @@ public class ZipFile {
      * from the local file header.
      *
      * <p>Also records the offsets for the data to read from the
-     * entries.</p>
+     * entries.  If local file headers are resolved lazily only the
+     * names of the entries are set and the name map is filled.</p>
      */
-    private void resolveLocalFileHeaderData(final Map<ZipEntry, NameAndComment>
+    private void resolveLocalFileHeaderData(final List<NameAndComment>
                                             entriesWithoutUTF8Flag)
         throws IOException {
-        for (final Iterator<ZipEntry> it = entries.iterator(); it.hasNext();) {
+        final int count = entries.size();
+        for (int i = 0; i < count; i++) {
             // entries is filled in populateFromCentralDirectory and
             // never modified
-            final Entry ze = (Entry) it.next();
-            final OffsetEntry offsetEntry = ze.getOffsetEntry();
-            final long offset = offsetEntry.headerOffset;
-            archive.seek(offset + LFH_OFFSET_FOR_FILENAME_LENGTH);
-            archive.readFully(SHORT_BUF);
-            final int fileNameLen = ZipShort.getValue(SHORT_BUF);
-            archive.readFully(SHORT_BUF);
-            final int extraFieldLen = ZipShort.getValue(SHORT_BUF);
-            int lenToSkip = fileNameLen;
-            while (lenToSkip > 0) {
-                final int skipped = archive.skipBytes(lenToSkip);
-                if (skipped <= 0) {
-                    throw new IOException("failed to skip file name in"
-                                          + " local file header");
-                }
-                lenToSkip -= skipped;
+            final Entry ze = (Entry) entries.get(i);
+            if (!resolveLocalHeadersLazily) {
+                readLocalFileHeader(ze);
             }
-            final byte[] localExtraData = new byte[extraFieldLen];
-            archive.readFully(localExtraData);
-            ze.setExtra(localExtraData);
-            offsetEntry.dataOffset = offset + LFH_OFFSET_FOR_FILENAME_LENGTH
-                + SHORT + SHORT + fileNameLen + extraFieldLen;
-
-            if (entriesWithoutUTF8Flag.containsKey(ze)) {
-                final NameAndComment nc = entriesWithoutUTF8Flag.get(ze);
+
+            final NameAndComment nc = entriesWithoutUTF8Flag.get(i);
+            if (nc != null) {
                 ZipUtil.setNameAndCommentFromExtraFields(ze, nc.name,
                                                          nc.comment);
             }
 
             final String name = ze.getName();
-            LinkedList<ZipEntry> entriesOfThatName = nameMap.get(name);
+            final List<ZipEntry> entriesOfThatName = nameMap.get(name);
             if (entriesOfThatName == null) {
-                entriesOfThatName = new LinkedList<ZipEntry>();
-                nameMap.put(name, entriesOfThatName);
+                nameMap.put(name, Collections.<ZipEntry>singletonList(ze));
+            } else if (entriesOfThatName.size() == 1) {
+                final List<ZipEntry> l = new ArrayList<ZipEntry>(2);
+                l.add(entriesOfThatName.get(0));
+                l.add(ze);
+                nameMap.put(name, l);
+            } else {
+                entriesOfThatName.add(ze);
+            }
+        }
+    }
+
+    /**
+     * Adds the extra fields of the local file header to the entry
+     * and records the offset of the entry's data.
+     */
+    private void readLocalFileHeader(final Entry ze) throws IOException {
+        final OffsetEntry offsetEntry = ze.getOffsetEntry();
+        final long offset = offsetEntry.headerOffset;
+        archive.seek(offset + LFH_OFFSET_FOR_FILENAME_LENGTH);
+        archive.readFully(SHORT_BUF);
+        final int fileNameLen = ZipShort.getValue(SHORT_BUF);
+        archive.readFully(SHORT_BUF);
+        final int extraFieldLen = ZipShort.getValue(SHORT_BUF);
+        int lenToSkip = fileNameLen;
+        while (lenToSkip > 0) {
+            final int skipped = archive.skipBytes(lenToSkip);
+            if (skipped <= 0) {
+                throw new IOException("failed to skip file name in"
+                                      + " local file header");
             }
-            entriesOfThatName.addLast(ze);
+            lenToSkip -= skipped;
         }
+        final byte[] localExtraData = new byte[extraFieldLen];
+        archive.readFully(localExtraData);
+        ze.setExtra(localExtraData);
+        offsetEntry.dataOffset = offset + LFH_OFFSET_FOR_FILENAME_LENGTH
+            + SHORT + SHORT + fileNameLen + extraFieldLen;
     }
 
     /**
@@ -906,7 +1130,8 @@ public class ZipFile {
 
     /**
      * InputStream that delegates requests to the underlying
-     * RandomAccessFile, making sure that only bytes from a certain
+     * RandomAccessFile - or its channel if local file headers are
+     * resolved lazily - making sure that only bytes from a certain
      * range can be read.
      */
     private class BoundedInputStream extends InputStream {
@@ -928,6 +1153,11 @@ public class ZipFile {
                 }
                 return -1;
             }
+            if (channel != null) {
+                final ByteBuffer single = ByteBuffer.allocate(1);
+                readFully(single, loc++);
+                return single.get(0) & 0xff;
+            }
             synchronized (archive) {
                 archive.seek(loc++);
                 return archive.read();
@@ -953,9 +1183,13 @@ public class ZipFile {
                 len = (int) remaining;
             }
             int ret = -1;
-            synchronized (archive) {
-                archive.seek(loc);
-                ret = archive.read(b, off, len);
+            if (channel != null) {
+                ret = channel.read(ByteBuffer.wrap(b, off, len), loc);
+            } else {
+                synchronized (archive) {
+                    archive.seek(loc);
+                    ret = archive.read(b, off, len);
+                }
             }
             if (ret > 0) {
                 loc += ret;
@@ -34,15 +34,19 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 import java.util.zip.ZipException;
@@ -249,6 +253,25 @@ public class ZipOutputStream extends FilterOutputStream {
      */
     private final Map<ZipEntry, Long> offsets = new HashMap<ZipEntry, Long>();
 
+    /**
+     * Entries of the archive this stream appends to by name, if any.
+     */
+    private final Map<String, List<ZipEntry>> existingEntries =
+        new HashMap<String, List<ZipEntry>>();
+
+    /**
+     * Entries of the archive this stream appends to that must not be
+     * part of the new central directory.
+     */
+    private final Set<ZipEntry> removedEntries = new HashSet<ZipEntry>();
+
+    /**
+     * Central directory and end of central directory record of the
+     * archive this stream appends to, used by {@link #revert}.
+     */
+    private byte[] originalTail;
+    private long originalTailStart;
+
     /**
      * The encoding to use for filenames and the file comment.
      *
@@ -360,6 +383,60 @@ public class ZipOutputStream extends FilterOutputStream {
         raf = _raf;
     }
 
+    /**
+     * Creates a new ZIP OutputStream that appends to an existing
+     * archive.
+     *
+     * <p>New entries are written to the place currently occupied by
+     * the archive's central directory.  {@link #finish} writes a new
+     * central directory containing the entries of the existing
+     * archive - unless they have been removed using {@link
+     * #removeExistingEntries} - followed by the new entries.</p>
+     *
+     * <p>The data of removed entries remains inside the archive,
+     * tools reading the archive sequentially rather than using the
+     * central directory will still see them.</p>
+     *
+     * @param file the archive to append to
+     * @param existing the same archive opened as ZipFile, the caller
+     * is responsible for closing it.
+     * @throws IOException on error
+     * @since Ant 1.9.5
+     */
+    public ZipOutputStream(File file, ZipFile existing) throws IOException {
+        super(null);
+        raf = new RandomAccessFile(file, "rw");
+        boolean success = false;
+        try {
+            originalTailStart = existing.getCentralDirectoryStart();
+            written = originalTailStart;
+            originalTail = new byte[(int) (raf.length() - written)];
+            raf.seek(written);
+            raf.readFully(originalTail);
+            raf.seek(written);
+            for (Enumeration<ZipEntry> e = existing.getEntriesInPhysicalOrder();
+                 e.hasMoreElements(); ) {
+                ZipEntry ze = e.nextElement();
+                entries.add(ze);
+                offsets.put(ze, ZipFile.getLocalFileHeaderOffset(ze));
+                List<ZipEntry> l = existingEntries.get(ze.getName());
+                if (l == null) {
+                    l = new LinkedList<ZipEntry>();
+                    existingEntries.put(ze.getName(), l);
+                }
+                l.add(ze);
+                if (hasZip64Extra(ze)) {
+                    hasUsedZip64 = true;
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                raf.close();
+            }
+        }
+    }
+
     /**
      * This method indicates whether this archive is writing to a
      * seekable stream (i.e., to a random access file).
@@ -494,17 +571,74 @@ public class ZipOutputStream extends FilterOutputStream {
             closeEntry();
         }
 
+        if (!removedEntries.isEmpty()) {
+            entries.removeAll(removedEntries);
+            removedEntries.clear();
+        }
+
         cdOffset = written;
         writeCentralDirectoryInChunks();
         cdLength = written - cdOffset;
         writeZip64CentralDirectory();
         writeCentralDirectoryEnd();
+        if (originalTail != null) {
+            // the old central directory may have been longer
+            raf.setLength(raf.getFilePointer());
+            originalTail = null;
+        }
         offsets.clear();
         entries.clear();
+        existingEntries.clear();
         def.end();
         finished = true;
     }
 
+    /**
+     * Removes all entries of the given name that have been part of
+     * the archive this stream appends to from the central directory.
+     *
+     * @param name the name of the entries to remove
+     * @return whether any entry has been removed
+     * @since Ant 1.9.5
+     */
+    public boolean removeExistingEntries(String name) {
+        final List<ZipEntry> l = existingEntries.remove(name);
+        if (l == null) {
+            return false;
+        }
+        removedEntries.addAll(l);
+        return true;
+    }
+
+    /**
+     * Restores the archive this stream appends to to the state it
+     * has been in when this stream was created and closes the
+     * stream.
+     *
+     * <p>Does nothing but closing the stream if this stream doesn't
+     * append to an existing archive or has already been
+     * finished.</p>
+     *
+     * @throws IOException on error
+     * @since Ant 1.9.5
+     */
+    public void revert() throws IOException {
+        try {
+            if (originalTail != null) {
+                raf.setLength(originalTailStart);
+                raf.seek(originalTailStart);
+                raf.write(originalTail);
+                originalTail = null;
+            }
+        } finally {
+            if (!finished) {
+                finished = true;
+                def.end();
+            }
+            destroy();
+        }
+    }
+
     private void writeCentralDirectoryInChunks() throws IOException {
         final int NUM_PER_WRITE = 1000;
         final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(70 * NUM_PER_WRITE);
@@ -749,6 +883,98 @@ public class ZipOutputStream extends FilterOutputStream {
         writeLocalFileHeader(entry.entry);
     }
 
+    /**
+     * Adds an entry whose data has already been compressed using the
+     * entry's method.
+     *
+     * <p>The entry must know its CRC, its size and its compressed
+     * size, the data is copied to the archive as is and the entry is
+     * closed afterwards.  For DEFLATED entries the data must have
+     * been created by a {@link java.util.zip.Deflater Deflater}
+     * using the <code>nowrap</code> option.</p>
+     *
+     * <p>This allows the data of several entries to be compressed
+     * independently - and concurrently - and added in a later
+     * step.</p>
+     *
+     * @param rawEntry the entry to add
+     * @param rawData the compressed data, the caller is responsible
+     * for closing the stream.
+     * @throws IOException on error
+     * @throws Zip64RequiredException if the entry's uncompressed or
+     * compressed size exceeds 4 GByte and {@link #setUseZip64}
+     * is {@link Zip64Mode#Never}.
+     * @since Ant 1.9.5
+     */
+    public void addRawEntry(ZipEntry rawEntry, InputStream rawData)
+        throws IOException {
+        if (rawEntry.getSize() == -1 || rawEntry.getCompressedSize() == -1
+            || rawEntry.getCrc() == -1) {
+            throw new ZipException("size, compressed size and crc checksum"
+                                   + " are required for raw entry "
+                                   + rawEntry.getName());
+        }
+        final long compressedSize = rawEntry.getCompressedSize();
+        putNextEntry(rawEntry);
+        entry.hasWritten = true;
+
+        // buf is rather small for plain copies
+        final byte[] copyBuffer = new byte[DEFLATER_BLOCK_SIZE];
+        int count;
+        while ((count = rawData.read(copyBuffer, 0, copyBuffer.length)) != -1) {
+            writeCounted(copyBuffer, 0, count);
+        }
+
+        final long bytesWritten = written - entry.dataStart;
+        if (bytesWritten != compressedSize) {
+            throw new ZipException("bad compressed size for entry "
+                                   + entry.entry.getName() + ": "
+                                   + compressedSize + " instead of "
+                                   + bytesWritten);
+        }
+        entry.entry.setCompressedSize(bytesWritten);
+
+        closeEntry(checkIfNeedsZip64(getEffectiveZip64Mode(entry.entry)));
+    }
+
+    /**
+     * Adds an entry by copying the compressed data of an entry of an
+     * existing archive without uncompressing it.
+     *
+     * <p>Compression method, CRC and sizes are taken from the source
+     * entry, everything else - like name, time or extra fields - from
+     * the entry passed in.</p>
+     *
+     * @param rawEntry the entry to add
+     * @param source the archive to copy from
+     * @param sourceEntry the entry of source to copy the data of
+     * @throws IOException on error
+     * @throws Zip64RequiredException if the entry's uncompressed or
+     * compressed size exceeds 4 GByte and {@link #setUseZip64}
+     * is {@link Zip64Mode#Never}.
+     * @since Ant 1.9.5
+     */
+    public void addRawEntry(ZipEntry rawEntry, ZipFile source,
+                            ZipEntry sourceEntry)
+        throws IOException {
+        ZipUtil.checkRequestedFeatures(sourceEntry);
+        final InputStream rawData = source.getRawInputStream(sourceEntry);
+        if (rawData == null) {
+            throw new ZipException("entry " + sourceEntry.getName()
+                                   + " doesn't belong to the source"
+                                   + " archive");
+        }
+        try {
+            rawEntry.setMethod(sourceEntry.getMethod());
+            rawEntry.setCrc(sourceEntry.getCrc());
+            rawEntry.setSize(sourceEntry.getSize());
+            rawEntry.setCompressedSize(sourceEntry.getCompressedSize());
+            addRawEntry(rawEntry, rawData);
+        } finally {
+            rawData.close();
+        }
+    }
+
     /**
      * Provides default values for compression method and last
      * modification time.
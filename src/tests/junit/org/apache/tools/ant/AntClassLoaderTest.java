@@ -19,13 +19,18 @@
 package org.apache.tools.ant;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URL;
+import java.util.Enumeration;
 
 import org.apache.tools.ant.types.Path;
 import org.apache.tools.ant.util.FileUtils;
@@ -131,6 +136,72 @@ public class AntClassLoaderTest {
                       new GetPackageWrapper(loader).getPackage("org.example"));
     }
 
+    @Test
+    public void testResourcesInJarsAndDirectories() throws Exception {
+        buildRule.executeTarget("prepareResourceTest");
+        String tmpDir = buildRule.getProject().getProperty("tmp.dir");
+        Path myPath = new Path(buildRule.getProject());
+        myPath.setLocation(new File(buildRule.getProject().getProperty("ext.jar")));
+        myPath.setLocation(new File(tmpDir, "resources.jar"));
+        myPath.setLocation(new File(tmpDir, "indir"));
+        buildRule.getProject().setUserProperty("build.sysclasspath","ignore");
+        loader = buildRule.getProject().createClassLoader(myPath);
+        URL both = loader.getResource("org/example/both.txt");
+        assertNotNull("should find resource", both);
+        assertTrue("jar comes first", both.toString().startsWith("jar:"));
+        assertNotNull("should find resource in directory",
+                      loader.getResource("org/example/dironly.txt"));
+        Enumeration<URL> all = loader.getResources("org/example/both.txt");
+        assertTrue(all.hasMoreElements());
+        assertEquals(both, all.nextElement());
+        assertTrue(all.hasMoreElements());
+        assertEquals("file", all.nextElement().getProtocol());
+        assertFalse(all.hasMoreElements());
+        assertNull(loader.getResource("org/example/missing.txt"));
+    }
+
+    @Test
+    public void testJarsAreSharedBetweenLoaders() throws Exception {
+        buildRule.executeTarget("prepareResourceTest");
+        File jar = new File(buildRule.getProject().getProperty("tmp.dir"), "resources.jar");
+        Path myPath = new Path(buildRule.getProject());
+        myPath.setLocation(jar);
+        buildRule.getProject().setUserProperty("build.sysclasspath","ignore");
+        loader = buildRule.getProject().createClassLoader(myPath);
+        AntClassLoader other = buildRule.getProject().createClassLoader(myPath);
+        JarFileCache.CachedJar cached = JarFileCache.acquire(buildRule.getProject(), jar);
+        try {
+            assertNotNull(loader.getResource("org/example/both.txt"));
+            assertNotNull(other.getResource("org/example/both.txt"));
+            loader.cleanup();
+            InputStream is = other.getResourceAsStream("org/example/both.txt");
+            assertNotNull("jar is still open for the other loader", is);
+            FileUtils.close(is);
+            other.cleanup();
+            assertSame(cached, JarFileCache.acquire(buildRule.getProject(), jar));
+            JarFileCache.release(cached);
+        } finally {
+            JarFileCache.release(cached);
+            other.cleanup();
+        }
+    }
+
+    @Test
+    public void testUnusedJarsAreKeptIfCacheIsEnabledExplicitly() throws Exception {
+        buildRule.executeTarget("prepareResourceTest");
+        File jar = new File(buildRule.getProject().getProperty("tmp.dir"), "resources.jar");
+        buildRule.getProject().setProperty(MagicNames.JAR_FILE_CACHE, "true");
+        JarFileCache.CachedJar cached = JarFileCache.acquire(buildRule.getProject(), jar);
+        JarFileCache.release(cached);
+        JarFileCache.CachedJar again = JarFileCache.acquire(buildRule.getProject(), jar);
+        try {
+            assertSame(cached, again);
+        } finally {
+            JarFileCache.release(again);
+            JarFileCache.closeIdle();
+        }
+    }
+
     @Test
     public void testCodeSource() throws Exception {
         buildRule.executeTarget("prepareGetPackageTest");
@@ -33,6 +33,8 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.tools.ant.taskdefs.condition.Os;
+import org.apache.tools.ant.types.selectors.FileSelector;
+import org.apache.tools.ant.types.selectors.SizeSelector;
 import org.apache.tools.ant.types.selectors.TokenizedPath;
 import org.junit.Before;
 import org.junit.Rule;
@@ -574,6 +576,84 @@ public class DirectoryScannerTest {
                                   .replace('/', File.separatorChar)));
     }
 
+    @Test
+    public void testParallelScanMatchesSerialScan() {
+        File src = new File(System.getProperty("root"), "src/main");
+        String[] includes = new String[] {"**/*.java", "org/apache/tools/ant/types/"};
+        String[] excludes = new String[] {"**/optional/**", "**/*Test*"};
+
+        DirectoryScanner serial = new DirectoryScanner();
+        serial.setBasedir(src);
+        serial.setIncludes(includes);
+        serial.setExcludes(excludes);
+        serial.scan();
+
+        DirectoryScanner parallel = new DirectoryScanner();
+        parallel.setBasedir(src);
+        parallel.setIncludes(includes);
+        parallel.setExcludes(excludes);
+        parallel.setParallel(true);
+        parallel.scan();
+
+        assertTrue(serial.getIncludedFilesCount() > 0);
+        assertEquals(Arrays.asList(serial.getIncludedFiles()),
+                     Arrays.asList(parallel.getIncludedFiles()));
+        assertEquals(Arrays.asList(serial.getIncludedDirectories()),
+                     Arrays.asList(parallel.getIncludedDirectories()));
+        // unsorted, so order must be the same as well
+        assertEquals(Arrays.asList(serial.getExcludedFiles()),
+                     Arrays.asList(parallel.getExcludedFiles()));
+        assertEquals(Arrays.asList(serial.getExcludedDirectories()),
+                     Arrays.asList(parallel.getExcludedDirectories()));
+        assertEquals(Arrays.asList(serial.getNotIncludedFiles()),
+                     Arrays.asList(parallel.getNotIncludedFiles()));
+        assertEquals(Arrays.asList(serial.getNotIncludedDirectories()),
+                     Arrays.asList(parallel.getNotIncludedDirectories()));
+        assertEquals(serial.isEverythingIncluded(),
+                     parallel.isEverythingIncluded());
+    }
+
+    @Test
+    public void testNioScanMatchesIoScan() {
+        File src = new File(System.getProperty("root"), "src/main");
+        String[] includes = new String[] {"**/*.java", "org/apache/tools/ant/types/"};
+        String[] excludes = new String[] {"**/optional/**"};
+        SizeSelector size = new SizeSelector();
+        size.setValue(10);
+        size.setUnits((SizeSelector.ByteUnits)
+                      SizeSelector.ByteUnits.getInstance(SizeSelector.ByteUnits.class, "k"));
+        size.setWhen((SizeSelector.SizeComparisons)
+                     SizeSelector.SizeComparisons.getInstance(SizeSelector.SizeComparisons.class,
+                                                              "less"));
+        FileSelector[] selectors = new FileSelector[] {size};
+
+        DirectoryScanner io = new DirectoryScanner();
+        io.setBasedir(src);
+        io.setIncludes(includes);
+        io.setExcludes(excludes);
+        io.setSelectors(selectors);
+        io.scan();
+
+        DirectoryScanner nio = new DirectoryScanner();
+        nio.setBasedir(src);
+        nio.setIncludes(includes);
+        nio.setExcludes(excludes);
+        nio.setSelectors(selectors);
+        nio.setUseNio(true);
+        nio.scan();
+
+        assertTrue(io.getIncludedFilesCount() > 0);
+        assertTrue(io.getDeselectedFiles().length > 0);
+        assertEquals(Arrays.asList(io.getIncludedFiles()),
+                     Arrays.asList(nio.getIncludedFiles()));
+        assertEquals(Arrays.asList(io.getIncludedDirectories()),
+                     Arrays.asList(nio.getIncludedDirectories()));
+        assertEquals(new TreeSet<String>(Arrays.asList(io.getDeselectedFiles())),
+                     new TreeSet<String>(Arrays.asList(nio.getDeselectedFiles())));
+        assertEquals(new TreeSet<String>(Arrays.asList(io.getNotIncludedFiles())),
+                     new TreeSet<String>(Arrays.asList(nio.getNotIncludedFiles())));
+    }
+
     @Test
     public void testContentsExcluded() {
         DirectoryScanner ds = new DirectoryScanner();
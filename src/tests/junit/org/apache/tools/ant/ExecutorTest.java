@@ -36,6 +36,8 @@ public class ExecutorTest implements BuildListener  {
         = "org.apache.tools.ant.helper.SingleCheckExecutor";
     private static final String IGNORE_DEPS
         = "org.apache.tools.ant.helper.IgnoreDependenciesExecutor";
+    private static final String PARALLEL
+        = "org.apache.tools.ant.helper.ParallelExecutor";
     
     private static final Vector<String> TARGET_NAMES;
     static {
@@ -50,7 +52,7 @@ public class ExecutorTest implements BuildListener  {
     private int targetCount;
 
     /* BuildListener stuff */
-    public void targetStarted(BuildEvent event) {
+    public synchronized void targetStarted(BuildEvent event) {
         targetCount++;
     }
     public void buildStarted(BuildEvent event) {}
@@ -103,6 +105,23 @@ public class ExecutorTest implements BuildListener  {
         assertEquals(2, targetCount);
     }
 
+    @Test
+    public void testParallelExecutor() {
+        getProject(PARALLEL).executeTargets(TARGET_NAMES);
+        assertEquals(3, targetCount);
+    }
+
+    @Test
+    public void testParallelExecutorRunsIndependentTargetsConcurrently() {
+        Project p = getProject(PARALLEL);
+        p.setNewProperty("ant.executor.threads", "2");
+        Vector<String> targetNames = new Vector<String>();
+        targetNames.add("c");
+        targetNames.add("d");
+        p.executeTargets(targetNames);
+        assertEquals(3, targetCount);
+    }
+
     @Test
     public void testDefaultFailure() {
         try {
@@ -125,6 +144,17 @@ public class ExecutorTest implements BuildListener  {
         }
     }
 
+    @Test
+    public void testParallelFailure() {
+        try {
+            getProject(PARALLEL, true).executeTargets(TARGET_NAMES);
+            fail("should fail");
+        } catch (BuildException e) {
+            assertEquals("failfoo", e.getMessage());
+            assertEquals(1, targetCount);
+        }
+    }
+
     @Test
     public void testIgnoreDependenciesFailure() {
         //no foo failure; foo is never executed as dependencies are ignored!
@@ -153,6 +183,17 @@ public class ExecutorTest implements BuildListener  {
         }
     }
 
+    @Test
+    public void testKeepGoingParallel() {
+        try {
+            getProject(PARALLEL, true, true).executeTargets(TARGET_NAMES);
+            fail("should fail");
+        } catch (BuildException e) {
+            assertEquals("failfoo", e.getMessage());
+            assertEquals(1, targetCount);
+        }
+    }
+
     @Test
     public void testKeepGoingIgnoreDependencies() {
         try {
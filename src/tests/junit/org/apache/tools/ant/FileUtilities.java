@@ -20,9 +20,11 @@ package org.apache.tools.ant;
 
 import org.apache.tools.ant.util.FileUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 
 import static org.junit.Assume.assumeTrue;
 
@@ -85,4 +87,35 @@ public class FileUtilities {
         }
     }
 
+    /**
+     * Reads the remaining contents of a stream, the stream is not closed.
+     * @param in the stream to read.
+     * @return the contents of the stream.
+     * @throws IOException on error reading the stream
+     */
+    public static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates test data that is different for each seed and
+     * compressible but doesn't consist of a single repeated byte.
+     * @param length the number of bytes to create.
+     * @param seed distinguishes the data of different entries or files.
+     * @return the test data.
+     */
+    public static byte[] createTestData(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * (seed + 1));
+        }
+        return data;
+    }
+
 }
@@ -37,6 +37,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -49,6 +50,8 @@ public class IntrospectionHelperTest {
 
     private Project p;
     private IntrospectionHelper ih;
+    private Integer lastNine;
+    private Class<?> lastThirteen;
     private static final String projectBasedir = File.separator;
 
     @Before
@@ -451,6 +454,34 @@ public class IntrospectionHelperTest {
         }
     }
 
+    @Test
+    public void testConvertedAttributeValuesAreReused() throws BuildException {
+        ih.setAttribute(p, this, "eight", "2");
+        ih.setAttribute(p, this, "eight", "2");
+        ih.setAttribute(p, this, "Nine", "2");
+        final Integer firstNine = lastNine;
+        ih.setAttribute(p, this, "nine", "2");
+        assertSame(firstNine, lastNine);
+        ih.setAttribute(p, this, "thirteen", "org.apache.tools.ant.Project");
+        final Class<?> firstThirteen = lastThirteen;
+        ih.setAttribute(p, this, "thirteen", "org.apache.tools.ant.Project");
+        assertSame(firstThirteen, lastThirteen);
+        try {
+            ih.setAttribute(p, this, "nine", "3");
+            fail("2 shouldn't be equals to three - as Integer");
+        } catch (BuildException be) {
+            assertTrue(be.getCause() instanceof AssertionError);
+        }
+        for (int i = 0; i < 2; i++) {
+            try {
+                ih.setAttribute(p, this, "eight", "two");
+                fail("two is not a number");
+            } catch (BuildException be) {
+                assertTrue(be.getMessage().indexOf("two") > -1);
+            }
+        }
+    }
+
     private Map getExpectedAttributes() {
         Map attrMap = new Hashtable();
         attrMap.put("seven", String.class);
@@ -582,6 +613,7 @@ public class IntrospectionHelperTest {
     }
 
     public void setNine(Integer i) {
+        lastNine = i;
         assertEquals(2, i.intValue());
     }
 
@@ -606,6 +638,7 @@ public class IntrospectionHelperTest {
     }
 
     public void setThirteen(Class c) {
+        lastThirteen = c;
         assertEquals(Project.class, c);
     }
 
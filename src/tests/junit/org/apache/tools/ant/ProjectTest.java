@@ -24,6 +24,7 @@ import org.apache.tools.ant.input.PropertyFileInputHandler;
 import org.apache.tools.ant.taskdefs.condition.Os;
 
 import java.io.File;
+import java.util.Collections;
 
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.Path;
@@ -308,6 +309,52 @@ public class ProjectTest {
         // be content if no exception has been thrown
     }
 
+    @Test
+    public void testCopyPropertiesToSubProject() {
+        p.setUserProperty("user", "parent");
+        p.setInheritedProperty("inherited", "parent");
+        p.setInheritedProperty("overridden", "parent");
+        p.setProperty("plain", "parent");
+        p.setProperty("existing", "parent");
+
+        Project child = new Project();
+        child.setUserProperty("overridden", "child");
+        child.setProperty("existing", "child");
+        p.copyUserProperties(child);
+        p.copyInheritedProperties(child);
+        PropertyHelper.getPropertyHelper(p)
+            .copyNewProperties(child, Collections.<String>emptySet());
+
+        assertEquals("parent", child.getUserProperty("user"));
+        assertNull(child.getInheritedProperties().get("user"));
+        assertEquals("parent", child.getInheritedProperties().get("inherited"));
+        assertEquals("parent", child.getProperty("inherited"));
+        // user properties of the child take precedence
+        assertEquals("child", child.getProperty("overridden"));
+        assertNull(child.getInheritedProperties().get("overridden"));
+        assertEquals("parent", child.getProperty("plain"));
+        assertNull(child.getUserProperty("plain"));
+        assertEquals("child", child.getProperty("existing"));
+    }
+
+    @Test
+    public void testSubProjectSeesDefinitionsOfParent() {
+        Project child = p.createSubProject();
+        assertTrue(child.createDataType("fileset") instanceof FileSet);
+
+        child.addDataTypeDefinition("childonly", PatternSet.class);
+        child.addDataTypeDefinition("fileset", Path.class);
+        assertTrue(child.createDataType("fileset") instanceof Path);
+        assertNull(p.createDataType("childonly"));
+        assertTrue(p.createDataType("fileset") instanceof FileSet);
+
+        ComponentHelper helper = ComponentHelper.getComponentHelper(child);
+        assertNotNull(helper.getAntTypeTable().get("path"));
+        assertSame(Path.class, child.getDataTypeDefinitions().get("fileset"));
+        assertSame(PatternSet.class, child.getDataTypeDefinitions().get("childonly"));
+        assertNotNull(child.getTaskDefinitions().get("echo"));
+    }
+
     private class DummyTaskPrivate extends Task {
         public DummyTaskPrivate() {}
         public void execute() {}
@@ -19,6 +19,10 @@
 
 package org.apache.tools.ant;
 
+import java.text.ParsePosition;
+
+import org.apache.tools.ant.property.ParseNextProperty;
+import org.apache.tools.ant.property.PropertyExpander;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -75,6 +79,44 @@ public class PropertyExpansionTest {
     }
 
 
+    /**
+     * parsed Strings are cached, the values must not be
+     */
+    @Test
+    public void testRepeatedExpansionSeesCurrentValues() {
+        assertExpandsTo("x${repeated}y", "x${repeated}y");
+        buildRule.getProject().setProperty("repeated", "1");
+        assertExpandsTo("x${repeated}y", "x1y");
+        PropertyHelper ph = PropertyHelper.getPropertyHelper(buildRule.getProject());
+        Object value = new Object();
+        ph.setNewProperty("object", value);
+        assertEquals(value, ph.parseProperties("${object}"));
+        assertEquals(true, ph.containsProperties("a${object}"));
+        assertEquals(false, ph.containsProperties("a$${object}"));
+    }
+
+    /**
+     * additional expanders still get a chance
+     */
+    @Test
+    public void testCustomExpander() {
+        PropertyHelper ph = PropertyHelper.getPropertyHelper(buildRule.getProject());
+        buildRule.getProject().setProperty("custom", "CUSTOM");
+        ph.add(new PropertyExpander() {
+                public String parsePropertyName(String s, ParsePosition pos,
+                                                ParseNextProperty p) {
+                    int index = pos.getIndex();
+                    if (s.startsWith("#{", index)) {
+                        int end = s.indexOf('}', index);
+                        pos.setIndex(end + 1);
+                        return s.substring(index + 2, end);
+                    }
+                    return null;
+                }
+            });
+        assertExpandsTo("a#{custom}b${custom}", "aCUSTOMbCUSTOM");
+    }
+
     /**
      * old things we dont want; not a test no more
      */
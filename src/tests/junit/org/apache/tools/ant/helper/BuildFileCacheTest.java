@@ -0,0 +1,94 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.helper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BuildFileCacheTest {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private Project project;
+    private File buildFile;
+
+    @Before
+    public void setUp() throws IOException {
+        project = new Project();
+        buildFile = FILE_UTILS.createTempFile("cache", ".xml", null, true, false);
+        FileWriter w = new FileWriter(buildFile);
+        try {
+            w.write("<project/>");
+        } finally {
+            w.close();
+        }
+        // cached files must not have been modified just now
+        assertTrue(buildFile.setLastModified(System.currentTimeMillis() - 60000));
+    }
+
+    @After
+    public void tearDown() {
+        buildFile.delete();
+    }
+
+    @Test
+    public void testFileWithoutWarningsIsStored() {
+        BuildFileCache.Recorder recorder = record();
+        recorder.store();
+        assertNotNull(BuildFileCache.lookup(project, buildFile));
+    }
+
+    @Test
+    public void testFileWithWarningsIsNotStored() throws SAXException {
+        BuildFileCache.Recorder recorder = record();
+        recorder.warning(new SAXParseException("careful", null));
+        recorder.store();
+        // replaying the file wouldn't report the warning again
+        assertNull(BuildFileCache.lookup(project, buildFile));
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIsNotStored() {
+        assertTrue(buildFile.setLastModified(System.currentTimeMillis()));
+        BuildFileCache.Recorder recorder = record();
+        recorder.store();
+        // a modification within the same second might go unnoticed
+        assertNull(BuildFileCache.lookup(project, buildFile));
+    }
+
+    private BuildFileCache.Recorder record() {
+        AntXMLContext context = new AntXMLContext(project);
+        BuildFileCache.Recorder recorder = BuildFileCache.record(project, buildFile,
+            new ProjectHelper2.RootHandler(context, new ProjectHelper2.MainHandler()));
+        assertNotNull(recorder);
+        return recorder;
+    }
+}
@@ -18,13 +18,23 @@
 
 package org.apache.tools.ant.taskdefs;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildFileRule;
+import org.apache.tools.ant.FileUtilities;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -105,6 +115,23 @@ public class GzipTest {
             log.endsWith("asf-logo.gif.gz is up to date."));
     }
 
+    @Test
+    public void testFallbackWithoutParallelStream() throws IOException {
+        byte[] data = FileUtilities.createTestData(300 * 1000, 3);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream out = GZip.createOutputStream(bos, 4, null);
+        assertEquals(GZIPOutputStream.class, out.getClass());
+        out.write(data);
+        out.close();
+        assertArrayEquals(data, FileUtilities.readFully(new GZIPInputStream(
+            new ByteArrayInputStream(bos.toByteArray()))));
+
+        out = GZip.createOutputStream(new ByteArrayOutputStream(), 4,
+                                      "org.example.NoSuchStream");
+        assertEquals(GZIPOutputStream.class, out.getClass());
+        out.close();
+    }
+
     @After
     public void tearDown(){
         buildRule.executeTarget("cleanup");
@@ -18,17 +18,21 @@
 package org.apache.tools.ant.taskdefs;
 
 import java.io.PrintStream;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildFileRule;
 import org.apache.tools.ant.DemuxOutputStream;
 import org.apache.tools.ant.ExitStatusException;
 import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 /**
@@ -191,5 +195,50 @@ public class ParallelTest {
         }
     }
 
-}
 
+    @Test
+    public void testThreadsStartedByNestedTasksAreAttributedToThem() {
+        Project p = buildRule.getProject();
+        Parallel parallel = new Parallel();
+        parallel.setProject(p);
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        ThreadTaskRecorder[] recorders = new ThreadTaskRecorder[2];
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new ThreadTaskRecorder(barrier);
+            recorders[i].setProject(p);
+            parallel.addTask(recorders[i]);
+        }
+        parallel.execute();
+        for (int i = 0; i < recorders.length; i++) {
+            assertSame(recorders[i], recorders[i].helperTask);
+        }
+    }
+
+    /**
+     * Looks up the task of a thread it creates while the other
+     * recorders sharing the barrier are running as well.
+     */
+    public static class ThreadTaskRecorder extends Task {
+        private final CyclicBarrier barrier;
+        private volatile Task helperTask;
+
+        public ThreadTaskRecorder(CyclicBarrier barrier) {
+            this.barrier = barrier;
+        }
+
+        public void execute() {
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new BuildException(e);
+            }
+            helperTask = getProject().getThreadTask(new Thread("helper"));
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new BuildException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.taskdefs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamPumperTest {
+
+    private static class RecordingStream extends ByteArrayOutputStream {
+        private int largestWrite;
+        private int flushes;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            largestWrite = Math.max(largestWrite, len);
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushes++;
+        }
+    }
+
+    private static byte[] data() {
+        byte[] data = new byte[1024 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testFixedBufferFlushesEachRead() {
+        byte[] data = data();
+        RecordingStream out = new RecordingStream();
+        StreamPumper p = new StreamPumper(new ByteArrayInputStream(data), out);
+        p.setAutoflush(true);
+        p.run();
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(128, out.largestWrite);
+        assertTrue(out.flushes > data.length / 128);
+    }
+
+    @Test
+    public void testGrowingBufferFlushesWhenIdle() {
+        byte[] data = data();
+        RecordingStream out = new RecordingStream();
+        StreamPumper p = new StreamPumper(new ByteArrayInputStream(data), out);
+        p.setAutoflush(true);
+        p.setFlushWhenIdle(true);
+        p.setMaxBufferSize(64 * 1024);
+        p.run();
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(64 * 1024, out.largestWrite);
+        // once when the input is exhausted, once at the end
+        assertEquals(2, out.flushes);
+    }
+}
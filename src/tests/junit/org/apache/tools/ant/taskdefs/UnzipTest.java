@@ -20,6 +20,8 @@ package org.apache.tools.ant.taskdefs;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildFileRule;
 import org.apache.tools.ant.FileUtilities;
+import org.apache.tools.ant.util.FileNameMapper;
+import org.apache.tools.ant.util.FileUtils;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -27,6 +29,8 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -247,4 +251,55 @@ public class UnzipTest {
         assertFileMissing("1/foo is excluded", buildRule.getProject().getProperty("output") + "/unziptestout/1/foo");
         assertFileExists("2/bar is not excluded", buildRule.getProject().getProperty("output") + "/unziptestout/2/bar");
     }
+
+    @Test
+    public void testParallel() throws IOException {
+        buildRule.executeTarget("testParallel");
+        String output = buildRule.getProject().getProperty("output");
+        assertFileMissing("unzip.xml is excluded",
+                          output + "/unziptestout/taskdefs/unzip.xml");
+        File in = new File(output, "unziptestin/taskdefs");
+        String[] names = in.list();
+        assertTrue(names.length > 1);
+        for (int i = 0; i < names.length; i++) {
+            if (!"unzip.xml".equals(names[i])) {
+                assertEquals(names[i],
+                             FileUtilities.getFileContents(new File(in, names[i])),
+                             FileUtilities.getFileContents(new File(output, "unziptestout/taskdefs/" + names[i])));
+            }
+        }
+        assertEquals(FileUtilities.getFileContents(buildRule.getProject().resolveFile("../asf-logo.gif")),
+                     FileUtilities.getFileContents(new File(output, "unziptestout/asf-logo.gif")));
+    }
+
+    @Test
+    public void testParallelUsesOverriddenExtractFile() {
+        buildRule.executeTarget("prepareTestZip");
+        String output = buildRule.getProject().getProperty("output");
+        RenamingExpand expand = new RenamingExpand();
+        expand.setProject(buildRule.getProject());
+        expand.setSrc(new File(output, "unziptest.zip"));
+        expand.setDest(new File(output, "unziptestout"));
+        expand.setParallel(4);
+        expand.execute();
+        assertFileExists("1/foo has been renamed",
+                         output + "/unziptestout/1/foo.renamed");
+        assertFileMissing("1/foo has been renamed",
+                          output + "/unziptestout/1/foo");
+    }
+
+    /**
+     * Appends ".renamed" to the names of all entries.
+     */
+    private static class RenamingExpand extends Expand {
+        protected void extractFile(FileUtils fileUtils, File srcF, File dir,
+                                   InputStream compressedInputStream,
+                                   String entryName, Date entryDate,
+                                   boolean isDirectory, FileNameMapper mapper)
+            throws IOException {
+            super.extractFile(fileUtils, srcF, dir, compressedInputStream,
+                              isDirectory ? entryName : entryName + ".renamed",
+                              entryDate, isDirectory, mapper);
+        }
+    }
 }
@@ -19,13 +19,19 @@
 package org.apache.tools.ant.taskdefs;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Random;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildFileRule;
+import org.apache.tools.ant.FileUtilities;
 import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.zip.UnixStat;
 import org.junit.After;
@@ -35,8 +41,10 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import static org.apache.tools.ant.AntAssert.assertContains;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
@@ -297,4 +305,147 @@ public class ZipTest {
         }
     }
 
+    @Test
+    public void testParallel() throws IOException {
+        File dir = new File(buildRule.getProject().getProperty("output"), "ziptest");
+        dir.mkdirs();
+        // big enough to not be kept in memory once compressed
+        byte[] random = new byte[3 * 1024 * 1024];
+        new Random(42).nextBytes(random);
+        FileOutputStream out = new FileOutputStream(new File(dir, "random.bin"));
+        try {
+            out.write(random);
+        } finally {
+            out.close();
+        }
+        buildRule.executeTarget("testParallel");
+        assertSameEntries("test3.zip", "test4.zip");
+    }
+
+    @Test
+    public void testRawCopy() throws IOException {
+        buildRule.executeTarget("testRawCopy");
+        assertSameEntries("test3.zip", "test4.zip");
+        assertSameEntries("test3.zip", "test5.zip");
+        assertSameEntries("test3.zip", "test6.zip");
+
+        File output = new File(buildRule.getProject().getProperty("output"));
+        ZipFile source = null;
+        ZipFile copied = null;
+        ZipFile recompressed = null;
+        ZipFile copiedInParallel = null;
+        try {
+            source = new ZipFile(new File(output, "test3.zip"));
+            copied = new ZipFile(new File(output, "test4.zip"));
+            recompressed = new ZipFile(new File(output, "test5.zip"));
+            copiedInParallel = new ZipFile(new File(output, "test6.zip"));
+            boolean sawDifferentSize = false;
+            for (Enumeration<? extends ZipEntry> e = source.entries(); e.hasMoreElements(); ) {
+                ZipEntry ze = e.nextElement();
+                assertEquals(ze.getName(), ze.getCompressedSize(),
+                             copied.getEntry(ze.getName()).getCompressedSize());
+                assertEquals(ze.getName(), ze.getCompressedSize(),
+                             copiedInParallel.getEntry(ze.getName()).getCompressedSize());
+                sawDifferentSize |= ze.getCompressedSize()
+                    != recompressed.getEntry(ze.getName()).getCompressedSize();
+            }
+            assertTrue("level should have forced recompression", sawDifferentSize);
+        } finally {
+            if (source != null) {
+                source.close();
+            }
+            if (copied != null) {
+                copied.close();
+            }
+            if (recompressed != null) {
+                recompressed.close();
+            }
+            if (copiedInParallel != null) {
+                copiedInParallel.close();
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateInPlace() throws IOException {
+        buildRule.executeTarget("prepareUpdateInPlace");
+        File output = new File(buildRule.getProject().getProperty("output"));
+        File archive = new File(output, "test3.zip");
+        long originalLength = archive.length();
+
+        changeFile(new File(output, "ziptest/b.txt"), "b2", 60000);
+        buildRule.executeTarget("testUpdateInPlace");
+        assertTrue(archive.length() > originalLength);
+        assertUpdatedArchive(archive, "b2");
+        org.apache.tools.zip.ZipFile zf = new org.apache.tools.zip.ZipFile(archive);
+        try {
+            assertTrue(zf.getUnusedBytes() > 0);
+        } finally {
+            zf.close();
+        }
+
+        changeFile(new File(output, "ziptest/b.txt"), "b3", 120000);
+        buildRule.executeTarget("testCompactOnUpdate");
+        assertUpdatedArchive(archive, "b3");
+        zf = new org.apache.tools.zip.ZipFile(archive);
+        try {
+            assertEquals(0, zf.getUnusedBytes());
+        } finally {
+            zf.close();
+        }
+    }
+
+    private static void changeFile(File f, String content, long ahead)
+        throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(content.getBytes("ASCII"));
+        } finally {
+            out.close();
+        }
+        // must be newer than the archive and the entry
+        f.setLastModified(System.currentTimeMillis() + ahead);
+    }
+
+    private static void assertUpdatedArchive(File archive, String b)
+        throws IOException {
+        ZipFile zf = new ZipFile(archive);
+        try {
+            assertEquals(4, zf.size());
+            assertEquals("a", new String(FileUtilities.readFully(zf.getInputStream(zf.getEntry("a.txt"))), "ASCII"));
+            assertEquals(b, new String(FileUtilities.readFully(zf.getInputStream(zf.getEntry("b.txt"))), "ASCII"));
+            assertEquals("c", new String(FileUtilities.readFully(zf.getInputStream(zf.getEntry("sub/c.txt"))), "ASCII"));
+            assertNotNull(zf.getEntry("sub/"));
+        } finally {
+            zf.close();
+        }
+    }
+
+    private void assertSameEntries(String expectedName, String actualName)
+        throws IOException {
+        File output = new File(buildRule.getProject().getProperty("output"));
+        ZipInputStream expected = null;
+        ZipInputStream actual = null;
+        try {
+            expected = new ZipInputStream(new FileInputStream(new File(output, expectedName)));
+            actual = new ZipInputStream(new FileInputStream(new File(output, actualName)));
+            int count = 0;
+            ZipEntry e;
+            while ((e = expected.getNextEntry()) != null) {
+                ZipEntry a = actual.getNextEntry();
+                assertNotNull("missing " + e.getName(), a);
+                assertEquals(e.getName(), a.getName());
+                assertEquals(e.getMethod(), a.getMethod());
+                // ZipInputStream verifies CRC and sizes while reading
+                assertArrayEquals(e.getName(), FileUtilities.readFully(expected), FileUtilities.readFully(actual));
+                count++;
+            }
+            assertNull(actual.getNextEntry());
+            assertTrue(count > 10);
+        } finally {
+            FileUtils.close(expected);
+            FileUtils.close(actual);
+        }
+    }
+
 }
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.types.selectors;
+
+import java.io.File;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PatternTrieTest {
+
+    private static final String[] PATTERNS = new String[] {
+        "", "**", "a", "a/**", "**/a", "**/a/**", "a/b", "a/*", "*/b",
+        "a/**/b", "a/**/**/b", "**/b/**/c", "a?/b*", "A/B", "*.java",
+        "**/*.java", "a/b/c/d", "**/CVS/**", "a/*/c/**", "**/**",
+    };
+
+    private static final String[] PATHS = new String[] {
+        "", "a", "A", "b", "a/b", "a/B", "ab/bc", "a/c", "x/b", "a/b/c",
+        "a/x/b", "a/x/y/b", "b/c", "x/b/y/c", "Foo.java", "a/Foo.java",
+        "a/b/c/d", "a/b/c/d/e", "x/CVS", "x/CVS/y", "cvs/y", "a/x/c",
+        "a/x/c/d",
+    };
+
+    @Test
+    public void testSinglePatternsMatchLikeTokenizedPattern() {
+        for (int cs = 0; cs < 2; cs++) {
+            boolean caseSensitive = cs == 0;
+            for (int i = 0; i < PATTERNS.length; i++) {
+                String pattern = sep(PATTERNS[i]);
+                TokenizedPattern tp = new TokenizedPattern(pattern);
+                PatternTrie trie =
+                    new PatternTrie(new String[] {pattern}, caseSensitive);
+                for (int j = 0; j < PATHS.length; j++) {
+                    TokenizedPath path = new TokenizedPath(sep(PATHS[j]));
+                    String msg = pattern + " vs " + path + " cs=" + caseSensitive;
+                    assertEquals(msg, tp.matchPath(path, caseSensitive),
+                                 trie.matchPath(path));
+                    assertEquals(msg, tp.matchStartOf(path, caseSensitive)
+                                 && (tp.containsPattern(SelectorUtils.DEEP_TREE_MATCH)
+                                     || tp.depth() > path.depth()),
+                                 trie.couldHoldMatch(path));
+                    assertEquals(msg, tp.endsWith(SelectorUtils.DEEP_TREE_MATCH)
+                                 && tp.withoutLastToken()
+                                      .matchPath(path, caseSensitive),
+                                 trie.matchesAllBelow(path));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAllPatternsMatchLikeAnyTokenizedPattern() {
+        String[] patterns = new String[PATTERNS.length - 2];
+        // leave out "" and "**"
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = sep(PATTERNS[i + 2]);
+        }
+        PatternTrie trie = new PatternTrie(patterns, true);
+        for (int j = 0; j < PATHS.length; j++) {
+            TokenizedPath path = new TokenizedPath(sep(PATHS[j]));
+            boolean any = false;
+            for (int i = 0; i < patterns.length; i++) {
+                any |= new TokenizedPattern(patterns[i]).matchPath(path, true);
+            }
+            assertEquals(path.toString(), any, trie.matchPath(path));
+        }
+    }
+
+    @Test
+    public void testCaseInsensitiveLiterals() {
+        PatternTrie trie = PatternTrie.getInstance(new String[] {sep("a/b")}, false);
+        assertTrue(trie.matchPath(new TokenizedPath(sep("A/B"))));
+        assertFalse(PatternTrie.getInstance(new String[] {sep("a/b")}, true)
+                    .matchPath(new TokenizedPath(sep("A/B"))));
+    }
+
+    @Test
+    public void testInstancesAreShared() {
+        assertSame(PatternTrie.getInstance(new String[] {"**/x"}, true),
+                   PatternTrie.getInstance(new String[] {"**/x"}, true));
+    }
+
+    private static String sep(String s) {
+        return s.replace('/', File.separatorChar);
+    }
+}
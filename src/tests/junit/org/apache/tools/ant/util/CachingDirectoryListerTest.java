@@ -0,0 +1,177 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.selectors.FileAttributes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+public class CachingDirectoryListerTest {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private File dir;
+    private File index;
+    private CountingLister delegate;
+
+    @Before
+    public void setUp() throws IOException {
+        DirectoryLister nio = DirectoryScanner.getNioDirectoryLister();
+        assumeNotNull(nio);
+        delegate = new CountingLister(nio);
+        dir = FILE_UTILS.createTempFile("cdl", "", null, true, false);
+        index = FILE_UTILS.createTempFile("cdl", ".idx", null, true, false);
+        assertTrue(new File(dir, "sub").mkdirs());
+        assertTrue(new File(dir, "a.txt").createNewFile());
+        backdate(60000);
+    }
+
+    @After
+    public void tearDown() {
+        if (dir != null) {
+            new File(dir, "a.txt").delete();
+            new File(dir, "b.txt").delete();
+            new File(dir, "sub").delete();
+            dir.delete();
+            index.delete();
+        }
+    }
+
+    @Test
+    public void testUnchangedDirectoryIsNotReadAgain() throws IOException {
+        CachingDirectoryLister lister = new CachingDirectoryLister(index, delegate);
+        FileAttributes[] first = lister.list(dir);
+        FileAttributes[] second = lister.list(dir);
+        assertEquals(1, delegate.count);
+        assertEquals(names(first), names(second));
+        assertEquals(new TreeSet<String>(Arrays.asList("a.txt", "sub")),
+                     names(second));
+        for (int i = 0; i < second.length; i++) {
+            assertEquals(new File(dir, second[i].getName()).isDirectory(),
+                         second[i].isDirectory());
+        }
+    }
+
+    @Test
+    public void testIndexIsReadBack() throws IOException {
+        new CachingDirectoryLister(index, delegate).list(dir);
+        new CachingDirectoryLister(index, delegate).list(dir);
+        assertEquals(2, delegate.count);
+
+        CachingDirectoryLister lister = new CachingDirectoryLister(index, delegate);
+        lister.list(dir);
+        lister.save();
+        FileAttributes[] cached = new CachingDirectoryLister(index, delegate).list(dir);
+        assertEquals(3, delegate.count);
+        assertEquals(new TreeSet<String>(Arrays.asList("a.txt", "sub")),
+                     names(cached));
+    }
+
+    @Test
+    public void testModifiedDirectoryIsReadAgain() throws IOException {
+        CachingDirectoryLister lister = new CachingDirectoryLister(index, delegate);
+        lister.list(dir);
+        assertTrue(new File(dir, "b.txt").createNewFile());
+        backdate(120000);
+        FileAttributes[] second = lister.list(dir);
+        assertEquals(2, delegate.count);
+        assertEquals(new TreeSet<String>(Arrays.asList("a.txt", "b.txt", "sub")),
+                     names(second));
+    }
+
+    @Test
+    public void testCorruptIndexIsIgnored() throws IOException {
+        FileWriter w = new FileWriter(index);
+        try {
+            w.write("this is not an index");
+        } finally {
+            w.close();
+        }
+        CachingDirectoryLister lister = new CachingDirectoryLister(index, delegate);
+        assertEquals(2, lister.list(dir).length);
+    }
+
+    @Test
+    public void testInstanceIsDiscardedWhenBuildFinishes() throws IOException {
+        Project p = new Project();
+        CachingDirectoryLister lister =
+            CachingDirectoryLister.getInstance(p, index, delegate);
+        assertSame(lister, CachingDirectoryLister.getInstance(p, index, delegate));
+        lister.list(dir);
+        p.fireBuildFinished(null);
+        assertFalse(p.getBuildListeners().contains(lister));
+
+        CachingDirectoryLister next =
+            CachingDirectoryLister.getInstance(p, index, delegate);
+        assertNotSame(lister, next);
+        // the new instance has read the index written by the old one
+        next.list(dir);
+        assertEquals(1, delegate.count);
+        p.fireBuildFinished(null);
+    }
+
+    /**
+     * Moves the directory's timestamp out of the range where
+     * listings are not trusted.
+     */
+    private void backdate(long millis) {
+        assertTrue(dir.setLastModified(System.currentTimeMillis() - millis));
+    }
+
+    private static TreeSet<String> names(FileAttributes[] attrs) {
+        TreeSet<String> s = new TreeSet<String>();
+        for (int i = 0; i < attrs.length; i++) {
+            s.add(attrs[i].getName());
+        }
+        return s;
+    }
+
+    private static class CountingLister implements DirectoryLister {
+        private final DirectoryLister delegate;
+        private int count;
+
+        private CountingLister(DirectoryLister delegate) {
+            this.delegate = delegate;
+        }
+
+        public FileAttributes[] list(File dir) throws IOException {
+            count++;
+            return delegate.list(dir);
+        }
+
+        public FileAttributes readAttributes(File file) throws IOException {
+            return delegate.readAttributes(file);
+        }
+    }
+}
@@ -20,9 +20,14 @@ package org.apache.tools.bzip2;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
 
+import org.apache.tools.ant.FileUtilities;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 public class CBZip2StreamTest {
@@ -44,4 +49,131 @@ public class CBZip2StreamTest {
         cb.close();
         // expected no exception
     }
+
+    @Test
+    public void testParallelCompressionCreatesSameStream() throws IOException {
+        final byte[] data = new byte[350 * 1000];
+        final Random r = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            // compressible but not too repetitive
+            data[i] = (byte) ('a' + r.nextInt(i % 7 + 2));
+        }
+        final byte[] serial = compress(data, 1);
+        final byte[] parallel = compress(data, 3);
+        assertArrayEquals(serial, parallel);
+        assertArrayEquals(data, uncompress(parallel));
+        assertArrayEquals(compress(new byte[0], 1), compress(new byte[0], 3));
+    }
+
+    @Test
+    public void testParallelDecompression() throws IOException {
+        final byte[] data = new byte[350 * 1000];
+        final Random r = new Random(17);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + r.nextInt(i % 5 + 2));
+        }
+        final byte[] compressed = compress(data, 1);
+        assertArrayEquals(data, uncompress(compressed, false, 3));
+
+        // two concatenated streams, the second one needs its "BZ"
+        final byte[] empty = compress(new byte[0], 1);
+        final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        concatenated.write(compressed);
+        concatenated.write('B');
+        concatenated.write('Z');
+        concatenated.write(empty);
+        concatenated.write('B');
+        concatenated.write('Z');
+        concatenated.write(compressed);
+        final byte[] twice = new byte[2 * data.length];
+        System.arraycopy(data, 0, twice, 0, data.length);
+        System.arraycopy(data, 0, twice, data.length, data.length);
+        assertArrayEquals(twice,
+                          uncompress(concatenated.toByteArray(), true, 2));
+        assertArrayEquals(new byte[0], uncompress(empty, false, 2));
+    }
+
+    @Test
+    public void testParallelDecompressionSkipsMagicInsideBlocks()
+        throws IOException {
+        // the bitmaps of the symbols used by a block are written
+        // as is, bytes 0 to 47 are split into three ranges whose
+        // bitmaps read 0x3141, 0x5926 and 0x5359 - the block magic
+        final int[] ranges = {0x3141, 0x5926, 0x5359};
+        final byte[] symbols = new byte[20];
+        int count = 0;
+        for (int range = 0; range < ranges.length; range++) {
+            for (int bit = 0; bit < 16; bit++) {
+                if ((ranges[range] & (0x8000 >> bit)) != 0) {
+                    symbols[count++] = (byte) (range * 16 + bit);
+                }
+            }
+        }
+        final byte[] data = new byte[350 * 1000];
+        final Random r = new Random(23);
+        for (int i = 0, previous = 0; i < data.length; i++) {
+            // no runs, their lengths would add more symbols
+            previous = (previous + 1 + r.nextInt(count - 1)) % count;
+            data[i] = symbols[previous];
+        }
+        final byte[] compressed = compress(data, 1);
+        // one real magic and one inside the symbol map for each of the four blocks
+        assertEquals(8, countBlockMagics(compressed));
+
+        final byte[] serial = uncompress(compressed);
+        assertArrayEquals(data, serial);
+        assertArrayEquals(serial, uncompress(compressed, false, 3));
+
+        final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        concatenated.write(compressed);
+        concatenated.write('B');
+        concatenated.write('Z');
+        concatenated.write(compressed);
+        assertArrayEquals(uncompress(concatenated.toByteArray(), true, 1),
+                          uncompress(concatenated.toByteArray(), true, 3));
+    }
+
+    /**
+     * Counts the bit positions the block magic 0x314159265359 can be
+     * found at.
+     */
+    private static int countBlockMagics(final byte[] data) {
+        int count = 0;
+        long shift = 0;
+        for (int i = 0; i < data.length; i++) {
+            shift = (shift << 8) | (data[i] & 0xff);
+            for (int k = 7; k >= 0 && i >= 6; k--) {
+                if (((shift >>> k) & 0xffffffffffffL) == 0x314159265359L) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static byte[] compress(final byte[] data, final int threads)
+        throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final CBZip2OutputStream out = new CBZip2OutputStream(bos, 1, threads);
+        out.write(data);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    private static byte[] uncompress(final byte[] data) throws IOException {
+        return uncompress(data, false, 1);
+    }
+
+    private static byte[] uncompress(final byte[] data,
+                                     final boolean concatenated,
+                                     final int threads) throws IOException {
+        final InputStream in =
+            new CBZip2InputStream(new ByteArrayInputStream(data),
+                                  concatenated, threads);
+        try {
+            return FileUtilities.readFully(in);
+        } finally {
+            in.close();
+        }
+    }
 }
@@ -21,8 +21,17 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
+import org.apache.tools.ant.FileUtilities;
+import org.apache.tools.ant.util.FileUtils;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -49,6 +58,75 @@ public class TarRoundTripTest {
         testLongRoundTripping(TarOutputStream.LONGFILE_POSIX);
     }
 
+    /**
+     * test double buffered streams create and read the same archive
+     * as single buffered ones, both for files and other streams.
+     */
+    @Test
+    public void testDoubleBuffered() throws IOException {
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        writeArchive(single, false);
+        ByteArrayOutputStream dbl = new ByteArrayOutputStream();
+        writeArchive(dbl, true);
+        assertArrayEquals(single.toByteArray(), dbl.toByteArray());
+
+        File f = File.createTempFile("double", ".tar");
+        try {
+            writeArchive(new FileOutputStream(f), true);
+            InputStream in = new FileInputStream(f);
+            try {
+                assertArrayEquals(single.toByteArray(), FileUtilities.readFully(in));
+            } finally {
+                in.close();
+            }
+            readArchive(new FileInputStream(f));
+        } finally {
+            FileUtils.delete(f);
+        }
+        readArchive(new ByteArrayInputStream(single.toByteArray()));
+    }
+
+    private static final int ENTRIES = 3;
+    private static final int ENTRY_SIZE = 700 * 1000;
+
+    private static byte[] content(int entry) {
+        return FileUtilities.createTestData(ENTRY_SIZE + entry, entry);
+    }
+
+    private void writeArchive(OutputStream out, boolean doubleBuffer)
+        throws IOException {
+        TarOutputStream tos =
+            new TarOutputStream(out, TarBuffer.DEFAULT_BLKSIZE,
+                                TarBuffer.DEFAULT_RCDSIZE, null,
+                                doubleBuffer);
+        for (int i = 0; i < ENTRIES; i++) {
+            byte[] data = content(i);
+            TarEntry e = new TarEntry("entry" + i);
+            e.setSize(data.length);
+            e.setModTime(0);
+            tos.putNextEntry(e);
+            tos.write(data);
+            tos.closeEntry();
+        }
+        tos.close();
+    }
+
+    private void readArchive(InputStream in) throws IOException {
+        TarInputStream tis =
+            new TarInputStream(in, TarBuffer.DEFAULT_BLKSIZE,
+                               TarBuffer.DEFAULT_RCDSIZE, null, true);
+        try {
+            for (int i = 0; i < ENTRIES; i++) {
+                TarEntry e = tis.getNextEntry();
+                assertEquals("entry" + i, e.getName());
+                assertArrayEquals(content(i), FileUtilities.readFully(tis));
+            }
+            assertNull("no more entries", tis.getNextEntry());
+        } finally {
+            tis.close();
+        }
+    }
+
     private void testLongRoundTripping(int mode) throws IOException {
         TarEntry original = new TarEntry(LONG_NAME);
         assertTrue("over 100 chars", LONG_NAME.length() > 100);
@@ -0,0 +1,160 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.zip;
+
+import org.apache.tools.ant.FileUtilities;
+import org.apache.tools.ant.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZipFileTest {
+
+    private static final int ENTRIES = 20;
+
+    private File archive;
+
+    @Before
+    public void setUp() throws IOException {
+        archive = FileUtils.getFileUtils().createTempFile("zipfile", ".zip",
+                                                          null, true, true);
+        final ZipOutputStream zos = new ZipOutputStream(archive);
+        try {
+            for (int i = 0; i < ENTRIES; i++) {
+                final ZipEntry ze = new ZipEntry("entry" + i);
+                ze.setMethod(i % 2 == 0 ? ZipEntry.DEFLATED : ZipEntry.STORED);
+                zos.putNextEntry(ze);
+                zos.write(content(i));
+                zos.closeEntry();
+            }
+            // second entry with the same name
+            zos.putNextEntry(new ZipEntry("entry0"));
+            zos.write(content(ENTRIES));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        archive.delete();
+    }
+
+    @Test
+    public void testLazyResolutionReadsSameEntries() throws IOException {
+        final ZipFile eager = new ZipFile(archive, "UTF-8", true, false);
+        final ZipFile lazy = new ZipFile(archive, "UTF-8", true, true);
+        try {
+            final List<ZipEntry> eagerEntries =
+                Collections.list(eager.getEntries());
+            final List<ZipEntry> lazyEntries =
+                Collections.list(lazy.getEntries());
+            assertEquals(ENTRIES + 1, lazyEntries.size());
+            for (int i = 0; i <= ENTRIES; i++) {
+                final ZipEntry e = eagerEntries.get(i);
+                final ZipEntry l = lazyEntries.get(i);
+                assertEquals(e.getName(), l.getName());
+                assertEquals(e.getSize(), l.getSize());
+                assertEquals(e.getCrc(), l.getCrc());
+                assertArrayEquals(content(i), readFully(lazy.getInputStream(l)));
+                assertArrayEquals(content(i), readFully(eager.getInputStream(e)));
+            }
+            assertEquals(eager.getUnusedBytes(), lazy.getUnusedBytes());
+        } finally {
+            ZipFile.closeQuietly(eager);
+            ZipFile.closeQuietly(lazy);
+        }
+    }
+
+    @Test
+    public void testEntriesOfTheSameName() throws IOException {
+        final ZipFile zf = new ZipFile(archive, "UTF-8", true, true);
+        try {
+            int count = 0;
+            for (final ZipEntry ze : zf.getEntries("entry0")) {
+                assertArrayEquals(content(count == 0 ? 0 : ENTRIES),
+                                  readFully(zf.getInputStream(ze)));
+                count++;
+            }
+            assertEquals(2, count);
+            assertEquals(zf.getEntries("entry0").iterator().next(),
+                         zf.getEntry("entry0"));
+            assertNull(zf.getEntry("entry" + ENTRIES));
+        } finally {
+            zf.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final ZipFile zf = new ZipFile(archive, "UTF-8", true, true);
+        try {
+            final List<ZipEntry> entries = Collections.list(zf.getEntries());
+            final List<Throwable> failures =
+                Collections.synchronizedList(new ArrayList<Throwable>());
+            final Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int i = 0; i < ENTRIES; i++) {
+                                assertArrayEquals(content(i),
+                                                  readFully(zf.getInputStream(entries.get(i))));
+                            }
+                        } catch (final Throwable ex) {
+                            failures.add(ex);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; t++) {
+                threads[t].join();
+            }
+            assertTrue(failures.toString(), failures.isEmpty());
+        } finally {
+            zf.close();
+        }
+    }
+
+    private static byte[] content(final int i) {
+        return FileUtilities.createTestData(1000 + i * 997, i);
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        try {
+            return FileUtilities.readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -21,10 +21,19 @@ package org.apache.tools.zip;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ZipOutputStreamTest {
     
@@ -70,4 +79,104 @@ public class ZipOutputStreamTest {
                      ZipOutputStream.adjustToLong(2 * Integer.MAX_VALUE));
     }
 
+    @Test
+    public void testAppendAndRemoveExistingEntry() throws Exception {
+        File f = createArchive();
+        try {
+            ZipFile existing = new ZipFile(f);
+            ZipOutputStream zos;
+            try {
+                zos = new ZipOutputStream(f, existing);
+            } finally {
+                existing.close();
+            }
+            assertTrue(zos.removeExistingEntries("b"));
+            assertFalse(zos.removeExistingEntries("c"));
+            addEntry(zos, "b", "B");
+            addEntry(zos, "c", "C");
+            zos.close();
+
+            ZipFile zf = new ZipFile(f);
+            try {
+                assertEquals("a", read(zf, "a"));
+                assertEquals("B", read(zf, "b"));
+                assertEquals("C", read(zf, "c"));
+                assertEquals(3, Collections.list(zf.getEntries()).size());
+                assertTrue(zf.getUnusedBytes() > 0);
+            } finally {
+                zf.close();
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testRevert() throws Exception {
+        File f = createArchive();
+        try {
+            byte[] original = readFile(f);
+            ZipFile existing = new ZipFile(f);
+            ZipOutputStream zos;
+            try {
+                zos = new ZipOutputStream(f, existing);
+            } finally {
+                existing.close();
+            }
+            zos.removeExistingEntries("a");
+            addEntry(zos, "c", "some more data than the central directory holds");
+            zos.revert();
+            assertTrue(Arrays.equals(original, readFile(f)));
+        } finally {
+            f.delete();
+        }
+    }
+
+    private static File createArchive() throws IOException {
+        File f = File.createTempFile("zos-test", ".zip");
+        ZipOutputStream zos = new ZipOutputStream(f);
+        try {
+            addEntry(zos, "a", "a");
+            addEntry(zos, "b", "b");
+        } finally {
+            zos.close();
+        }
+        return f;
+    }
+
+    private static void addEntry(ZipOutputStream zos, String name, String content)
+        throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content.getBytes("ASCII"));
+        zos.closeEntry();
+    }
+
+    private static String read(ZipFile zf, String name) throws IOException {
+        InputStream in = zf.getInputStream(zf.getEntry(name));
+        try {
+            return new String(readFully(in), "ASCII");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readFile(File f) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            return readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            bos.write(buffer, 0, count);
+        }
+        return bos.toByteArray();
+    }
+
 }